@@ -0,0 +1,77 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gdata.data.contacts.ContactEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The dedupe pass /people runs over a whole address book.
+ * {@link #index} is only linking contacts on their names, emails and phones in the {@link ContactDeduper};
+ * {@link #fullPass} starts from the feed entries and goes all the way to the {@link DedupeResult} the report is
+ * written from, the same steps as {@code Signin.PeopleServlet.dedupeAllContacts} without the feed and the console.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class ContactDedupeBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    private int numContacts;
+
+    private List<ContactEntry> entries;
+    private List<GoogleContact> contacts;
+
+    @Setup
+    public void setUp() {
+        SyntheticContacts.loadIgnoreList();
+        entries = SyntheticContacts.generate(numContacts, 42);
+        contacts = SyntheticContacts.toContacts(entries);
+    }
+
+    /**
+     * Adding doesn't change the contacts, so the same ones are reused; they're in a store of their own, so this
+     * includes copying them into the deduper's
+     */
+    @Benchmark
+    public ContactDeduper index() {
+        ContactDeduper deduper = new ContactDeduper();
+        for (GoogleContact contact : contacts) {
+            deduper.add(contact);
+        }
+        return deduper;
+    }
+
+    @Benchmark
+    public DedupeResult fullPass() {
+        ContactDeduper deduper = new ContactDeduper();
+        int totalContactsRead = 0;
+        for (ContactEntry entry : entries) {
+            GoogleContact contact = new GoogleContact(entry, deduper.getStore());
+            totalContactsRead++;
+            if (!(contact.hadIgnoredEmails() && contact.getEmails().size() == 0)) {
+                deduper.add(contact);
+            }
+        }
+        DedupeSession dedupeSession = new DedupeSession();
+        List<GoogleContact> deduped = deduper.dedupe(dedupeSession);
+        return new DedupeResult("bench@example.com", totalContactsRead, deduper.getUniqueEmailCount(),
+                deduper.getUniquePhoneCount(), deduped, dedupeSession.getMergedNames());
+    }
+}
@@ -0,0 +1,86 @@
+package com.google.plus.samples.quickstart;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link GoogleContact#merge(GoogleContact)} on the duplicate pairs of a synthetic address book.
+ * Merging changes the surviving contact, so every merge works on a fresh copy of it; {@link #copy} measures
+ * just the copies, to take out of the {@link #merge} numbers.
+ * One operation is merging all the pairs.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ContactMergeBenchmark {
+    private final List<GoogleContact> survivors = new ArrayList<GoogleContact>();
+    private final List<GoogleContact> duplicates = new ArrayList<GoogleContact>();
+
+    /**
+     * Pairs up every contact with the first one read with the same name or email
+     */
+    @Setup
+    public void setUp() {
+        SyntheticContacts.loadIgnoreList();
+        List<GoogleContact> contacts = SyntheticContacts.toContacts(SyntheticContacts.generate(10000, 42));
+        Map<String, GoogleContact> firstByKey = new HashMap<String, GoogleContact>();
+        for (GoogleContact contact : contacts) {
+            GoogleContact first = null;
+            if (contact.getFullName() != null) {
+                first = firstSeen(firstByKey, "name:" + contact.getFullName().toLowerCase(), contact);
+            }
+            for (String email : contact.getEmails()) {
+                GoogleContact firstForEmail = firstSeen(firstByKey, "email:" + email, contact);
+                first = (first != null) ? first : firstForEmail;
+            }
+            if (first != null) {
+                survivors.add(first);
+                duplicates.add(contact);
+            }
+        }
+    }
+
+    private static GoogleContact firstSeen(Map<String, GoogleContact> firstByKey, String key, GoogleContact contact) {
+        GoogleContact first = firstByKey.get(key);
+        if (first == null) {
+            firstByKey.put(key, contact);
+        }
+        return first;
+    }
+
+    @Benchmark
+    public void merge(Blackhole blackhole) {
+        for (int i = 0; i < survivors.size(); i++) {
+            GoogleContact survivor = new GoogleContact(survivors.get(i));
+            blackhole.consume(survivor.merge(duplicates.get(i)));
+        }
+    }
+
+    @Benchmark
+    public void copy(Blackhole blackhole) {
+        for (GoogleContact survivor : survivors) {
+            blackhole.consume(new GoogleContact(survivor));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.google.plus.samples.quickstart;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ContactDeduper#dedupe()} against {@link ParallelContactDeduper#dedupe()} on 1..16 threads, to see how close
+ * to linear the sharded dedupe scales on the box it runs on. Parallelism 0 is the sequential deduper.
+ * Dedupe merges in place, so every invocation gets fresh copies of the contacts, added outside the measurement.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms8g", "-Xmx8g"})
+public class ContactParallelDedupeBenchmark {
+    @Param({"100000", "1000000"})
+    private int numContacts;
+
+    @Param({"0", "1", "2", "4", "8", "16"})
+    private int parallelism;
+
+    private List<GoogleContact> contacts;
+    private Deduper deduper;
+
+    @Setup
+    public void setUp() {
+        SyntheticContacts.loadIgnoreList();
+        contacts = SyntheticContacts.toContacts(SyntheticContacts.generate(numContacts, 42));
+    }
+
+    @Setup(Level.Invocation)
+    public void addContacts() {
+        deduper = (parallelism == 0) ? new ContactDeduper() : new ParallelContactDeduper(parallelism);
+        for (GoogleContact contact : contacts) {
+            deduper.add(new GoogleContact(contact));
+        }
+    }
+
+    @Benchmark
+    public List<GoogleContact> dedupe() {
+        return deduper.dedupe();
+    }
+}
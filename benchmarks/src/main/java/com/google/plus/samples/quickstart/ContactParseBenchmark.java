@@ -0,0 +1,70 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.extensions.Email;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning feed entries into contacts: {@link GoogleContact#GoogleContact(ContactEntry)}, which runs every
+ * email through the ignore list.
+ * One operation is the whole address book.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class ContactParseBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    private int numContacts;
+
+    private List<ContactEntry> entries;
+
+    @Setup
+    public void setUp() {
+        SyntheticContacts.loadIgnoreList();
+        entries = SyntheticContacts.generate(numContacts, 42);
+    }
+
+    /**
+     * Into one store, as a dedupe run reads them
+     */
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        ContactStore store = new ContactStore(numContacts);
+        for (ContactEntry entry : entries) {
+            blackhole.consume(new GoogleContact(entry, store));
+        }
+    }
+
+    /**
+     * Just the ignore list, on every email of the address book
+     */
+    @Benchmark
+    public void ignoreList(Blackhole blackhole) {
+        IgnoreListMatcher ignoreList = GoogleContact.getIgnoreList();
+        for (ContactEntry entry : entries) {
+            for (Email email : entry.getEmailAddresses()) {
+                blackhole.consume(ignoreList.matches(email.getAddress()));
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.extensions.Email;
+import com.google.gdata.data.extensions.FullName;
+import com.google.gdata.data.extensions.Name;
+import com.google.gdata.data.extensions.PhoneNumber;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates contact feed entries that look like a real address book, for the benchmarks.
+ * About one entry in five is another entry for a person generated earlier, found by the deduper either
+ * by the name in a different case, by a shared email, or by the same phone number written differently.
+ * The rest are new people: most with a name and an email, some with just an email or just a name and a phone,
+ * some with an email on the ignore list.
+ * The same count and seed always give the same entries.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class SyntheticContacts {
+    public static final double DUPLICATE_RATE = 0.20;
+    public static final double NO_NAME_RATE = 0.08;
+    public static final double NO_EMAIL_RATE = 0.10;
+    public static final double SECOND_EMAIL_RATE = 0.20;
+    public static final double PHONE_RATE = 0.60;
+    public static final double IGNORED_EMAIL_RATE = 0.03;
+
+    private static final String[] FIRST_NAMES = {
+            "Anna", "Boris", "Carlos", "Dana", "Elena", "Frank", "Grace", "Hiro", "Irina", "James", "Kate", "Leo",
+            "Maria", "Nikolai", "Olga", "Pavel", "Quinn", "Rosa", "Sergei", "Tanya", "Umar", "Vasya", "Wei", "Yuki"
+    };
+    private static final String[] SYLLABLES = {
+            "ka", "ro", "li", "ne", "pu", "sa", "to", "mi", "ve", "do", "zan", "kin", "ber", "son", "lov", "ski"
+    };
+    private static final String[] DOMAINS = {"gmail.com", "yahoo.com", "hotmail.com", "lyft.com", "mail.ru"};
+    private static final String[] IGNORED_EMAILS = {
+            "%s@reply.linkedin.com", "auto_reply-%s@zendesk.com", "sale-%s@craigslist.org", "%s@plus.google.com"
+    };
+
+    private final Random random;
+    private int numPeople;
+    private int numEntries;
+
+    private SyntheticContacts(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * @return count entries, with the duplication rates above
+     */
+    public static List<ContactEntry> generate(int count, long seed) {
+        SyntheticContacts generator = new SyntheticContacts(seed);
+        List<ContactEntry> entries = new ArrayList<ContactEntry>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(generator.next());
+        }
+        return entries;
+    }
+
+    /**
+     * @return the entries as contacts, the way the feed reader turns them into ones, all in one store
+     */
+    public static List<GoogleContact> toContacts(List<ContactEntry> entries) {
+        List<GoogleContact> contacts = new ArrayList<GoogleContact>(entries.size());
+        ContactStore store = new ContactStore(entries.size());
+        for (ContactEntry entry : entries) {
+            contacts.add(new GoogleContact(entry, store));
+        }
+        return contacts;
+    }
+
+    /**
+     * Sets up the ignore list from ignore-list.xml, same as the server does on startup
+     */
+    public static void loadIgnoreList() {
+        new ClassPathXmlApplicationContext("ignore-list.xml");
+    }
+
+    private ContactEntry next() {
+        if (numPeople > 0 && random.nextDouble() < DUPLICATE_RATE) {
+            return duplicate(random.nextInt(numPeople));
+        }
+        int person = numPeople++;
+        double kind = random.nextDouble();
+        if (kind < NO_NAME_RATE) {
+            return entry(null, new String[]{email(person)}, null);
+        } else if (kind < NO_NAME_RATE + NO_EMAIL_RATE) {
+            return entry(fullName(person), new String[0], phone(person, 0));
+        }
+        String[] emails;
+        if (random.nextDouble() < IGNORED_EMAIL_RATE) {
+            emails = new String[]{email(person), ignoredEmail(person)};
+        } else if (random.nextDouble() < SECOND_EMAIL_RATE) {
+            emails = new String[]{email(person), workEmail(person)};
+        } else {
+            emails = new String[]{email(person)};
+        }
+        return entry(fullName(person), emails, (random.nextDouble() < PHONE_RATE) ? phone(person, 0) : null);
+    }
+
+    private ContactEntry duplicate(int person) {
+        switch (random.nextInt(3)) {
+            case 0:
+                // same name, differently capitalized, with a work email
+                String name = fullName(person);
+                return entry(random.nextBoolean() ? name.toUpperCase() : name.toLowerCase(),
+                        new String[]{workEmail(person)}, null);
+            case 1:
+                // an email someone wrote to, with no name
+                return entry(null, new String[]{email(person)}, null);
+            default:
+                // the same phone number, written another way, under a nickname
+                return entry(FIRST_NAMES[person % FIRST_NAMES.length].substring(0, 3) + " " + lastName(person),
+                        new String[0], phone(person, 1 + random.nextInt(2)));
+        }
+    }
+
+    private ContactEntry entry(String fullName, String[] emails, String phone) {
+        ContactEntry entry = new ContactEntry();
+        entry.setId("http://www.google.com/m8/feeds/contacts/bench%40example.com/base/"
+                + Integer.toHexString(numEntries++));
+        if (fullName != null) {
+            Name name = new Name();
+            name.setFullName(new FullName(fullName, null));
+            entry.setName(name);
+        }
+        for (int i = 0; i < emails.length; i++) {
+            Email email = new Email();
+            email.setAddress(emails[i]);
+            email.setPrimary(i == 0);
+            entry.addEmailAddress(email);
+        }
+        if (phone != null) {
+            PhoneNumber number = new PhoneNumber();
+            number.setPhoneNumber(phone);
+            entry.addPhoneNumber(number);
+        }
+        return entry;
+    }
+
+    private static String fullName(int person) {
+        return FIRST_NAMES[person % FIRST_NAMES.length] + " " + lastName(person);
+    }
+
+    /**
+     * A last name unique to the person, made out of syllables
+     */
+    private static String lastName(int person) {
+        StringBuilder builder = new StringBuilder();
+        int rest = person / FIRST_NAMES.length;
+        do {
+            builder.append(SYLLABLES[rest % SYLLABLES.length]);
+            rest /= SYLLABLES.length;
+        } while (rest > 0);
+        builder.setCharAt(0, Character.toUpperCase(builder.charAt(0)));
+        return builder.toString();
+    }
+
+    private static String email(int person) {
+        return (FIRST_NAMES[person % FIRST_NAMES.length] + "." + lastName(person)).toLowerCase()
+                + "@" + DOMAINS[person % DOMAINS.length];
+    }
+
+    private static String workEmail(int person) {
+        return FIRST_NAMES[person % FIRST_NAMES.length].toLowerCase() + "@" + lastName(person).toLowerCase() + ".com";
+    }
+
+    private static String ignoredEmail(int person) {
+        return String.format(IGNORED_EMAILS[person % IGNORED_EMAILS.length], Integer.toString(person));
+    }
+
+    /**
+     * The person's US number, in one of the ways people write them down
+     */
+    private static String phone(int person, int style) {
+        String line = String.format("%04d", person % 10000);
+        String exchange = Integer.toString(200 + (person / 10000) % 800);
+        String area = Integer.toString(200 + (person / 8000000) % 800);
+        switch (style) {
+            case 1:
+                return "(" + area + ") " + exchange + "-" + line;
+            case 2:
+                return "+1 " + area + "." + exchange + "." + line;
+            default:
+                return area + "-" + exchange + "-" + line;
+        }
+    }
+}
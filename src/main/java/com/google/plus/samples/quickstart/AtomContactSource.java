@@ -0,0 +1,215 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gdata.data.DateTime;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams contacts out of an Atom contacts feed export (same XML the live feed returns) with StAX,
+ * one entry at a time, without building gdata object trees.
+ * Only what {@link GoogleContact} uses is read: the entry id and updated time, gd:name/gd:fullName,
+ * gd:email and gd:phoneNumber. The feed's own id, title and updated time are read from the header.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class AtomContactSource implements ContactSource {
+    static final String ATOM_NS = "http://www.w3.org/2005/Atom";
+    static final String GD_NS = "http://schemas.google.com/g/2005";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final InputStream input;
+    private final ContactStore store;
+    private final XMLStreamReader reader;
+    private boolean headerRead;
+    // first entry start tag, if we ran into it while reading the header
+    private boolean atEntry;
+    private String feedId;
+    private String feedTitle;
+    private long feedUpdated;
+
+    public AtomContactSource(InputStream inInput) throws IOException {
+        this(inInput, new ContactStore());
+    }
+
+    /**
+     * @param inStore store to create the contacts in
+     */
+    public AtomContactSource(InputStream inInput, ContactStore inStore) throws IOException {
+        input = inInput;
+        store = inStore;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(inInput);
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to read Atom export: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The owner is the feed title, which comes before the first entry
+     */
+    public String getOwnerName() throws IOException {
+        readHeader();
+        return feedTitle;
+    }
+
+    public String getFeedId() throws IOException {
+        readHeader();
+        return feedId;
+    }
+
+    /**
+     * @return the feed's updated time in millis, 0 if it has none
+     */
+    public long getFeedUpdated() throws IOException {
+        readHeader();
+        return feedUpdated;
+    }
+
+    public GoogleContact next() throws IOException {
+        ContactRecord record = nextRecord();
+        return (record == null) ? null : record.toContact(store);
+    }
+
+    /**
+     * @return raw data of the next entry, or null at the end of the feed
+     */
+    public ContactRecord nextRecord() throws IOException {
+        readHeader();
+        try {
+            if (!atEntry && !skipToEntry()) {
+                return null;
+            }
+            atEntry = false;
+            return readEntry();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to read Atom export: " + e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Failed to read Atom export: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the feed-level elements up to the first entry
+     */
+    private void readHeader() throws IOException {
+        if (headerRead) {
+            return;
+        }
+        headerRead = true;
+        try {
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (isElement(ATOM_NS, "entry")) {
+                        atEntry = true;
+                        return;
+                    } else if (depth == 2 && isElement(ATOM_NS, "title")) {
+                        feedTitle = reader.getElementText().trim();
+                        depth--;
+                    } else if (depth == 2 && isElement(ATOM_NS, "id")) {
+                        feedId = reader.getElementText().trim();
+                        depth--;
+                    } else if (depth == 2 && isElement(ATOM_NS, "updated")) {
+                        feedUpdated = DateTime.parseDateTime(reader.getElementText().trim()).getValue();
+                        depth--;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to read Atom export: " + e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Failed to read Atom export: " + e.getMessage(), e);
+        }
+    }
+
+    private boolean skipToEntry() throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT && isElement(ATOM_NS, "entry")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the current entry, up to and including its end tag
+     */
+    private ContactRecord readEntry() throws XMLStreamException {
+        String id = null;
+        long updated = 0;
+        String fullName = null;
+        String primaryEmail = null;
+        List<String> emails = new ArrayList<String>();
+        List<String> phones = new ArrayList<String>();
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (depth == 1 && isElement(ATOM_NS, "id")) {
+                    id = emptyToNull(reader.getElementText());
+                } else if (depth == 1 && isElement(ATOM_NS, "updated")) {
+                    updated = DateTime.parseDateTime(reader.getElementText().trim()).getValue();
+                } else if (isElement(GD_NS, "fullName")) {
+                    fullName = emptyToNull(reader.getElementText());
+                } else if (isElement(GD_NS, "phoneNumber")) {
+                    String number = emptyToNull(reader.getElementText());
+                    if (number != null) {
+                        phones.add(number);
+                    }
+                } else {
+                    if (isElement(GD_NS, "email")) {
+                        String address = reader.getAttributeValue(null, "address");
+                        if (address != null) {
+                            emails.add(address);
+                            if ("true".equals(reader.getAttributeValue(null, "primary"))) {
+                                primaryEmail = address;
+                            }
+                        }
+                    }
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        return new ContactRecord(id, updated, fullName, emails, primaryEmail, phones);
+    }
+
+    private boolean isElement(String namespace, String localName) {
+        return localName.equals(reader.getLocalName()) && namespace.equals(reader.getNamespaceURI());
+    }
+
+    private static String emptyToNull(String text) {
+        String trimmed = text.trim();
+        return trimmed.length() == 0 ? null : trimmed;
+    }
+
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to close Atom export: " + e.getMessage(), e);
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.google.plus.samples.quickstart;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Dedupes a directory of address books without the web server: every exported or cached contacts file
+ * (see {@link ContactSources}) is one account, deduped on its own and written out as its own report, plus
+ * a summary.csv with a line per account and the totals.
+ *
+ * Accounts are deduped in parallel on a fork/join pool with a thread per core (-Ddeduper.parallelism=...
+ * to change it); the list of files is split in halves until each task has one, so idle threads steal
+ * the remaining halves from busy ones and a few huge address books don't hold up the rest.
+ * A file that fails to read shows up in the summary with its error, the others go on.
+ *
+ * mvn exec:java -Dexec.mainClass=com.google.plus.samples.quickstart.BatchDeduper -Dexec.args="exports reports csv"
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class BatchDeduper {
+    private static final Logger LOGGER = Logger.getLogger(BatchDeduper.class);
+    public static final String SUMMARY_FILE = "summary.csv";
+    // every row of the summary has exactly these, empty where an account failed
+    static final String[] SUMMARY_COLUMNS = {"account", "owner", "contacts read", "unique emails", "contacts",
+            "emails with no names", "names with no emails", "merged", "millis", "error"};
+    // columns of the counts that add up into the totals row
+    private static final int FIRST_COUNT = 2;
+    private static final int NUM_COUNTS = 6;
+
+    private final int parallelism;
+    private final ReportFormat format;
+
+    public BatchDeduper(int inParallelism, ReportFormat inFormat) {
+        if (inParallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism has to be positive: " + inParallelism);
+        }
+        parallelism = inParallelism;
+        format = inFormat;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: BatchDeduper <input dir> <output dir> [html|csv|json]");
+            System.exit(2);
+        }
+        PropertyConfigurator.configure("log4j.properties");
+        GoogleContact.loadIgnoreList();
+        BatchDeduper deduper = new BatchDeduper(
+                Integer.getInteger("deduper.parallelism", Runtime.getRuntime().availableProcessors()),
+                ReportFormat.fromString((args.length > 2) ? args[2] : null));
+        List<AccountSummary> summaries = deduper.run(new File(args[0]), new File(args[1]));
+        int failed = 0;
+        for (AccountSummary summary : summaries) {
+            if (summary.getError() != null) {
+                failed++;
+            }
+        }
+        LOGGER.info("Deduped " + (summaries.size() - failed) + " accounts, " + failed + " failed, summary in "
+                + new File(args[1], SUMMARY_FILE));
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /**
+     * Dedupes every contacts file in the input directory into a report in the output directory
+     * @return one summary per file, in file name order
+     */
+    public List<AccountSummary> run(File inputDir, File outputDir) throws IOException {
+        File[] files = inputDir.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && ContactSources.isSupported(file);
+            }
+        });
+        if (files == null) {
+            throw new IOException("Can't list contacts files in " + inputDir);
+        }
+        Arrays.sort(files);
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Can't create " + outputDir);
+        }
+        long start = System.currentTimeMillis();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        List<AccountSummary> summaries;
+        try {
+            summaries = pool.invoke(new AccountsTask(files, 0, files.length, outputDir));
+        } finally {
+            pool.shutdown();
+        }
+        writeSummary(summaries, new File(outputDir, SUMMARY_FILE), System.currentTimeMillis() - start);
+        return summaries;
+    }
+
+    /**
+     * Reads, dedupes and writes out one account; failures end up in the summary
+     */
+    AccountSummary dedupe(File file, File outputDir) {
+        long start = System.currentTimeMillis();
+        String name = file.getName();
+        String account = name.substring(0, name.lastIndexOf('.'));
+        ContactSource source = null;
+        ContactReportWriter report = null;
+        try {
+            ContactDeduper deduper = new ContactDeduper();
+            // read straight into the deduper's store, so the contacts don't need to be copied into it
+            source = ContactSources.open(file, deduper.getStore());
+            String ownerName = source.getOwnerName();
+            int totalContactsRead = 0;
+            GoogleContact contact;
+            while ((contact = source.next()) != null) {
+                totalContactsRead++;
+                if (!(contact.hadIgnoredEmails() && contact.getEmails().size() == 0)) {
+                    deduper.add(contact);
+                }
+            }
+            DedupeSession session = new DedupeSession();
+            List<GoogleContact> deduped = deduper.dedupe(session);
+            DedupeResult result = new DedupeResult((ownerName != null) ? ownerName : account, totalContactsRead,
+                    deduper.getUniqueEmailCount(), deduper.getUniquePhoneCount(), deduped,
+                    session.getMergedNames());
+            report = ContactReportWriter.open(new File(outputDir, account + "." + format.getExtension()), format);
+            result.writeTo(report);
+            DedupeMetrics.CONTACTS_READ.add(totalContactsRead);
+            DedupeMetrics.MERGES.add(session.getNumMerges());
+            return new AccountSummary(account, result, null, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to dedupe " + file, e);
+            return new AccountSummary(account, null, e.toString(), System.currentTimeMillis() - start);
+        } finally {
+            IOUtils.closeQuietly(report);
+            IOUtils.closeQuietly(source);
+        }
+    }
+
+    private static void writeSummary(List<AccountSummary> summaries, File file, long elapsedMillis)
+            throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file, false), "UTF-8");
+        try {
+            writeRow(out, SUMMARY_COLUMNS);
+            long[] totals = new long[NUM_COUNTS];
+            for (AccountSummary summary : summaries) {
+                String[] row = new String[SUMMARY_COLUMNS.length];
+                row[0] = summary.getAccount();
+                DedupeResult result = summary.getResult();
+                if (result != null) {
+                    long[] counts = {result.getTotalContactsRead(), result.getUniqueEmails(), result.getNumContacts(),
+                            result.getNumNoNameEmails(), result.getJustNames().length,
+                            result.getMergedNames().length};
+                    row[1] = result.getOwnerName();
+                    for (int i = 0; i < NUM_COUNTS; i++) {
+                        row[FIRST_COUNT + i] = String.valueOf(counts[i]);
+                        totals[i] += counts[i];
+                    }
+                }
+                row[FIRST_COUNT + NUM_COUNTS] = String.valueOf(summary.getMillis());
+                if (summary.getError() != null) {
+                    // parse errors run over several lines, keep to one line per account
+                    row[FIRST_COUNT + NUM_COUNTS + 1] = summary.getError().replaceAll("\\s*[\\r\\n]+\\s*", " ");
+                }
+                writeRow(out, row);
+            }
+            String[] row = new String[SUMMARY_COLUMNS.length];
+            row[0] = "total";
+            for (int i = 0; i < NUM_COUNTS; i++) {
+                row[FIRST_COUNT + i] = String.valueOf(totals[i]);
+            }
+            row[FIRST_COUNT + NUM_COUNTS] = String.valueOf(elapsedMillis);
+            writeRow(out, row);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Writes one summary row, nulls as empty fields
+     */
+    private static void writeRow(Writer out, String[] row) throws IOException {
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            if (row[i] != null) {
+                out.write(StringEscapeUtils.escapeCsv(row[i]));
+            }
+        }
+        out.write('\n');
+    }
+
+    /**
+     * Dedupes files [from, to), splitting the range in halves down to single files
+     */
+    private class AccountsTask extends RecursiveTask<List<AccountSummary>> {
+        private final File[] files;
+        private final int from;
+        private final int to;
+        private final File outputDir;
+
+        private AccountsTask(File[] inFiles, int inFrom, int inTo, File inOutputDir) {
+            files = inFiles;
+            from = inFrom;
+            to = inTo;
+            outputDir = inOutputDir;
+        }
+
+        @Override
+        protected List<AccountSummary> compute() {
+            if (to - from == 0) {
+                return Collections.emptyList();
+            }
+            if (to - from == 1) {
+                return Collections.singletonList(dedupe(files[from], outputDir));
+            }
+            int middle = (from + to) >>> 1;
+            AccountsTask second = new AccountsTask(files, middle, to, outputDir);
+            second.fork();
+            List<AccountSummary> summaries = new ArrayList<AccountSummary>(
+                    new AccountsTask(files, from, middle, outputDir).compute());
+            summaries.addAll(second.join());
+            return summaries;
+        }
+    }
+
+    /**
+     * How one account went: its result, or the error it failed with
+     */
+    public static class AccountSummary {
+        private final String account;
+        private final DedupeResult result;
+        private final String error;
+        private final long millis;
+
+        private AccountSummary(String inAccount, DedupeResult inResult, String inError, long inMillis) {
+            account = inAccount;
+            result = inResult;
+            error = inError;
+            millis = inMillis;
+        }
+
+        public String getAccount() {
+            return account;
+        }
+
+        /**
+         * @return the result, or null if the account failed
+         */
+        public DedupeResult getResult() {
+            return result;
+        }
+
+        /**
+         * @return what went wrong, or null if the account was deduped
+         */
+        public String getError() {
+            return error;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+}
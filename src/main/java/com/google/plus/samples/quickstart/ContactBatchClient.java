@@ -0,0 +1,23 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gdata.util.ServiceException;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Sends one batch of contact updates and deletes.
+ * Implementations have to be safe to call from several threads at once.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public interface ContactBatchClient {
+    /**
+     * @param operations at most {@link ContactWriteBack#MAX_BATCH_SIZE} operations
+     * @return HTTP status of each operation, in the same order (ie 200, 404 for a contact that's gone, 412 for one
+     * changed since it was read, 503 when rate limited)
+     * @throws IOException if the batch as a whole failed
+     */
+    int[] execute(List<ContactWriteBack.Operation> operations) throws IOException, ServiceException;
+}
@@ -0,0 +1,361 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.contacts.ContactFeed;
+import com.google.gdata.data.extensions.Deleted;
+import com.google.gdata.util.ServiceException;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * On-disk cache of one account's contacts, kept up to date with delta syncs.
+ *
+ * The first sync reads the whole feed. Later ones only ask for entries updated since the last sync
+ * (updated-min plus showdeleted) and apply the adds, changes and deletions to the cached contacts, so
+ * a repeat run transfers a handful of entries instead of the whole address book.
+ * The cache file is an Atom feed export (feed id = account, feed updated = last sync time), so it can
+ * also be read back with {@link AtomContactSource}. It keeps the raw contact data, ignore-list filtering
+ * is applied whenever contacts are handed out.
+ *
+ * Callers should hold {@link #lockFor(String)} for the account around load/sync/save.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class ContactCache {
+    private static final Logger LOGGER = Logger.getLogger(ContactCache.class);
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    private static final ConcurrentMap<String, Object> ACCOUNT_LOCKS = new ConcurrentHashMap<String, Object>();
+    // delta syncs overlap the previous one a bit, re-reading an entry is harmless, missing one isn't
+    private static final long SYNC_OVERLAP_MILLIS = 60 * 1000;
+
+    private final File file;
+    private final String account;
+    private final Map<String, ContactRecord> records = new LinkedHashMap<String, ContactRecord>();
+    private String ownerName;
+    private long lastSync;
+
+    public ContactCache(File cacheDir, String inAccount) {
+        account = inAccount;
+        file = new File(cacheDir, inAccount.replaceAll("[^A-Za-z0-9@._-]", "_") + ".atom");
+    }
+
+    /**
+     * @return directory set with the deduper.cacheDir system property, ./contacts-cache by default
+     */
+    public static File getDefaultCacheDir() {
+        return new File(System.getProperty("deduper.cacheDir", "contacts-cache"));
+    }
+
+    public static Object lockFor(String account) {
+        Object lock = ACCOUNT_LOCKS.get(account);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = ACCOUNT_LOCKS.putIfAbsent(account, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Loads the cached contacts, if there are any
+     * @return false if there was no usable cache file
+     */
+    public boolean load() throws IOException {
+        records.clear();
+        lastSync = 0;
+        if (!file.exists()) {
+            return false;
+        }
+        AtomContactSource source = new AtomContactSource(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (!account.equals(source.getFeedId())) {
+                LOGGER.warn("Ignoring cache file " + file + ", it belongs to " + source.getFeedId());
+                return false;
+            }
+            ownerName = source.getOwnerName();
+            ContactRecord record;
+            while ((record = source.nextRecord()) != null) {
+                records.put(record.getId(), record);
+            }
+            lastSync = source.getFeedUpdated();
+        } catch (IOException e) {
+            LOGGER.warn("Ignoring unreadable cache file " + file, e);
+            records.clear();
+            lastSync = 0;
+            return false;
+        } finally {
+            source.close();
+        }
+        LOGGER.debug("Loaded " + records.size() + " cached contacts for " + account);
+        return true;
+    }
+
+    /**
+     * Brings the cache up to date with the feed - the whole feed if the cache is empty, otherwise only
+     * what changed since the last sync. If the feed refuses the delta query (ie the last sync is too old
+     * for it to still know about deletions), falls back to reading the whole feed.
+     */
+    public SyncResult sync(ContactFeedClient client, int pageSize, int maxConcurrentPages)
+            throws IOException, ServiceException {
+        if (lastSync > 0) {
+            try {
+                return sync(client, pageSize, maxConcurrentPages, Math.max(1, lastSync - SYNC_OVERLAP_MILLIS));
+            } catch (ServiceException e) {
+                LOGGER.warn("Delta sync for " + account + " failed, reading all the contacts instead", e);
+            }
+        }
+        return sync(client, pageSize, maxConcurrentPages, 0);
+    }
+
+    private SyncResult sync(ContactFeedClient client, int pageSize, int maxConcurrentPages, long updatedMin)
+            throws IOException, ServiceException {
+        ContactFeedPipeline pipeline = new ContactFeedPipeline(client, pageSize, maxConcurrentPages, updatedMin);
+        SyncResult result = new SyncResult(updatedMin == 0);
+        try {
+            ContactFeed firstPage = pipeline.start();
+            // the feed's own clock, so the next delta doesn't depend on ours
+            long syncTime = (firstPage.getUpdated() != null) ? firstPage.getUpdated().getValue()
+                    : System.currentTimeMillis();
+            if (updatedMin == 0) {
+                records.clear();
+            }
+            ownerName = firstPage.getTitle().getPlainText();
+            List<ContactEntry> page;
+            while ((page = pipeline.nextPage()) != null) {
+                for (ContactEntry entry : page) {
+                    result.entriesRead++;
+                    if (entry.getExtension(Deleted.class) != null) {
+                        if (records.remove(entry.getId()) != null) {
+                            result.deletedIds.add(entry.getId());
+                        }
+                    } else {
+                        ContactRecord record = ContactRecord.fromEntry(entry);
+                        if (records.put(entry.getId(), record) == null) {
+                            result.added++;
+                        } else {
+                            result.updated++;
+                        }
+                        result.changedRecords.add(record);
+                    }
+                }
+            }
+            result.pagesFetched = pipeline.getPagesFetched();
+            lastSync = syncTime;
+        } finally {
+            pipeline.close();
+        }
+        LOGGER.info("Synced contacts for " + account + ": " + result);
+        return result;
+    }
+
+    /**
+     * Writes the cache out, replacing the previous file only once the new one is complete
+     */
+    public void save() throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create cache directory " + dir);
+        }
+        File tmpFile = new File(dir, file.getName() + ".tmp");
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(tmpFile), 64 * 1024);
+        try {
+            XMLStreamWriter writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(output, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.setDefaultNamespace(AtomContactSource.ATOM_NS);
+            writer.setPrefix("gd", AtomContactSource.GD_NS);
+            writer.writeStartElement(AtomContactSource.ATOM_NS, "feed");
+            writer.writeDefaultNamespace(AtomContactSource.ATOM_NS);
+            writer.writeNamespace("gd", AtomContactSource.GD_NS);
+            writeText(writer, AtomContactSource.ATOM_NS, "id", account);
+            writeText(writer, AtomContactSource.ATOM_NS, "title", ownerName);
+            writeText(writer, AtomContactSource.ATOM_NS, "updated", new DateTime(lastSync).toString());
+            for (ContactRecord record : records.values()) {
+                writeRecord(writer, record);
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            IOUtils.closeQuietly(output);
+            tmpFile.delete();
+            throw new IOException("Failed to write cache file " + file, e);
+        }
+        output.close();
+        if (!tmpFile.renameTo(file)) {
+            // renameTo won't replace an existing file everywhere
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Failed to replace cache file " + file);
+            }
+        }
+    }
+
+    private static void writeRecord(XMLStreamWriter writer, ContactRecord record) throws XMLStreamException {
+        writer.writeStartElement(AtomContactSource.ATOM_NS, "entry");
+        writeText(writer, AtomContactSource.ATOM_NS, "id", record.getId());
+        if (record.getUpdated() > 0) {
+            writeText(writer, AtomContactSource.ATOM_NS, "updated", new DateTime(record.getUpdated()).toString());
+        }
+        if (record.getFullName() != null) {
+            writer.writeStartElement(AtomContactSource.GD_NS, "name");
+            writeText(writer, AtomContactSource.GD_NS, "fullName", record.getFullName());
+            writer.writeEndElement();
+        }
+        for (String email : record.getEmails()) {
+            writer.writeEmptyElement(AtomContactSource.GD_NS, "email");
+            writer.writeAttribute("address", email);
+            if (email.equals(record.getPrimaryEmail())) {
+                writer.writeAttribute("primary", "true");
+            }
+        }
+        for (String phone : record.getPhoneNumbers()) {
+            writeText(writer, AtomContactSource.GD_NS, "phoneNumber", phone);
+        }
+        writer.writeEndElement();
+    }
+
+    private static void writeText(XMLStreamWriter writer, String namespace, String name, String text)
+            throws XMLStreamException {
+        if (text == null) {
+            return;
+        }
+        writer.writeStartElement(namespace, name);
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+    }
+
+    /**
+     * @return source handing out the cached contacts, filtered through the current ignore list
+     */
+    public ContactSource asContactSource() {
+        return asContactSource(new ContactStore());
+    }
+
+    /**
+     * @param store store to create the contacts in
+     */
+    public ContactSource asContactSource(final ContactStore store) {
+        final Iterator<ContactRecord> iterator = new ArrayList<ContactRecord>(records.values()).iterator();
+        final String owner = ownerName;
+        return new ContactSource() {
+            public GoogleContact next() {
+                return iterator.hasNext() ? iterator.next().toContact(store) : null;
+            }
+
+            public String getOwnerName() {
+                return owner;
+            }
+
+            public void close() {
+            }
+        };
+    }
+
+    public String getAccount() {
+        return account;
+    }
+
+    public String getOwnerName() {
+        return ownerName;
+    }
+
+    /**
+     * @return time of the last sync according to the feed, in millis; 0 if never synced
+     */
+    public long getLastSync() {
+        return lastSync;
+    }
+
+    public Collection<ContactRecord> getRecords() {
+        return Collections.unmodifiableCollection(records.values());
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * What a sync transferred and changed
+     */
+    public static class SyncResult {
+        private final boolean fullSync;
+        private int entriesRead;
+        private int pagesFetched;
+        private int added;
+        private int updated;
+        private final List<ContactRecord> changedRecords = new ArrayList<ContactRecord>();
+        private final List<String> deletedIds = new ArrayList<String>();
+
+        SyncResult(boolean inFullSync) {
+            fullSync = inFullSync;
+        }
+
+        public boolean isFullSync() {
+            return fullSync;
+        }
+
+        public int getEntriesRead() {
+            return entriesRead;
+        }
+
+        public int getPagesFetched() {
+            return pagesFetched;
+        }
+
+        public int getAdded() {
+            return added;
+        }
+
+        public int getUpdated() {
+            return updated;
+        }
+
+        public int getDeleted() {
+            return deletedIds.size();
+        }
+
+        /**
+         * @return contacts added or updated by the sync (all of them, for a full sync)
+         */
+        public List<ContactRecord> getChangedRecords() {
+            return changedRecords;
+        }
+
+        /**
+         * @return ids of the cached contacts the sync deleted
+         */
+        public List<String> getDeletedIds() {
+            return deletedIds;
+        }
+
+        @Override
+        public String toString() {
+            return (fullSync ? "full" : "delta") + " sync, read " + entriesRead + " entries in " + pagesFetched
+                    + " pages: " + added + " added, " + updated + " updated, " + deletedIds.size() + " deleted";
+        }
+    }
+}
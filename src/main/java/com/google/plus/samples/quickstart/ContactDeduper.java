@@ -0,0 +1,221 @@
+package com.google.plus.samples.quickstart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dedupes a batch of contacts with a disjoint-set over contact ids.
+ *
+ * Every contact added becomes one node; contacts sharing a (lowercase) full name, an email or a phone number
+ * are unioned into the same cluster, so transitive duplicates (A shares an email with B,
+ * B shares a name with C) always end up together regardless of the order they were read in.
+ * Phone numbers are compared in their {@link PhoneNumberNormalizer canonical} form, through a primitive
+ * long-keyed index, and emails by their id in the deduper's {@link ContactStore}, with the ids of emails that
+ * are the same mailbox ({@link EmailCanonicalizer}) linked together; contacts read into {@link #getStore()}
+ * are added as they are, others are copied into it first.
+ * With a {@link NameMatcher}, contacts whose names only match fuzzily ("Bob Smith" and "Smith, Robert")
+ * are unioned as well, once all of them are added.
+ * Once all contacts are added, {@link #dedupe()} merges every cluster exactly once: the
+ * contact read first survives and absorbs the rest in read order.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class ContactDeduper implements Deduper {
+    private final List<GoogleContact> contacts = new ArrayList<GoogleContact>();
+    // key each contact was first linked to another one on, by id
+    private final List<String> linkKeys = new ArrayList<String>();
+    private final DisjointSet clusters = new DisjointSet(1024);
+    private final Map<String, Integer> nameToId = new HashMap<String, Integer>();
+    // contact id by email id, -1 for emails not seen yet
+    private int[] emailOwners = new int[1024];
+    // id of the first email seen by the hash of its canonical form
+    private final LongIntHashMap canonicalEmails = new LongIntHashMap(1024);
+    private final EmailCanonicalizer emailCanonicalizer = EmailCanonicalizer.DEFAULT;
+    private int uniqueEmails;
+    private final LongIntHashMap phoneToId = new LongIntHashMap(1024);
+    private final PhoneNumberNormalizer phoneNormalizer;
+    private final ContactStore store = new ContactStore();
+    private final NameMatcher nameMatcher;
+    private final NameMatcher.Index<Integer> fuzzyNames;
+    private List<GoogleContact> deduped;
+
+    public ContactDeduper() {
+        this(PhoneNumberNormalizer.DEFAULT, NameMatcher.getDefault());
+    }
+
+    public ContactDeduper(PhoneNumberNormalizer inPhoneNormalizer) {
+        this(inPhoneNormalizer, null);
+    }
+
+    /**
+     * @param inNameMatcher matcher for names that aren't exactly the same, or null for exact matches only
+     */
+    public ContactDeduper(PhoneNumberNormalizer inPhoneNormalizer, NameMatcher inNameMatcher) {
+        phoneNormalizer = inPhoneNormalizer;
+        nameMatcher = inNameMatcher;
+        fuzzyNames = (inNameMatcher == null) ? null : new NameMatcher.Index<Integer>(inNameMatcher);
+        Arrays.fill(emailOwners, -1);
+    }
+
+    /**
+     * @return store to create the contacts in, so they don't need to be copied when added
+     */
+    public ContactStore getStore() {
+        return store;
+    }
+
+    /**
+     * Adds the contact and links it to any already-seen contact with the same name, email or phone number
+     * @return id of the contact within this deduper
+     */
+    public int add(GoogleContact contact) {
+        if (deduped != null) {
+            throw new IllegalStateException("Contacts were already deduped");
+        }
+        contact = store.adopt(contact);
+        int id = clusters.makeSet();
+        contacts.add(contact);
+        linkKeys.add(null);
+        if (contact.getFullName() != null) {
+            link(nameToId, contact.getFullName().toLowerCase(), id, "name:");
+            if (fuzzyNames != null) {
+                NameMatcher.Name name = nameMatcher.prepare(contact.getFullName());
+                if (name != null) {
+                    fuzzyNames.add(id, name);
+                }
+            }
+        }
+        for (int emailId : contact.getEmailIds()) {
+            linkEmail(emailId, id);
+        }
+        for (String phone : contact.getPhoneNumbers()) {
+            long phoneKey = phoneNormalizer.normalize(phone);
+            if (phoneKey != PhoneNumberNormalizer.INVALID) {
+                int owner = phoneToId.putIfAbsent(phoneKey, id, -1);
+                if (owner >= 0) {
+                    union(owner, id, "phone:" + phone);
+                }
+            }
+        }
+        return id;
+    }
+
+    private void link(Map<String, Integer> index, String key, int id, String keyType) {
+        Integer owner = index.get(key);
+        if (owner == null) {
+            index.put(key, id);
+        } else {
+            union(owner, id, keyType + key);
+        }
+    }
+
+    /**
+     * Links the contact on the email, or on an earlier email that's the same mailbox (see {@link EmailCanonicalizer}).
+     * Each email id is only canonicalized the first time it's seen, later ones find their owner right away.
+     */
+    private void linkEmail(int emailId, int id) {
+        if (emailId >= emailOwners.length) {
+            int oldLength = emailOwners.length;
+            emailOwners = Arrays.copyOf(emailOwners, Math.max(oldLength << 1, emailId + 1));
+            Arrays.fill(emailOwners, oldLength, emailOwners.length, -1);
+        }
+        StringDictionary emails = store.getEmails();
+        int owner = emailOwners[emailId];
+        if (owner < 0) {
+            String email = emails.get(emailId);
+            int canonicalId = canonicalEmails.putIfAbsent(emailCanonicalizer.hash(email), emailId, -1);
+            if (canonicalId >= 0 && emailCanonicalizer.equivalent(email, emails.get(canonicalId))) {
+                owner = emailOwners[canonicalId];
+            } else {
+                uniqueEmails++;
+            }
+            emailOwners[emailId] = (owner < 0) ? id : owner;
+        }
+        if (owner >= 0) {
+            union(owner, id, "email:" + emails.get(emailId));
+        }
+    }
+
+    /**
+     * Unions the contacts with fuzzily matching names. Done once all contacts are in, since which names
+     * get compared depends on how large their blocks end up
+     */
+    private void linkFuzzyNames() {
+        for (int id = 0; id < contacts.size(); id++) {
+            NameMatcher.Name name = fuzzyNames.getName(id);
+            if (name != null) {
+                for (Integer owner : fuzzyNames.findMatches(id, name)) {
+                    if (owner < id) {
+                        union(owner, id, "fuzzyName:" + name);
+                    }
+                }
+            }
+        }
+    }
+
+    private void union(int owner, int id, String key) {
+        if (clusters.union(owner, id)) {
+            if (linkKeys.get(owner) == null) {
+                linkKeys.set(owner, key);
+            }
+            if (linkKeys.get(id) == null) {
+                linkKeys.set(id, key);
+            }
+        }
+    }
+
+    /**
+     * Merges each cluster into its first-read contact, without keeping track of the merges
+     * @return one contact per cluster, in the order the surviving contacts were read
+     */
+    public List<GoogleContact> dedupe() {
+        return dedupe(new DedupeSession());
+    }
+
+    /**
+     * Merges each cluster into its first-read contact.
+     * @param session records every merge, along with the key that linked the merged contact into its cluster
+     * @return one contact per cluster, in the order the surviving contacts were read
+     */
+    public List<GoogleContact> dedupe(DedupeSession session) {
+        if (deduped != null) {
+            return deduped;
+        }
+        if (fuzzyNames != null) {
+            linkFuzzyNames();
+        }
+        int numContacts = contacts.size();
+        int[] survivorOfRoot = new int[numContacts];
+        Arrays.fill(survivorOfRoot, -1);
+        List<GoogleContact> result = new ArrayList<GoogleContact>();
+        // ids are visited in increasing order, so the first one seen for a root is the survivor
+        for (int id = 0; id < numContacts; id++) {
+            int root = clusters.find(id);
+            int survivor = survivorOfRoot[root];
+            if (survivor < 0) {
+                survivorOfRoot[root] = id;
+                result.add(contacts.get(id));
+            } else {
+                contacts.get(survivor).merge(contacts.get(id), session, linkKeys.get(id));
+            }
+        }
+        deduped = result;
+        return deduped;
+    }
+
+    public int getNumContacts() {
+        return contacts.size();
+    }
+
+    public int getUniqueEmailCount() {
+        return uniqueEmails;
+    }
+
+    public int getUniquePhoneCount() {
+        return phoneToId.size();
+    }
+}
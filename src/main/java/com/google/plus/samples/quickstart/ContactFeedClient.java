@@ -0,0 +1,23 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gdata.data.contacts.ContactFeed;
+import com.google.gdata.util.ServiceException;
+
+import java.io.IOException;
+
+/**
+ * Fetches one page of a contacts feed.
+ * Implementations have to be safe to call from several threads at once.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public interface ContactFeedClient {
+    /**
+     * @param startIndex 1-based index of the first entry to fetch
+     * @param maxResults page size
+     * @param updatedMin only fetch entries updated at or after this time (millis), including deleted ones
+     *                   marked with gd:deleted; 0 for the whole feed
+     */
+    ContactFeed fetchPage(int startIndex, int maxResults, long updatedMin) throws IOException, ServiceException;
+}
@@ -0,0 +1,189 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.contacts.ContactFeed;
+import com.google.gdata.util.ServiceException;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches the pages of a contacts feed ahead of the consumer, so network latency overlaps with dedupe.
+ *
+ * The first page is fetched synchronously to learn the feed title and openSearch:totalResults,
+ * which gives the start index of every remaining page up front. Those are then requested by up to
+ * maxConcurrentPages threads, and the fetched pages wait in a bounded queue (at most maxConcurrentPages
+ * in flight or not yet consumed), so a slow consumer doesn't pile up the whole address book in memory.
+ * Pages are always handed out in feed order, whichever one arrives first.
+ * With {@link VirtualThreads#isEnabled() virtual threads} on, every page is fetched on a virtual thread of its own.
+ *
+ * If the feed grows while it's being read (the last precomputed page comes back full), or doesn't report
+ * its size, the remaining pages are fetched one at a time until an empty or short page shows up.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class ContactFeedPipeline implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(ContactFeedPipeline.class);
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final ContactFeedClient client;
+    private final int pageSize;
+    private final int maxConcurrentPages;
+    private final long updatedMin;
+    private final ExecutorService executor;
+    private final Queue<Future<ContactFeed>> pages = new ArrayDeque<Future<ContactFeed>>();
+    private ContactFeed firstPage;
+    private boolean firstPageConsumed;
+    private int nextStartIndex;
+    private int lastPrecomputedStartIndex;
+    private boolean reachedEnd;
+    private int pagesFetched;
+
+    public ContactFeedPipeline(ContactFeedClient inClient, int inPageSize, int inMaxConcurrentPages) {
+        this(inClient, inPageSize, inMaxConcurrentPages, 0);
+    }
+
+    /**
+     * @param inUpdatedMin only read entries updated since this time (millis), including deletions; 0 for all
+     */
+    public ContactFeedPipeline(ContactFeedClient inClient, int inPageSize, int inMaxConcurrentPages,
+                               long inUpdatedMin) {
+        if (inPageSize <= 0 || inMaxConcurrentPages <= 0) {
+            throw new IllegalArgumentException("Page size and concurrency have to be positive");
+        }
+        client = inClient;
+        pageSize = inPageSize;
+        maxConcurrentPages = inMaxConcurrentPages;
+        updatedMin = inUpdatedMin;
+        if (VirtualThreads.isEnabled()) {
+            // the queue already keeps at most maxConcurrentPages in flight
+            executor = VirtualThreads.newThreadPerTaskExecutor("contact-feed-fetcher-");
+        } else {
+            executor = Executors.newFixedThreadPool(inMaxConcurrentPages, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "contact-feed-fetcher-" + THREAD_COUNTER.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Fetches the first page, and starts fetching the following ones in the background
+     * @return the first page of the feed
+     */
+    public ContactFeed start() throws IOException, ServiceException {
+        if (firstPage != null) {
+            return firstPage;
+        }
+        firstPage = client.fetchPage(1, pageSize, updatedMin);
+        pagesFetched++;
+        int numRead = firstPage.getEntries().size();
+        int totalResults = firstPage.getTotalResults();
+        nextStartIndex = 1 + pageSize;
+        if (numRead < pageSize) {
+            reachedEnd = true;
+        } else if (totalResults > 0) {
+            // start index of the last page we know of from the total
+            lastPrecomputedStartIndex = 1 + ((totalResults - 1) / pageSize) * pageSize;
+        }
+        LOGGER.debug("Feed has " + totalResults + " contacts, reading in pages of " + pageSize);
+        fillQueue();
+        return firstPage;
+    }
+
+    /**
+     * @return entries of the next page in feed order, or null once the feed is exhausted
+     */
+    public List<ContactEntry> nextPage() throws IOException, ServiceException {
+        start();
+        if (!firstPageConsumed) {
+            firstPageConsumed = true;
+            return firstPage.getEntries().isEmpty() ? null : firstPage.getEntries();
+        }
+        Future<ContactFeed> next = pages.poll();
+        if (next == null) {
+            return null;
+        }
+        ContactFeed page = await(next);
+        pagesFetched++;
+        int numRead = page.getEntries().size();
+        if (numRead < pageSize) {
+            // drop anything queued past the end, it can only be empty
+            reachedEnd = true;
+            cancelQueued();
+        }
+        fillQueue();
+        return numRead == 0 ? null : page.getEntries();
+    }
+
+    public int getPagesFetched() {
+        return pagesFetched;
+    }
+
+    public void close() {
+        cancelQueued();
+        executor.shutdownNow();
+    }
+
+    private void fillQueue() {
+        while (!reachedEnd && pages.size() < maxConcurrentPages && nextStartIndex <= lastPrecomputedStartIndex) {
+            submit(nextStartIndex);
+            nextStartIndex += pageSize;
+        }
+        if (!reachedEnd && pages.isEmpty()) {
+            // past the reported total (or there was none), keep going one page at a time
+            submit(nextStartIndex);
+            nextStartIndex += pageSize;
+        }
+    }
+
+    private void submit(final int startIndex) {
+        pages.add(executor.submit(new Callable<ContactFeed>() {
+            public ContactFeed call() throws Exception {
+                LOGGER.debug("Fetching contacts page at startIndex " + startIndex);
+                return client.fetchPage(startIndex, pageSize, updatedMin);
+            }
+        }));
+    }
+
+    private void cancelQueued() {
+        Future<ContactFeed> queued;
+        while ((queued = pages.poll()) != null) {
+            queued.cancel(true);
+        }
+    }
+
+    private static ContactFeed await(Future<ContactFeed> page) throws IOException, ServiceException {
+        try {
+            return page.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a contacts page");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof ServiceException) {
+                throw (ServiceException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to fetch contacts page", cause);
+        }
+    }
+}
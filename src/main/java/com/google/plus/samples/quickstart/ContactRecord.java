@@ -0,0 +1,92 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.extensions.Email;
+import com.google.gdata.data.extensions.PhoneNumber;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Raw contact data as it came from the feed or an export, before any ignore-list filtering -
+ * what the contacts cache stores, so a changed ignore list still applies to cached contacts.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class ContactRecord {
+    private final String id;
+    private final long updated;
+    private final String fullName;
+    private final List<String> emails;
+    private final String primaryEmail;
+    private final List<String> phoneNumbers;
+
+    /**
+     * @param inId feed entry id, or null if the source has none
+     * @param inUpdated last update time in millis, 0 if unknown
+     */
+    public ContactRecord(String inId, long inUpdated, String inFullName, List<String> inEmails, String inPrimaryEmail,
+                         List<String> inPhoneNumbers) {
+        id = inId;
+        updated = inUpdated;
+        fullName = inFullName;
+        emails = Collections.unmodifiableList(inEmails);
+        primaryEmail = inPrimaryEmail;
+        phoneNumbers = Collections.unmodifiableList(inPhoneNumbers);
+    }
+
+    public static ContactRecord fromEntry(ContactEntry entry) {
+        long start = System.nanoTime();
+        List<String> emails = new ArrayList<String>(entry.getEmailAddresses().size());
+        String primaryEmail = null;
+        for (Email email : entry.getEmailAddresses()) {
+            emails.add(email.getAddress());
+            if (email.getPrimary()) {
+                primaryEmail = email.getAddress();
+            }
+        }
+        List<String> phones = new ArrayList<String>(entry.getPhoneNumbers().size());
+        for (PhoneNumber number : entry.getPhoneNumbers()) {
+            phones.add(number.getPhoneNumber());
+        }
+        String fullName = (entry.getName() != null && entry.getName().getFullName() != null)
+                ? entry.getName().getFullName().getValue() : null;
+        long updated = (entry.getUpdated() != null) ? entry.getUpdated().getValue() : 0;
+        ContactRecord record = new ContactRecord(entry.getId(), updated, fullName, emails, primaryEmail, phones);
+        DedupeMetrics.ENTRY_DECODE.observeSince(start);
+        return record;
+    }
+
+    /**
+     * @return a new contact in the given store, with ignored emails filtered out
+     */
+    public GoogleContact toContact(ContactStore store) {
+        return new GoogleContact(id, fullName, emails, primaryEmail, phoneNumbers, store);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+
+    public List<String> getEmails() {
+        return emails;
+    }
+
+    public String getPrimaryEmail() {
+        return primaryEmail;
+    }
+
+    public List<String> getPhoneNumbers() {
+        return phoneNumbers;
+    }
+}
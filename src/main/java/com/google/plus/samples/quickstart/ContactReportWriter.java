@@ -0,0 +1,420 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.commons.lang.StringEscapeUtils;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Streams the deduped contacts report out in one sequential pass through a single buffered writer.
+ *
+ * The report is made of a summary followed by three sections - deduped contacts, emails with no names,
+ * and names with no emails - and finally the list of merged names. Callers write the records in that order;
+ * moving on to a later section closes the earlier ones, so sections are always present even when empty.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public abstract class ContactReportWriter implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    protected enum Section {CONTACTS, NO_NAME_EMAILS, JUST_NAMES}
+
+    protected final Writer out;
+    protected Summary summary;
+    // index of the current section, -1 before the first one
+    private int sectionIndex = -1;
+
+    protected ContactReportWriter(Writer inOut) {
+        out = inOut;
+    }
+
+    /**
+     * Opens the file for writing (truncating it) and returns a writer for the format
+     */
+    public static ContactReportWriter open(File file, ReportFormat format) throws IOException {
+        return create(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, false), "UTF-8"),
+                BUFFER_SIZE), format);
+    }
+
+    public static ContactReportWriter create(Writer out, ReportFormat format) {
+        switch (format) {
+            case CSV:
+                return new CsvReportWriter(out);
+            case JSON:
+                return new JsonLinesReportWriter(out);
+            default:
+                return new HtmlReportWriter(out);
+        }
+    }
+
+    public void writeSummary(Summary inSummary) throws IOException {
+        if (summary != null) {
+            throw new IllegalStateException("Summary was already written");
+        }
+        summary = inSummary;
+        doWriteSummary();
+    }
+
+    public void writeContact(GoogleContact contact) throws IOException {
+        enterSection(Section.CONTACTS);
+        doWriteContact(contact);
+    }
+
+    public void writeNoNameEmail(String email) throws IOException {
+        enterSection(Section.NO_NAME_EMAILS);
+        doWriteNoNameEmail(email);
+    }
+
+    public void writeJustName(String name) throws IOException {
+        enterSection(Section.JUST_NAMES);
+        doWriteJustName(name);
+    }
+
+    /**
+     * Closes any remaining sections and writes out the merged names, completing the report
+     */
+    public void finish(String[] mergedNames) throws IOException {
+        enterSection(null);
+        doFinish(mergedNames);
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Opens every section up to the target one, in order, closing the current one first.
+     * A null target means past the last section.
+     */
+    private void enterSection(Section target) throws IOException {
+        if (summary == null) {
+            throw new IllegalStateException("Summary has to be written first");
+        }
+        int targetIndex = (target == null) ? Section.values().length : target.ordinal();
+        if (targetIndex < sectionIndex) {
+            throw new IllegalStateException("Section " + target + " was already written");
+        }
+        while (sectionIndex < targetIndex) {
+            if (sectionIndex >= 0) {
+                endSection(Section.values()[sectionIndex]);
+            }
+            sectionIndex++;
+            if (sectionIndex < Section.values().length) {
+                beginSection(Section.values()[sectionIndex]);
+            }
+        }
+    }
+
+    protected abstract void doWriteSummary() throws IOException;
+
+    protected void beginSection(Section section) throws IOException {
+    }
+
+    protected void endSection(Section section) throws IOException {
+    }
+
+    protected abstract void doWriteContact(GoogleContact contact) throws IOException;
+
+    protected abstract void doWriteNoNameEmail(String email) throws IOException;
+
+    protected abstract void doWriteJustName(String name) throws IOException;
+
+    protected abstract void doFinish(String[] mergedNames) throws IOException;
+
+    /**
+     * Totals shown at the top of the report
+     */
+    public static class Summary {
+        private final String contactsOwner;
+        private final int totalContactsRead;
+        private final int uniqueEmails;
+        private final int numContacts;
+        private final int numNoNameEmails;
+        private final int numJustNames;
+
+        public Summary(String inContactsOwner, int inTotalContactsRead, int inUniqueEmails, int inNumContacts,
+                       int inNumNoNameEmails, int inNumJustNames) {
+            contactsOwner = inContactsOwner;
+            totalContactsRead = inTotalContactsRead;
+            uniqueEmails = inUniqueEmails;
+            numContacts = inNumContacts;
+            numNoNameEmails = inNumNoNameEmails;
+            numJustNames = inNumJustNames;
+        }
+
+        public String getContactsOwner() {
+            return contactsOwner;
+        }
+
+        public int getTotalContactsRead() {
+            return totalContactsRead;
+        }
+
+        public int getUniqueEmails() {
+            return uniqueEmails;
+        }
+
+        public int getNumContacts() {
+            return numContacts;
+        }
+
+        public int getNumNoNameEmails() {
+            return numNoNameEmails;
+        }
+
+        public int getNumJustNames() {
+            return numJustNames;
+        }
+    }
+
+    /**
+     * The original deduped-output.html
+     * I such at front-end, so this is a nice throwback to 1995
+     */
+    static class HtmlReportWriter extends ContactReportWriter {
+        HtmlReportWriter(Writer inOut) {
+            super(inOut);
+        }
+
+        @Override
+        protected void doWriteSummary() throws IOException {
+            out.write("<html>\n<body>\n");
+            out.write("<em>[");
+            escape(summary.getContactsOwner());
+            out.write("]: total # of contacts read: " + summary.getTotalContactsRead() + "</em><br>\n");
+            out.write("<em>total unique emails: " + summary.getUniqueEmails() + "</em><br/>\n");
+            out.write("<em>Emails with no names: " + summary.getNumNoNameEmails() + "</em><br>\n");
+            out.write("<em>Just names with no emails: " + summary.getNumJustNames() + "</em><br>\n");
+        }
+
+        @Override
+        protected void beginSection(Section section) throws IOException {
+            switch (section) {
+                case CONTACTS:
+                    out.write("<h3>All Deduped Contacts: " + summary.getNumContacts() + "</h3><br/>\n");
+                    out.write("<table border='1'>\n");
+                    out.write("<th width='15%'>Name</th><th width='15%'>Primary email</th><th>All Emails</th>\n");
+                    break;
+                case NO_NAME_EMAILS:
+                    out.write("<p/>");
+                    out.write("<em>total unique emails: " + summary.getUniqueEmails() + "</em><br>\n");
+                    out.write("<h3>Emails with no names: " + summary.getNumNoNameEmails() + "</h3><br>\n");
+                    break;
+                case JUST_NAMES:
+                    out.write("<p/>\n");
+                    out.write("<h3>Just names with no emails: " + summary.getNumJustNames() + "</h3><br>\n");
+                    break;
+            }
+        }
+
+        @Override
+        protected void endSection(Section section) throws IOException {
+            if (section == Section.CONTACTS) {
+                out.write("</table>\n");
+            }
+        }
+
+        @Override
+        protected void doWriteContact(GoogleContact contact) throws IOException {
+            out.write("<tr><td>");
+            escape(contact.getFullName());
+            out.write("</td><td>");
+            escape(contact.getPrimaryEmail());
+            out.write("</td><td>");
+            escape(Arrays.toString(contact.getEmails().toArray()));
+            out.write("</td></tr>\n");
+        }
+
+        @Override
+        protected void doWriteNoNameEmail(String email) throws IOException {
+            escape(email);
+            out.write("<br/>\n");
+        }
+
+        @Override
+        protected void doWriteJustName(String name) throws IOException {
+            escape(name);
+            out.write("<br/>\n");
+        }
+
+        @Override
+        protected void doFinish(String[] mergedNames) throws IOException {
+            out.write("<em>Merged " + mergedNames.length + " contacts: ");
+            escape(Arrays.toString(mergedNames));
+            out.write("<br/>\n");
+            out.write("</body></html>\n");
+        }
+
+        private void escape(String text) throws IOException {
+            StringEscapeUtils.escapeHtml(out, String.valueOf(text));
+        }
+    }
+
+    /**
+     * One row per record: record type, name, primary email, emails and phones (both ';' separated).
+     * The summary isn't part of the CSV, it's all derivable from the rows.
+     */
+    static class CsvReportWriter extends ContactReportWriter {
+        CsvReportWriter(Writer inOut) {
+            super(inOut);
+        }
+
+        @Override
+        protected void doWriteSummary() throws IOException {
+            out.write("record_type,name,primary_email,emails,phones\n");
+        }
+
+        @Override
+        protected void doWriteContact(GoogleContact contact) throws IOException {
+            row("contact", contact.getFullName(), contact.getPrimaryEmail(), contact.getEmails(), contact.getPhoneNumbers());
+        }
+
+        @Override
+        protected void doWriteNoNameEmail(String email) throws IOException {
+            row("no_name_email", null, email, null, null);
+        }
+
+        @Override
+        protected void doWriteJustName(String name) throws IOException {
+            row("just_name", name, null, null, null);
+        }
+
+        @Override
+        protected void doFinish(String[] mergedNames) throws IOException {
+            for (String name : mergedNames) {
+                row("merged_name", name, null, null, null);
+            }
+        }
+
+        private void row(String type, String name, String primaryEmail, Collection<String> emails,
+                         Collection<String> phones) throws IOException {
+            out.write(type);
+            out.write(',');
+            field(name);
+            out.write(',');
+            field(primaryEmail);
+            out.write(',');
+            field(emails);
+            out.write(',');
+            field(phones);
+            out.write('\n');
+        }
+
+        private void field(Collection<String> values) throws IOException {
+            if (values == null || values.isEmpty()) {
+                return;
+            }
+            StringBuilder joined = new StringBuilder();
+            for (Iterator<String> it = values.iterator(); it.hasNext(); ) {
+                joined.append(it.next());
+                if (it.hasNext()) {
+                    joined.append(';');
+                }
+            }
+            field(joined.toString());
+        }
+
+        private void field(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = (c == ',' || c == '"' || c == '\n' || c == '\r');
+            }
+            if (!quote) {
+                out.write(value);
+                return;
+            }
+            out.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    out.write('"');
+                }
+                out.write(c);
+            }
+            out.write('"');
+        }
+    }
+
+    /**
+     * Newline-delimited JSON, one object per line with a "type" field
+     */
+    static class JsonLinesReportWriter extends ContactReportWriter {
+        private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().serializeNulls().create();
+
+        JsonLinesReportWriter(Writer inOut) {
+            super(inOut);
+        }
+
+        @Override
+        protected void doWriteSummary() throws IOException {
+            Map<String, Object> record = record("summary");
+            record.put("owner", summary.getContactsOwner());
+            record.put("totalContactsRead", summary.getTotalContactsRead());
+            record.put("uniqueEmails", summary.getUniqueEmails());
+            record.put("contacts", summary.getNumContacts());
+            record.put("noNameEmails", summary.getNumNoNameEmails());
+            record.put("justNames", summary.getNumJustNames());
+            line(record);
+        }
+
+        @Override
+        protected void doWriteContact(GoogleContact contact) throws IOException {
+            Map<String, Object> record = record("contact");
+            record.put("name", contact.getFullName());
+            record.put("primaryEmail", contact.getPrimaryEmail());
+            record.put("emails", contact.getEmails());
+            record.put("phones", contact.getPhoneNumbers());
+            line(record);
+        }
+
+        @Override
+        protected void doWriteNoNameEmail(String email) throws IOException {
+            Map<String, Object> record = record("noNameEmail");
+            record.put("email", email);
+            line(record);
+        }
+
+        @Override
+        protected void doWriteJustName(String name) throws IOException {
+            Map<String, Object> record = record("justName");
+            record.put("name", name);
+            line(record);
+        }
+
+        @Override
+        protected void doFinish(String[] mergedNames) throws IOException {
+            Map<String, Object> record = record("merged");
+            record.put("names", mergedNames);
+            line(record);
+        }
+
+        private Map<String, Object> record(String type) {
+            Map<String, Object> record = new LinkedHashMap<String, Object>();
+            record.put("type", type);
+            return record;
+        }
+
+        private void line(Map<String, Object> record) throws IOException {
+            GSON.toJson(record, out);
+            out.write('\n');
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.google.plus.samples.quickstart;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where the contacts to dedupe come from - the live Google feed, or an exported address book.
+ * Contacts are handed out one at a time, so sources can stream arbitrarily large address books.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public interface ContactSource extends Closeable {
+    /**
+     * @return the next contact, or null once the source is exhausted
+     */
+    GoogleContact next() throws IOException;
+
+    /**
+     * @return name of the address book owner, or null if the source doesn't know it
+     */
+    String getOwnerName() throws IOException;
+}
@@ -0,0 +1,84 @@
+package com.google.plus.samples.quickstart;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * Opens exported address books as {@link ContactSource}s, picking the parser from the file extension:
+ * .xml/.atom for Atom feed exports, .vcf/.vcard for vCards and .csv for Google CSV.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class ContactSources {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ContactSources() {
+    }
+
+    public static boolean isSupported(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".xml") || name.endsWith(".atom") || name.endsWith(".vcf") || name.endsWith(".vcard")
+                || name.endsWith(".csv");
+    }
+
+    public static ContactSource open(File file) throws IOException {
+        return open(file, new ContactStore());
+    }
+
+    /**
+     * @param store store to create the contacts in, ie the deduper's
+     */
+    public static ContactSource open(File file, ContactStore store) throws IOException {
+        String name = file.getName().toLowerCase();
+        InputStream input = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            if (name.endsWith(".xml") || name.endsWith(".atom")) {
+                // the XML parser sorts out the encoding itself
+                return new AtomContactSource(input, store);
+            } else if (name.endsWith(".vcf") || name.endsWith(".vcard")) {
+                return new VCardContactSource(textReader(input), store);
+            } else if (name.endsWith(".csv")) {
+                return new GoogleCsvContactSource(textReader(input), store);
+            }
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+        input.close();
+        throw new IllegalArgumentException("Don't know how to read contacts from " + file);
+    }
+
+    /**
+     * Reader for a text export - UTF-8 unless there's a byte order mark saying otherwise
+     * (Google CSV exports used to be UTF-16)
+     */
+    static Reader textReader(InputStream input) throws IOException {
+        input.mark(3);
+        int b1 = input.read();
+        int b2 = input.read();
+        int b3 = input.read();
+        String charset = "UTF-8";
+        int bomLength = 0;
+        if (b1 == 0xEF && b2 == 0xBB && b3 == 0xBF) {
+            bomLength = 3;
+        } else if (b1 == 0xFF && b2 == 0xFE) {
+            charset = "UTF-16LE";
+            bomLength = 2;
+        } else if (b1 == 0xFE && b2 == 0xFF) {
+            charset = "UTF-16BE";
+            bomLength = 2;
+        }
+        input.reset();
+        for (int i = 0; i < bomLength; i++) {
+            input.read();
+        }
+        return new BufferedReader(new InputStreamReader(input, charset), BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,44 @@
+package com.google.plus.samples.quickstart;
+
+/**
+ * Dictionaries of the emails and phone numbers of a set of contacts (ie everything one dedupe run reads).
+ * A {@link GoogleContact} created in a store keeps its emails and phones as sorted arrays of ids into the store's
+ * dictionaries, so a contact with one email costs an int array instead of a HashSet, and contacts of the same store
+ * are merged and indexed by id without touching the strings.
+ * Contacts created without a store get a small one of their own; {@link #adopt} brings them over.
+ * Thread safe.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class ContactStore {
+    private final StringDictionary emails;
+    private final StringDictionary phones;
+
+    public ContactStore() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedContacts roughly how many contacts the store will have, to size the dictionaries
+     */
+    public ContactStore(int expectedContacts) {
+        emails = new StringDictionary(expectedContacts);
+        phones = new StringDictionary(expectedContacts);
+    }
+
+    public StringDictionary getEmails() {
+        return emails;
+    }
+
+    public StringDictionary getPhones() {
+        return phones;
+    }
+
+    /**
+     * @return the contact itself if it's in this store already, otherwise a copy of it in this store
+     */
+    public GoogleContact adopt(GoogleContact contact) {
+        return (contact.getStore() == this) ? contact : new GoogleContact(contact, this);
+    }
+}
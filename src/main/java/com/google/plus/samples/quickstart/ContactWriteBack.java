@@ -0,0 +1,323 @@
+package com.google.plus.samples.quickstart;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes a dedupe result back to the address book: every contact that absorbed others is updated with their names,
+ * emails and phone numbers, and the absorbed contacts are deleted.
+ *
+ * Operations go out as batch requests of up to {@link #MAX_BATCH_SIZE}, with up to maxConcurrentBatches of them in
+ * flight. All the updates go first, and a cluster's absorbed contacts are only deleted once its survivor was
+ * updated, so a failed update never loses what the absorbed contacts had.
+ * Operations that fail with a server error or a rate limit (5xx, or the whole batch failing) are sent again in a
+ * later round, after a backoff that doubles every round, up to maxAttempts times. Any other status (ie 404 for a
+ * contact deleted since it was read, 412 for one edited since) is final and ends up in the result.
+ * A dry run sends nothing and only counts what would be sent.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class ContactWriteBack {
+    private static final Logger LOGGER = Logger.getLogger(ContactWriteBack.class);
+    public static final int MAX_BATCH_SIZE = 100;
+    // status of every operation of a batch that failed as a whole
+    public static final int BATCH_FAILED = 0;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final ContactBatchClient client;
+    private final int batchSize;
+    private final int maxConcurrentBatches;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final boolean dryRun;
+
+    /**
+     * @param inBatchSize operations per batch request, at most {@link #MAX_BATCH_SIZE}
+     * @param inMaxAttempts times an operation is sent before its last failure is final
+     * @param inRetryBackoffMillis wait before the first round of retries, doubled for every round after
+     * @param inDryRun true to only plan the operations, without sending any
+     */
+    public ContactWriteBack(ContactBatchClient inClient, int inBatchSize, int inMaxConcurrentBatches,
+                            int inMaxAttempts, long inRetryBackoffMillis, boolean inDryRun) {
+        if (inBatchSize <= 0 || inBatchSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch size has to be 1 to " + MAX_BATCH_SIZE + ": " + inBatchSize);
+        }
+        if (inMaxConcurrentBatches <= 0 || inMaxAttempts <= 0) {
+            throw new IllegalArgumentException("Concurrency and attempts have to be positive");
+        }
+        client = inClient;
+        batchSize = inBatchSize;
+        maxConcurrentBatches = inMaxConcurrentBatches;
+        maxAttempts = inMaxAttempts;
+        retryBackoffMillis = inRetryBackoffMillis;
+        dryRun = inDryRun;
+    }
+
+    /**
+     * Updates the survivors and deletes the contacts merged into them; contacts without a feed id are left alone
+     * @param deduped one merged contact per cluster, ie {@link DedupeResult#getDedupedContacts()}
+     */
+    public Result apply(List<GoogleContact> deduped) throws InterruptedException {
+        List<Operation> updates = new ArrayList<Operation>();
+        List<Operation> deletes = new ArrayList<Operation>();
+        for (GoogleContact contact : deduped) {
+            if (contact.getId() == null || contact.getMergedIds().isEmpty()) {
+                continue;
+            }
+            updates.add(new Operation(Operation.Type.UPDATE, contact.getId(), contact));
+            for (String mergedId : contact.getMergedIds()) {
+                deletes.add(new Operation(Operation.Type.DELETE, mergedId, contact));
+            }
+        }
+        Result result = new Result(dryRun, updates.size(), deletes.size());
+        if (dryRun) {
+            if (LOGGER.isDebugEnabled()) {
+                for (Operation operation : updates) {
+                    LOGGER.debug("Would update " + operation);
+                }
+                for (Operation operation : deletes) {
+                    LOGGER.debug("Would delete " + operation);
+                }
+            }
+            return result;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(maxConcurrentBatches, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "contact-write-back-" + THREAD_COUNTER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            Set<String> updated = run(updates, result, executor);
+            List<Operation> safeDeletes = new ArrayList<Operation>(deletes.size());
+            for (Operation delete : deletes) {
+                if (updated.contains(delete.getContact().getId())) {
+                    safeDeletes.add(delete);
+                } else {
+                    result.skippedDeletes++;
+                }
+            }
+            run(safeDeletes, result, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+        LOGGER.info("Write-back: " + result.toMap());
+        return result;
+    }
+
+    /**
+     * Sends the operations in batches, retrying what's worth retrying in rounds
+     * @return ids of the contacts whose operations succeeded
+     */
+    private Set<String> run(List<Operation> operations, Result result, ExecutorService executor)
+            throws InterruptedException {
+        Set<String> succeeded = new HashSet<String>();
+        List<Operation> pending = operations;
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            if (attempt > 1) {
+                result.retries += pending.size();
+                Thread.sleep(retryBackoffMillis << (attempt - 2));
+            }
+            List<List<Operation>> batches = new ArrayList<List<Operation>>();
+            List<Future<int[]>> statuses = new ArrayList<Future<int[]>>();
+            for (int from = 0; from < pending.size(); from += batchSize) {
+                final List<Operation> batch = pending.subList(from, Math.min(pending.size(), from + batchSize));
+                batches.add(batch);
+                statuses.add(executor.submit(new Callable<int[]>() {
+                    public int[] call() throws Exception {
+                        int[] batchStatuses = client.execute(batch);
+                        if (batchStatuses.length != batch.size()) {
+                            throw new IllegalStateException("Got " + batchStatuses.length + " statuses for "
+                                    + batch.size() + " operations");
+                        }
+                        return batchStatuses;
+                    }
+                }));
+            }
+            List<Operation> retry = new ArrayList<Operation>();
+            for (int i = 0; i < batches.size(); i++) {
+                List<Operation> batch = batches.get(i);
+                int[] batchStatuses = await(statuses.get(i), batch.size());
+                result.batches++;
+                for (int j = 0; j < batch.size(); j++) {
+                    Operation operation = batch.get(j);
+                    int status = batchStatuses[j];
+                    if (status >= 200 && status < 300) {
+                        succeeded.add(operation.getId());
+                        if (operation.getType() == Operation.Type.UPDATE) {
+                            result.updated++;
+                        } else {
+                            result.deleted++;
+                        }
+                    } else if (isRetryable(status) && attempt < maxAttempts) {
+                        retry.add(operation);
+                    } else {
+                        result.failures.put(operation.getId(), status);
+                    }
+                }
+            }
+            pending = retry;
+        }
+        return succeeded;
+    }
+
+    private static int[] await(Future<int[]> statuses, int batchSize) throws InterruptedException {
+        try {
+            return statuses.get();
+        } catch (ExecutionException e) {
+            LOGGER.warn("Batch of " + batchSize + " operations failed", e.getCause());
+            int[] failed = new int[batchSize];
+            Arrays.fill(failed, BATCH_FAILED);
+            return failed;
+        }
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == BATCH_FAILED || status >= 500;
+    }
+
+    /**
+     * Update of a surviving contact, or delete of a contact merged into one
+     */
+    public static class Operation {
+        public enum Type {
+            UPDATE, DELETE
+        }
+
+        private final Type type;
+        private final String id;
+        private final GoogleContact contact;
+
+        private Operation(Type inType, String inId, GoogleContact inContact) {
+            type = inType;
+            id = inId;
+            contact = inContact;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @return feed id of the contact to update or delete
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return the merged contact: what to update to, or what the deleted contact was merged into
+         */
+        public GoogleContact getContact() {
+            return contact;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + id + ((type == Type.DELETE) ? " merged into " + contact.getId() : ": " + contact);
+        }
+    }
+
+    /**
+     * What a write-back did, or would do for a dry run
+     */
+    public static class Result {
+        private final boolean dryRun;
+        private final int plannedUpdates;
+        private final int plannedDeletes;
+        private int updated;
+        private int deleted;
+        private int skippedDeletes;
+        private int batches;
+        private int retries;
+        private final Map<String, Integer> failures = new LinkedHashMap<String, Integer>();
+
+        private Result(boolean inDryRun, int inPlannedUpdates, int inPlannedDeletes) {
+            dryRun = inDryRun;
+            plannedUpdates = inPlannedUpdates;
+            plannedDeletes = inPlannedDeletes;
+        }
+
+        public boolean isDryRun() {
+            return dryRun;
+        }
+
+        public int getPlannedUpdates() {
+            return plannedUpdates;
+        }
+
+        public int getPlannedDeletes() {
+            return plannedDeletes;
+        }
+
+        public int getUpdated() {
+            return updated;
+        }
+
+        public int getDeleted() {
+            return deleted;
+        }
+
+        /**
+         * @return deletes not sent because the contact they were merged into failed to update
+         */
+        public int getSkippedDeletes() {
+            return skippedDeletes;
+        }
+
+        /**
+         * @return batch requests sent, retries included
+         */
+        public int getBatches() {
+            return batches;
+        }
+
+        /**
+         * @return operations sent again after a retryable failure
+         */
+        public int getRetries() {
+            return retries;
+        }
+
+        /**
+         * @return last status of every operation that failed for good, by contact id
+         */
+        public Map<String, Integer> getFailures() {
+            return Collections.unmodifiableMap(failures);
+        }
+
+        /**
+         * @return the counts, ready to be serialized to JSON
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("dryRun", dryRun);
+            map.put("plannedUpdates", plannedUpdates);
+            map.put("plannedDeletes", plannedDeletes);
+            map.put("updated", updated);
+            map.put("deleted", deleted);
+            map.put("skippedDeletes", skippedDeletes);
+            map.put("failed", failures.size());
+            map.put("batches", batches);
+            map.put("retries", retries);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.googleapis.auth.oauth2.GoogleTokenResponse;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.gdata.client.contacts.ContactsService;
+import org.apache.log4j.Logger;
+
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps each session's {@link GoogleCredential} and {@link ContactsService}, so requests don't re-parse
+ * the token JSON and rebuild them every time.
+ *
+ * A background thread refreshes access tokens a few minutes before they expire, so a request only has to
+ * refresh one itself if the token is already about to run out. Entries go away with their session
+ * (register the cache as a session listener), on disconnect, or when the session's token changes.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class CredentialCache implements HttpSessionListener {
+    private static final Logger LOGGER = Logger.getLogger(CredentialCache.class);
+    /** Session attribute holding the token response JSON */
+    public static final String TOKEN_ATTRIBUTE = "token";
+    private static final long REFRESH_AHEAD_SECONDS = 5 * 60;
+    private static final long REFRESH_CHECK_SECONDS = 60;
+    // a request refreshes the token itself if it has less than this left
+    private static final long MIN_REMAINING_SECONDS = 5;
+
+    private final HttpTransport transport;
+    private final JsonFactory jsonFactory;
+    private final String clientId;
+    private final String clientSecret;
+    private final String tokenServerUrl;
+    private final String applicationName;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final ScheduledExecutorService refresher;
+
+    public CredentialCache(HttpTransport inTransport, JsonFactory inJsonFactory, String inClientId,
+                           String inClientSecret, String inTokenServerUrl, String inApplicationName) {
+        transport = inTransport;
+        jsonFactory = inJsonFactory;
+        clientId = inClientId;
+        clientSecret = inClientSecret;
+        tokenServerUrl = inTokenServerUrl;
+        applicationName = inApplicationName;
+        refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "credential-refresher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        refresher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                refreshExpiring();
+            }
+        }, REFRESH_CHECK_SECONDS, REFRESH_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return the session's credential, or null if the session isn't connected
+     */
+    public GoogleCredential getCredential(HttpSession session) throws IOException {
+        Entry entry = getEntry(session);
+        return (entry == null) ? null : entry.credential;
+    }
+
+    /**
+     * @return contacts service authorized with the session's credential, with a token that's good for now;
+     * null if the session isn't connected
+     */
+    public ContactsService getContactsService(HttpSession session) throws IOException {
+        Entry entry = getEntry(session);
+        if (entry == null) {
+            return null;
+        }
+        Long expiresIn = entry.credential.getExpiresInSeconds();
+        if (expiresIn == null || expiresIn < MIN_REMAINING_SECONDS) {
+            // the refresher didn't get to it (ie the server was just started)
+            entry.credential.refreshToken();
+        }
+        return entry.contactsService;
+    }
+
+    private Entry getEntry(HttpSession session) throws IOException {
+        String tokenData = (String) session.getAttribute(TOKEN_ATTRIBUTE);
+        if (tokenData == null) {
+            entries.remove(session.getId());
+            return null;
+        }
+        Entry entry = entries.get(session.getId());
+        if (entry == null || !tokenData.equals(entry.tokenData)) {
+            GoogleCredential credential = new GoogleCredential.Builder()
+                    .setJsonFactory(jsonFactory)
+                    .setTransport(transport)
+                    .setClientSecrets(clientId, clientSecret)
+                    .setTokenServerEncodedUrl(tokenServerUrl).build()
+                    .setFromTokenResponse(jsonFactory.fromString(tokenData, GoogleTokenResponse.class));
+            ContactsService contactsService = new ContactsService(applicationName);
+            contactsService.setOAuth2Credentials(credential);
+            entry = new Entry(tokenData, credential, contactsService);
+            entries.put(session.getId(), entry);
+        }
+        return entry;
+    }
+
+    public void evict(HttpSession session) {
+        entries.remove(session.getId());
+    }
+
+    private void refreshExpiring() {
+        for (Entry entry : entries.values()) {
+            Long expiresIn = entry.credential.getExpiresInSeconds();
+            if (expiresIn != null && expiresIn < REFRESH_AHEAD_SECONDS) {
+                try {
+                    entry.credential.refreshToken();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to refresh access token, will retry", e);
+                } catch (RuntimeException e) {
+                    // keep the refresher alive no matter what
+                    LOGGER.error("Failed to refresh access token", e);
+                }
+            }
+        }
+    }
+
+    public void sessionCreated(HttpSessionEvent event) {
+    }
+
+    public void sessionDestroyed(HttpSessionEvent event) {
+        evict(event.getSession());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void shutdown() {
+        refresher.shutdownNow();
+        entries.clear();
+    }
+
+    private static class Entry {
+        private final String tokenData;
+        private final GoogleCredential credential;
+        private final ContactsService contactsService;
+
+        private Entry(String inTokenData, GoogleCredential inCredential, ContactsService inContactsService) {
+            tokenData = inTokenData;
+            credential = inCredential;
+            contactsService = inContactsService;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.google.plus.samples.quickstart;
+
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Each account's {@link IncrementalDeduper}, kept between runs so a run only recomputes the clusters of the
+ * contacts that changed. Kept on the server rather than in the session, so a background job only needs the session
+ * id, and can still finish after the session is gone.
+ *
+ * An index stays as long as any session that used it does (register the cache as a session listener); a job that
+ * finishes after its session ended doesn't leave one behind.
+ * Thread safe; callers hold the account's {@link ContactCache#lockFor cache lock} while they use an index.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class DedupeIndexCache implements HttpSessionListener {
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    // sessions created and not destroyed yet
+    private final Set<String> liveSessions = new HashSet<String>();
+
+    /**
+     * @return the account's index, or null if there isn't one
+     */
+    public synchronized IncrementalDeduper get(String account) {
+        Entry entry = entries.get(account);
+        return (entry == null) ? null : entry.deduper;
+    }
+
+    /**
+     * Keeps the account's index for as long as the session, or any other session that used it, is around
+     * @param sessionId session the index was updated for
+     */
+    public synchronized void put(String account, String sessionId, IncrementalDeduper deduper) {
+        Entry entry = entries.get(account);
+        if (entry == null) {
+            entry = new Entry();
+        }
+        entry.deduper = deduper;
+        if (liveSessions.contains(sessionId)) {
+            entry.sessionIds.add(sessionId);
+        }
+        if (entry.sessionIds.isEmpty()) {
+            entries.remove(account);
+        } else {
+            entries.put(account, entry);
+        }
+    }
+
+    public synchronized void sessionCreated(String sessionId) {
+        liveSessions.add(sessionId);
+    }
+
+    /**
+     * Drops the indexes no other session uses
+     */
+    public synchronized void sessionDestroyed(String sessionId) {
+        liveSessions.remove(sessionId);
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.sessionIds.remove(sessionId) && entry.sessionIds.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    public void sessionCreated(HttpSessionEvent event) {
+        sessionCreated(event.getSession().getId());
+    }
+
+    public void sessionDestroyed(HttpSessionEvent event) {
+        sessionDestroyed(event.getSession().getId());
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static class Entry {
+        private IncrementalDeduper deduper;
+        private final Set<String> sessionIds = new HashSet<String>();
+    }
+}
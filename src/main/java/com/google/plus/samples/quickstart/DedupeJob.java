@@ -0,0 +1,143 @@
+package com.google.plus.samples.quickstart;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One user's dedupe run in the background: its status, progress counters as they go, and the result.
+ * Progress is updated by the thread running the job and read by whoever polls for it.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class DedupeJob {
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    private final String id;
+    private final String sessionId;
+    private final long created = System.currentTimeMillis();
+    private final AtomicInteger pagesFetched = new AtomicInteger();
+    private final AtomicInteger entriesFetched = new AtomicInteger();
+    private final AtomicInteger contactsRead = new AtomicInteger();
+    private final DedupeSession dedupeSession = new DedupeSession();
+    private volatile Status status = Status.QUEUED;
+    private volatile long started;
+    private volatile long finished;
+    private volatile DedupeResult result;
+    private volatile String error;
+    private volatile ContactWriteBack.Result writeBack;
+
+    public DedupeJob(String inId, String inSessionId) {
+        id = inId;
+        sessionId = inSessionId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return id of the session that started the job, only that session gets to see it
+     */
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+
+    /**
+     * @return when the job finished, 0 if it hasn't yet
+     */
+    public long getFinished() {
+        return finished;
+    }
+
+    /**
+     * @return merges of this run, as they happen
+     */
+    public DedupeSession getDedupeSession() {
+        return dedupeSession;
+    }
+
+    public DedupeResult getResult() {
+        return result;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void pageFetched(int numEntries) {
+        pagesFetched.incrementAndGet();
+        entriesFetched.addAndGet(numEntries);
+    }
+
+    public void contactsRead(int numContacts) {
+        contactsRead.addAndGet(numContacts);
+    }
+
+    /**
+     * @return what writing the result back to the address book did, null if the job doesn't write back
+     */
+    public ContactWriteBack.Result getWriteBack() {
+        return writeBack;
+    }
+
+    public void wroteBack(ContactWriteBack.Result inWriteBack) {
+        writeBack = inWriteBack;
+    }
+
+    void started() {
+        started = System.currentTimeMillis();
+        status = Status.RUNNING;
+    }
+
+    void succeeded(DedupeResult inResult) {
+        result = inResult;
+        finished = System.currentTimeMillis();
+        status = Status.DONE;
+    }
+
+    void failed(Throwable cause) {
+        error = (cause.getMessage() != null) ? cause.getMessage() : cause.toString();
+        finished = System.currentTimeMillis();
+        status = Status.FAILED;
+    }
+
+    /**
+     * @return status and progress so far, ready to be serialized to JSON
+     */
+    public Map<String, Object> getProgress() {
+        Map<String, Object> progress = new LinkedHashMap<String, Object>();
+        progress.put("jobId", id);
+        progress.put("status", status.name());
+        progress.put("pagesFetched", pagesFetched.get());
+        progress.put("entriesFetched", entriesFetched.get());
+        progress.put("contactsRead", contactsRead.get());
+        progress.put("merges", dedupeSession.getNumMerges());
+        long end = (finished > 0) ? finished : System.currentTimeMillis();
+        progress.put("elapsedMillis", (started > 0) ? end - started : 0);
+        progress.put("queuedMillis", ((started > 0) ? started : end) - created);
+        if (result != null) {
+            progress.put("contacts", result.getNumContacts());
+            progress.put("noNameEmails", result.getNumNoNameEmails());
+            progress.put("justNames", result.getJustNames().length);
+        }
+        if (writeBack != null) {
+            progress.put("writeBack", writeBack.toMap());
+        }
+        if (error != null) {
+            progress.put("error", error);
+        }
+        return progress;
+    }
+}
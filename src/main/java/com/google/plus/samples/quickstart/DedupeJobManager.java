@@ -0,0 +1,141 @@
+package com.google.plus.samples.quickstart;
+
+import org.apache.log4j.Logger;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs dedupe jobs on a fixed pool of background threads, so the request that starts one returns right away.
+ * Jobs are looked up by id and only for the session that started them; finished jobs are kept around for a
+ * while for their results to be picked up, then dropped by a background sweep, whether more jobs come or not.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class DedupeJobManager {
+    private static final Logger LOGGER = Logger.getLogger(DedupeJobManager.class);
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    // longest a finished job outlives its retention before it's swept
+    private static final long MAX_EVICT_PERIOD_MILLIS = 60 * 1000;
+
+    private final SecureRandom random = new SecureRandom();
+    private final ConcurrentMap<String, DedupeJob> jobs = new ConcurrentHashMap<String, DedupeJob>();
+    private final ExecutorService executor;
+    private final ScheduledExecutorService evictor;
+    private final long retainMillis;
+
+    /**
+     * What a job does
+     */
+    public interface Task {
+        DedupeResult run(DedupeJob job) throws Exception;
+    }
+
+    /**
+     * @param maxRunningJobs how many jobs run at once, the rest wait their turn
+     * @param inRetainMillis how long finished jobs are kept
+     */
+    public DedupeJobManager(int maxRunningJobs, long inRetainMillis) {
+        retainMillis = inRetainMillis;
+        executor = Executors.newFixedThreadPool(maxRunningJobs, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "dedupe-job-" + THREAD_COUNTER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "dedupe-job-evictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long evictPeriod = Math.max(1, Math.min(inRetainMillis, MAX_EVICT_PERIOD_MILLIS));
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                evictFinished();
+            }
+        }, evictPeriod, evictPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts a job for the session, unless it already has one that hasn't finished
+     * @return the new job, or the session's unfinished one
+     */
+    public DedupeJob submit(String sessionId, final Task task) {
+        synchronized (this) {
+            for (DedupeJob job : jobs.values()) {
+                if (job.getSessionId().equals(sessionId) && !job.isFinished()) {
+                    return job;
+                }
+            }
+            final DedupeJob job = new DedupeJob(new BigInteger(80, random).toString(32), sessionId);
+            jobs.put(job.getId(), job);
+            executor.execute(new Runnable() {
+                public void run() {
+                    job.started();
+                    long start = System.nanoTime();
+                    try {
+                        job.succeeded(task.run(job));
+                        DedupeMetrics.JOB.observeSince(start);
+                    } catch (Throwable t) {
+                        LOGGER.error("Dedupe job " + job.getId() + " failed", t);
+                        DedupeMetrics.JOBS_FAILED.inc();
+                        job.failed(t);
+                    }
+                    DedupeMetrics.observeHeapUsed();
+                }
+            });
+            return job;
+        }
+    }
+
+    /**
+     * @return the job, or null if there's no such job for the session, or it finished too long ago
+     */
+    public DedupeJob get(String jobId, String sessionId) {
+        if (jobId == null) {
+            return null;
+        }
+        DedupeJob job = jobs.get(jobId);
+        if (job != null && isExpired(job, System.currentTimeMillis() - retainMillis)) {
+            // the sweep hasn't got to it yet
+            jobs.remove(jobId, job);
+            return null;
+        }
+        return (job != null && job.getSessionId().equals(sessionId)) ? job : null;
+    }
+
+    private void evictFinished() {
+        long cutoff = System.currentTimeMillis() - retainMillis;
+        for (Iterator<DedupeJob> iterator = jobs.values().iterator(); iterator.hasNext(); ) {
+            if (isExpired(iterator.next(), cutoff)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static boolean isExpired(DedupeJob job, long cutoff) {
+        return job.isFinished() && job.getFinished() < cutoff;
+    }
+
+    public int getNumJobs() {
+        return jobs.size();
+    }
+
+    public void shutdown() {
+        evictor.shutdownNow();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,85 @@
+package com.google.plus.samples.quickstart;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * The deduper's metrics, all in {@link Metrics#REGISTRY} and served on /metrics.
+ * Timings are per feed page, per contact entry and per job phase.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public final class DedupeMetrics {
+    private static final double NANOS = 1e-9;
+    private static final double[] PER_ITEM_SECONDS = {1e-6, 5e-6, 1e-5, 5e-5, 1e-4, 1e-3};
+    private static final double[] PHASE_SECONDS = {0.01, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300};
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    public static final Metrics.Histogram FEED_PAGE_FETCH = Metrics.REGISTRY.histogram(
+            "deduper_feed_page_fetch_seconds", "Time to fetch one page of a contacts feed", NANOS, PHASE_SECONDS);
+    public static final Metrics.Counter FEED_PAGE_ERRORS = Metrics.REGISTRY.counter(
+            "deduper_feed_page_errors_total", "Contacts feed page fetches that failed");
+    public static final Metrics.Histogram ENTRY_DECODE = Metrics.REGISTRY.histogram(
+            "deduper_entry_decode_seconds", "Time to turn one feed entry into a contact", NANOS, PER_ITEM_SECONDS);
+    public static final Metrics.Histogram IGNORE_FILTER = Metrics.REGISTRY.histogram(
+            "deduper_ignore_filter_seconds", "Time to check one contact's emails against the ignore list", NANOS,
+            PER_ITEM_SECONDS);
+    public static final Metrics.Histogram DEDUPE = Metrics.REGISTRY.histogram(
+            "deduper_dedupe_seconds", "Time to dedupe one address book once it's read, feed fetches not included",
+            NANOS, PHASE_SECONDS);
+    public static final Metrics.Histogram REPORT_RENDER = Metrics.REGISTRY.histogram(
+            "deduper_report_render_seconds", "Time to write one dedupe report", NANOS, PHASE_SECONDS);
+    public static final Metrics.Histogram JOB = Metrics.REGISTRY.histogram(
+            "deduper_job_seconds", "Time from a dedupe job starting to its result being ready", NANOS,
+            PHASE_SECONDS);
+    public static final Metrics.Histogram JOB_HEAP_USED = Metrics.REGISTRY.histogram(
+            "deduper_job_heap_used_bytes", "Heap in use when a dedupe job finishes", 1,
+            64e6, 128e6, 256e6, 512e6, 1024e6, 2048e6, 4096e6);
+
+    public static final Metrics.Counter CONTACTS_READ = Metrics.REGISTRY.counter(
+            "deduper_contacts_read_total", "Contacts deduped, over all jobs");
+    public static final Metrics.Counter MERGES = Metrics.REGISTRY.counter(
+            "deduper_merges_total", "Contacts merged into another one, over all jobs");
+    public static final Metrics.Counter IGNORED_EMAILS = Metrics.REGISTRY.counter(
+            "deduper_ignored_emails_total", "Emails dropped by the ignore list");
+    public static final Metrics.Counter JOBS_FAILED = Metrics.REGISTRY.counter(
+            "deduper_jobs_failed_total", "Dedupe jobs that failed");
+
+    static {
+        Metrics.REGISTRY.gauge("jvm_heap_used_bytes", "Heap in use", new Metrics.Gauge() {
+            public double getValue() {
+                return MEMORY.getHeapMemoryUsage().getUsed();
+            }
+        });
+        Metrics.REGISTRY.gauge("jvm_heap_committed_bytes", "Heap committed by the JVM", new Metrics.Gauge() {
+            public double getValue() {
+                return MEMORY.getHeapMemoryUsage().getCommitted();
+            }
+        });
+        Metrics.REGISTRY.gauge("jvm_heap_max_bytes", "Largest the heap can get", new Metrics.Gauge() {
+            public double getValue() {
+                return MEMORY.getHeapMemoryUsage().getMax();
+            }
+        });
+    }
+
+    private DedupeMetrics() {
+    }
+
+    /**
+     * Writes all of {@link Metrics#REGISTRY}, with the metrics above registered whether they were used yet or not
+     */
+    public static void writeTo(Writer writer) throws IOException {
+        Metrics.REGISTRY.writeTo(writer);
+    }
+
+    /**
+     * Records the heap in use right now
+     */
+    public static void observeHeapUsed() {
+        JOB_HEAP_USED.observe(MEMORY.getHeapMemoryUsage().getUsed());
+    }
+}
@@ -0,0 +1,183 @@
+package com.google.plus.samples.quickstart;
+
+import java.io.IOException;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Outcome of one dedupe run, split the way the report shows it:
+ * 1. fullNameToPerson - table of (lowercase) contact name to the merged contact with emails
+ * 2. noNameEmails - emails that don't have names associated with them, even after merging
+ * 3. justNames - contacts with a name but no emails
+ *
+ * Every section is sorted once, when the result is built, in the collation order of a locale (so "émile" goes
+ * with the e's rather than after "zoe"); each string's collation key is computed once for the sort instead of
+ * collating pairs over and over. The report and the logs all go through the same sorted arrays.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class DedupeResult {
+    private static final Comparator<CollationKey> COLLATION_ORDER = new Comparator<CollationKey>() {
+        public int compare(CollationKey key1, CollationKey key2) {
+            int result = key1.compareTo(key2);
+            // strings that only differ in what the collator ignores still get a fixed order
+            return (result != 0) ? result : key1.getSourceString().compareTo(key2.getSourceString());
+        }
+    };
+
+    private final String ownerName;
+    private final int totalContactsRead;
+    private final int uniqueEmails;
+    private final int uniquePhones;
+    private final List<GoogleContact> dedupedContacts;
+    private final Map<String, GoogleContact> fullNameToPerson = new HashMap<String, GoogleContact>();
+    private final String[] sortedNames;
+    private final String[] sortedNoNameEmails;
+    private final String[] justNames;
+    private final String[] mergedNames;
+
+    /**
+     * Sorts in the default locale's order
+     * @param deduped one merged contact per cluster
+     */
+    public DedupeResult(String inOwnerName, int inTotalContactsRead, int inUniqueEmails, int inUniquePhones,
+                        List<GoogleContact> deduped, String[] inMergedNames) {
+        this(inOwnerName, inTotalContactsRead, inUniqueEmails, inUniquePhones, deduped, inMergedNames,
+                Locale.getDefault());
+    }
+
+    /**
+     * @param deduped one merged contact per cluster
+     * @param locale locale to sort names and emails for
+     */
+    public DedupeResult(String inOwnerName, int inTotalContactsRead, int inUniqueEmails, int inUniquePhones,
+                        List<GoogleContact> deduped, String[] inMergedNames, Locale locale) {
+        ownerName = inOwnerName;
+        totalContactsRead = inTotalContactsRead;
+        uniqueEmails = inUniqueEmails;
+        uniquePhones = inUniquePhones;
+        dedupedContacts = deduped;
+        Set<String> noNameEmails = new HashSet<String>();
+        List<String> names = new ArrayList<String>();
+        for (GoogleContact contact : deduped) {
+            if (contact.getFullName() == null) {
+                noNameEmails.addAll(contact.getEmails());
+            } else if (contact.getEmails().size() == 0) {
+                names.add(contact.getFullName());
+            } else {
+                fullNameToPerson.put(contact.getFullName().toLowerCase(), contact);
+            }
+        }
+        Collator collator = Collator.getInstance(locale);
+        sortedNames = sort(fullNameToPerson.keySet(), collator);
+        sortedNoNameEmails = sort(noNameEmails, collator);
+        justNames = sort(names, collator);
+        mergedNames = sort(Arrays.asList(inMergedNames), collator);
+    }
+
+    private static String[] sort(Collection<String> strings, Collator collator) {
+        CollationKey[] keys = new CollationKey[strings.size()];
+        int i = 0;
+        for (String string : strings) {
+            keys[i++] = collator.getCollationKey(string);
+        }
+        Arrays.sort(keys, COLLATION_ORDER);
+        String[] sorted = new String[keys.length];
+        for (i = 0; i < keys.length; i++) {
+            sorted[i] = keys[i].getSourceString();
+        }
+        return sorted;
+    }
+
+    /**
+     * Writes the whole report, each section sorted
+     */
+    public void writeTo(ContactReportWriter report) throws IOException {
+        report.writeSummary(new ContactReportWriter.Summary(ownerName, totalContactsRead, uniqueEmails,
+                fullNameToPerson.size(), sortedNoNameEmails.length, justNames.length));
+        for (String name : sortedNames) {
+            report.writeContact(fullNameToPerson.get(name));
+        }
+        for (String justEmail : sortedNoNameEmails) {
+            report.writeNoNameEmail(justEmail);
+        }
+        for (String name : justNames) {
+            report.writeJustName(name);
+        }
+        report.finish(mergedNames);
+    }
+
+    /**
+     * @return the lowercase names of the contacts with emails, sorted; shared, not to be changed
+     */
+    public String[] getSortedNames() {
+        return sortedNames;
+    }
+
+    /**
+     * @return emails that don't have names associated with them, sorted; shared, not to be changed
+     */
+    public String[] getSortedNoNameEmails() {
+        return sortedNoNameEmails;
+    }
+
+    /**
+     * @return one merged contact per cluster, as the deduper returned them
+     */
+    public List<GoogleContact> getDedupedContacts() {
+        return dedupedContacts;
+    }
+
+    public GoogleContact getContact(String lowercaseName) {
+        return fullNameToPerson.get(lowercaseName);
+    }
+
+    public String getOwnerName() {
+        return ownerName;
+    }
+
+    public int getTotalContactsRead() {
+        return totalContactsRead;
+    }
+
+    public int getUniqueEmails() {
+        return uniqueEmails;
+    }
+
+    public int getUniquePhones() {
+        return uniquePhones;
+    }
+
+    public int getNumContacts() {
+        return fullNameToPerson.size();
+    }
+
+    public int getNumNoNameEmails() {
+        return sortedNoNameEmails.length;
+    }
+
+    /**
+     * @return names of the contacts with no emails, sorted; shared, not to be changed
+     */
+    public String[] getJustNames() {
+        return justNames;
+    }
+
+    /**
+     * @return names of the contacts that were merged into others, sorted; shared, not to be changed
+     */
+    public String[] getMergedNames() {
+        return mergedNames;
+    }
+}
@@ -0,0 +1,109 @@
+package com.google.plus.samples.quickstart;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Bookkeeping for one dedupe run: which contacts got merged into which, and on what key.
+ * Each run gets its own session, so concurrent runs for different users don't see each other's merges.
+ * Thread safe.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class DedupeSession {
+    private final List<Merge> merges = new ArrayList<Merge>();
+
+    /**
+     * @param survivor contact that absorbed the other one
+     * @param merged contact that was merged in
+     * @param key key the two were linked on (ie "email:vasya@pupkin.com"), or null if not known
+     * @param addedDetails true if the merged contact added a name or emails to the survivor
+     */
+    public synchronized void recordMerge(GoogleContact survivor, GoogleContact merged, String key,
+                                         boolean addedDetails) {
+        merges.add(new Merge(survivor.getId(), survivor.getFullName(), merged.getId(), merged.getFullName(), key,
+                addedDetails));
+    }
+
+    public synchronized void recordMerges(List<Merge> inMerges) {
+        merges.addAll(inMerges);
+    }
+
+    public synchronized int getNumMerges() {
+        return merges.size();
+    }
+
+    public synchronized List<Merge> getMerges() {
+        return Collections.unmodifiableList(new ArrayList<Merge>(merges));
+    }
+
+    /**
+     * @return sorted names of the contacts that were merged into another one and added a name or emails to it
+     */
+    public synchronized String[] getMergedNames() {
+        TreeSet<String> names = new TreeSet<String>();
+        for (Merge merge : merges) {
+            if (merge.hasAddedDetails() && merge.getMergedName() != null) {
+                names.add(merge.getMergedName());
+            }
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * One contact merged into another, whether it added anything to it or not
+     */
+    public static class Merge {
+        private final String survivorId;
+        private final String survivorName;
+        private final String mergedId;
+        private final String mergedName;
+        private final String key;
+        private final boolean addedDetails;
+
+        public Merge(String inSurvivorId, String inSurvivorName, String inMergedId, String inMergedName, String inKey,
+                     boolean inAddedDetails) {
+            survivorId = inSurvivorId;
+            survivorName = inSurvivorName;
+            mergedId = inMergedId;
+            mergedName = inMergedName;
+            key = inKey;
+            addedDetails = inAddedDetails;
+        }
+
+        public String getSurvivorId() {
+            return survivorId;
+        }
+
+        public String getSurvivorName() {
+            return survivorName;
+        }
+
+        public String getMergedId() {
+            return mergedId;
+        }
+
+        public String getMergedName() {
+            return mergedName;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return true if the merged contact added a name or emails, false if it had nothing the survivor didn't
+         */
+        public boolean hasAddedDetails() {
+            return addedDetails;
+        }
+
+        @Override
+        public String toString() {
+            return mergedName + " -> " + survivorName + " on " + key;
+        }
+    }
+}
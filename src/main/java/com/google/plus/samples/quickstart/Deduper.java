@@ -0,0 +1,42 @@
+package com.google.plus.samples.quickstart;
+
+import java.util.List;
+
+/**
+ * Dedupes a batch of contacts: they're all added, then merged once, each cluster of duplicates into the contact of
+ * it read first. {@link ContactDeduper} does it on one thread, {@link ParallelContactDeduper} on several.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public interface Deduper {
+    /**
+     * @return store to create the contacts in, so they don't need to be copied when added
+     */
+    ContactStore getStore();
+
+    /**
+     * @return id of the contact within this deduper
+     * @throws IllegalStateException if the contacts were already deduped
+     */
+    int add(GoogleContact contact);
+
+    /**
+     * Merges each cluster into its first-read contact, without keeping track of the merges
+     * @return one contact per cluster, in the order the surviving contacts were read
+     */
+    List<GoogleContact> dedupe();
+
+    /**
+     * Merges each cluster into its first-read contact; only the first call merges, later ones return the same list
+     * @param session records every merge, along with the key that linked the merged contact into its cluster
+     * @return one contact per cluster, in the order the surviving contacts were read
+     */
+    List<GoogleContact> dedupe(DedupeSession session);
+
+    int getNumContacts();
+
+    int getUniqueEmailCount();
+
+    int getUniquePhoneCount();
+}
@@ -0,0 +1,88 @@
+package com.google.plus.samples.quickstart;
+
+import java.util.Arrays;
+
+/**
+ * Union-find over dense int ids (0..size-1), with path compression and union by rank.
+ * Ids are handed out by {@link #makeSet()} in increasing order, so callers can use them
+ * as indexes into their own arrays/lists.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class DisjointSet {
+    private int[] parent;
+    private byte[] rank;
+    private int size;
+
+    public DisjointSet() {
+        this(16);
+    }
+
+    public DisjointSet(int initialCapacity) {
+        parent = new int[Math.max(initialCapacity, 1)];
+        rank = new byte[parent.length];
+    }
+
+    /**
+     * Adds a new singleton set
+     * @return id of the new element
+     */
+    public int makeSet() {
+        if (size == parent.length) {
+            int newCapacity = parent.length * 2;
+            parent = Arrays.copyOf(parent, newCapacity);
+            rank = Arrays.copyOf(rank, newCapacity);
+        }
+        parent[size] = size;
+        return size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the representative of the set containing the element, compressing the path on the way
+     */
+    public int find(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("No element " + id + ", size is " + size);
+        }
+        int root = id;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        while (parent[id] != root) {
+            int next = parent[id];
+            parent[id] = root;
+            id = next;
+        }
+        return root;
+    }
+
+    /**
+     * Joins the sets containing the two elements
+     * @return true if the elements were in different sets before the call
+     */
+    public boolean union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return false;
+        }
+        if (rank[rootA] < rank[rootB]) {
+            parent[rootA] = rootB;
+        } else if (rank[rootA] > rank[rootB]) {
+            parent[rootB] = rootA;
+        } else {
+            parent[rootB] = rootA;
+            rank[rootA]++;
+        }
+        return true;
+    }
+
+    public boolean connected(int a, int b) {
+        return find(a) == find(b);
+    }
+}
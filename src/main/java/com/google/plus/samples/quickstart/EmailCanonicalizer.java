@@ -0,0 +1,221 @@
+package com.google.plus.samples.quickstart;
+
+/**
+ * Decides which emails reach the same mailbox ("John.Doe@Gmail.com", "johndoe+news@googlemail.com"), for
+ * deduping on emails.
+ *
+ * Rules:
+ * 1. case is ignored
+ * 2. for the big providers that ignore them, dots in the local part and +tags ("+news") are dropped
+ * 3. domains that are aliases of the same accounts (googlemail.com and gmail.com, me.com and icloud.com) are one
+ * Other domains only get rule 1, since what their servers do with dots and tags isn't known.
+ *
+ * The canonical form is never built as a string: {@link #hash} and {@link #equivalent} walk the characters of the
+ * original emails and skip what the rules drop, so checking an email costs no allocation.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class EmailCanonicalizer {
+    public static final EmailCanonicalizer DEFAULT = new EmailCanonicalizer(true);
+
+    private static final Provider[] PROVIDERS = {
+            new Provider(true, '+', "gmail.com", "googlemail.com"),
+            new Provider(false, '+', "outlook.com"),
+            new Provider(false, '+', "hotmail.com"),
+            new Provider(false, '+', "live.com"),
+            new Provider(false, '+', "icloud.com", "me.com", "mac.com"),
+            new Provider(false, '+', "fastmail.com"),
+            new Provider(false, '+', "proton.me", "protonmail.com", "pm.me"),
+    };
+    // 64 bit FNV-1a
+    private static final long HASH_OFFSET = 0xcbf29ce484222325L;
+    private static final long HASH_PRIME = 0x100000001b3L;
+
+    private final boolean providerRules;
+
+    /**
+     * @param inProviderRules false to only ignore case
+     */
+    public EmailCanonicalizer(boolean inProviderRules) {
+        providerRules = inProviderRules;
+    }
+
+    /**
+     * @return hash of the canonical form, the same for all equivalent emails and never
+     * {@link LongIntHashMap#EMPTY_KEY}
+     */
+    public long hash(String email) {
+        int at = email.lastIndexOf('@');
+        Provider provider = findProvider(email, at);
+        int localEnd = localEnd(email, at, provider);
+        long hash = HASH_OFFSET;
+        for (int i = 0; i < localEnd; i++) {
+            char c = email.charAt(i);
+            if (!skip(c, provider)) {
+                hash = (hash ^ Character.toLowerCase(c)) * HASH_PRIME;
+            }
+        }
+        if (at >= 0) {
+            hash = (hash ^ '@') * HASH_PRIME;
+            if (provider != null) {
+                String domain = provider.domains[0];
+                for (int i = 0; i < domain.length(); i++) {
+                    hash = (hash ^ domain.charAt(i)) * HASH_PRIME;
+                }
+            } else {
+                for (int i = at + 1; i < email.length(); i++) {
+                    hash = (hash ^ Character.toLowerCase(email.charAt(i))) * HASH_PRIME;
+                }
+            }
+        }
+        return (hash == LongIntHashMap.EMPTY_KEY) ? 1 : hash;
+    }
+
+    /**
+     * @return true if the two emails have the same canonical form
+     */
+    public boolean equivalent(String email1, String email2) {
+        if (email1.equals(email2)) {
+            return true;
+        }
+        int at1 = email1.lastIndexOf('@');
+        int at2 = email2.lastIndexOf('@');
+        Provider provider1 = findProvider(email1, at1);
+        Provider provider2 = findProvider(email2, at2);
+        if ((at1 < 0) != (at2 < 0) || provider1 != provider2) {
+            return false;
+        }
+        int end1 = localEnd(email1, at1, provider1);
+        int end2 = localEnd(email2, at2, provider2);
+        int i = 0;
+        int j = 0;
+        while (true) {
+            while (i < end1 && skip(email1.charAt(i), provider1)) {
+                i++;
+            }
+            while (j < end2 && skip(email2.charAt(j), provider2)) {
+                j++;
+            }
+            if (i == end1 || j == end2) {
+                if (i != end1 || j != end2) {
+                    return false;
+                }
+                break;
+            }
+            if (Character.toLowerCase(email1.charAt(i++)) != Character.toLowerCase(email2.charAt(j++))) {
+                return false;
+            }
+        }
+        if (at1 < 0 || provider1 != null) {
+            return true;
+        }
+        if (email1.length() - at1 != email2.length() - at2) {
+            return false;
+        }
+        for (i = at1 + 1, j = at2 + 1; i < email1.length(); i++, j++) {
+            if (Character.toLowerCase(email1.charAt(i)) != Character.toLowerCase(email2.charAt(j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the email as a map key, equal to the keys of the equivalent emails
+     */
+    public Key key(String email) {
+        return new Key(this, email);
+    }
+
+    private Provider findProvider(String email, int at) {
+        if (!providerRules || at < 0) {
+            return null;
+        }
+        int domainLength = email.length() - at - 1;
+        for (Provider provider : PROVIDERS) {
+            for (String domain : provider.domains) {
+                if (domain.length() == domainLength && email.regionMatches(true, at + 1, domain, 0, domainLength)) {
+                    return provider;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return where the part of the local part that counts ends: the tag, the @, or the end of a malformed email
+     */
+    private static int localEnd(String email, int at, Provider provider) {
+        if (at < 0) {
+            return email.length();
+        }
+        if (provider != null) {
+            int tag = email.indexOf(provider.tagSeparator);
+            if (tag > 0 && tag < at) {
+                return tag;
+            }
+        }
+        return at;
+    }
+
+    private static boolean skip(char c, Provider provider) {
+        return c == '.' && provider != null && provider.ignoresDots;
+    }
+
+    /**
+     * A mail provider's rules; the first domain is the canonical one
+     */
+    private static class Provider {
+        private final boolean ignoresDots;
+        private final char tagSeparator;
+        private final String[] domains;
+
+        private Provider(boolean inIgnoresDots, char inTagSeparator, String... inDomains) {
+            ignoresDots = inIgnoresDots;
+            tagSeparator = inTagSeparator;
+            domains = inDomains;
+        }
+    }
+
+    /**
+     * An email that hashes and compares by its canonical form
+     */
+    public static final class Key {
+        private final EmailCanonicalizer canonicalizer;
+        private final String email;
+        private final long hash;
+
+        private Key(EmailCanonicalizer inCanonicalizer, String inEmail) {
+            canonicalizer = inCanonicalizer;
+            email = inEmail;
+            hash = inCanonicalizer.hash(inEmail);
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && canonicalizer.equivalent(email, other.email);
+        }
+
+        @Override
+        public String toString() {
+            return email;
+        }
+    }
+}
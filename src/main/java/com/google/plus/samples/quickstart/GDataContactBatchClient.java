@@ -0,0 +1,123 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gdata.client.contacts.ContactsService;
+import com.google.gdata.data.batch.BatchOperationType;
+import com.google.gdata.data.batch.BatchStatus;
+import com.google.gdata.data.batch.BatchUtils;
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.contacts.ContactFeed;
+import com.google.gdata.data.extensions.Email;
+import com.google.gdata.data.extensions.FullName;
+import com.google.gdata.data.extensions.Name;
+import com.google.gdata.data.extensions.PhoneNumber;
+import com.google.gdata.util.ServiceException;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sends batches of contact updates and deletes through the gdata {@link ContactsService} to the feed's batch URL.
+ *
+ * Sending the merged contact as the update would wipe everything the deduper doesn't read (addresses, notes,
+ * groups), so every batch first reads the current entries of its contacts with one batch query, adds the missing
+ * name, emails and phone numbers to the survivors' entries, and then sends the updates and deletes with the etags
+ * it just read: a contact edited in between fails with 412 instead of being overwritten.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class GDataContactBatchClient implements ContactBatchClient {
+    private static final String OTHER_REL = "http://schemas.google.com/g/2005#other";
+
+    private final ContactsService contactsService;
+    private final URL batchUrl;
+
+    /**
+     * @param inBatchUrl the feed's batch URL, ie https://www.google.com/m8/feeds/contacts/default/full/batch
+     */
+    public GDataContactBatchClient(ContactsService inContactsService, URL inBatchUrl) {
+        contactsService = inContactsService;
+        batchUrl = inBatchUrl;
+    }
+
+    public int[] execute(List<ContactWriteBack.Operation> operations) throws IOException, ServiceException {
+        int[] statuses = new int[operations.size()];
+        // anything the server doesn't answer for is worth another try
+        Arrays.fill(statuses, ContactWriteBack.BATCH_FAILED);
+        ContactFeed query = new ContactFeed();
+        for (int i = 0; i < operations.size(); i++) {
+            ContactEntry entry = new ContactEntry();
+            entry.setId(operations.get(i).getId());
+            BatchUtils.setBatchId(entry, Integer.toString(i));
+            BatchUtils.setBatchOperationType(entry, BatchOperationType.QUERY);
+            query.getEntries().add(entry);
+        }
+        ContactFeed changes = new ContactFeed();
+        for (ContactEntry entry : contactsService.batch(batchUrl, query).getEntries()) {
+            int i = Integer.parseInt(BatchUtils.getBatchId(entry));
+            if (!BatchUtils.isSuccess(entry)) {
+                statuses[i] = statusOf(entry);
+                continue;
+            }
+            entry.removeExtension(BatchStatus.class);
+            ContactWriteBack.Operation operation = operations.get(i);
+            if (operation.getType() == ContactWriteBack.Operation.Type.UPDATE) {
+                addMerged(entry, operation.getContact());
+                BatchUtils.setBatchOperationType(entry, BatchOperationType.UPDATE);
+            } else {
+                BatchUtils.setBatchOperationType(entry, BatchOperationType.DELETE);
+            }
+            changes.getEntries().add(entry);
+        }
+        if (!changes.getEntries().isEmpty()) {
+            for (ContactEntry entry : contactsService.batch(batchUrl, changes).getEntries()) {
+                statuses[Integer.parseInt(BatchUtils.getBatchId(entry))] = statusOf(entry);
+            }
+        }
+        return statuses;
+    }
+
+    private static int statusOf(ContactEntry entry) {
+        BatchStatus status = BatchUtils.getBatchStatus(entry);
+        return (status == null) ? ContactWriteBack.BATCH_FAILED : status.getCode();
+    }
+
+    /**
+     * Adds the merged contact's name (if the entry has none), emails and phone numbers to the entry
+     */
+    private static void addMerged(ContactEntry entry, GoogleContact contact) {
+        if (contact.getFullName() != null && !(entry.hasName() && entry.getName().hasFullName())) {
+            Name name = entry.hasName() ? entry.getName() : new Name();
+            name.setFullName(new FullName(contact.getFullName(), null));
+            entry.setName(name);
+        }
+        Set<String> emails = new HashSet<String>();
+        for (Email email : entry.getEmailAddresses()) {
+            emails.add(email.getAddress().toLowerCase());
+        }
+        for (String address : contact.getEmails()) {
+            if (emails.add(address.toLowerCase())) {
+                Email email = new Email();
+                email.setAddress(address);
+                email.setRel(OTHER_REL);
+                entry.addEmailAddress(email);
+            }
+        }
+        Set<String> phones = new HashSet<String>();
+        for (PhoneNumber phone : entry.getPhoneNumbers()) {
+            phones.add(phone.getPhoneNumber());
+        }
+        for (String number : contact.getPhoneNumbers()) {
+            if (phones.add(number)) {
+                PhoneNumber phone = new PhoneNumber();
+                phone.setPhoneNumber(number);
+                phone.setRel(OTHER_REL);
+                entry.addPhoneNumber(phone);
+            }
+        }
+    }
+}
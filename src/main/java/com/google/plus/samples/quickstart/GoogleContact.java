@@ -3,111 +3,384 @@ package com.google.plus.samples.quickstart;
 import com.google.gdata.data.contacts.ContactEntry;
 import com.google.gdata.data.extensions.Email;
 import com.google.gdata.data.extensions.PhoneNumber;
-import org.apache.commons.lang.StringUtils;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
 
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 /**
+ * A contact's name, emails and phone numbers. Emails and phones are kept as sorted ids into the dictionaries
+ * of the contact's {@link ContactStore}; {@link #getEmails()} and {@link #getPhoneNumbers()} are read-only
+ * views that turn them back into strings.
+ *
  * @author toli kuznets
  * @version $Id$
  */
 
 
 public class GoogleContact {
+    private static final int[] NO_IDS = new int[0];
+
+    private final ContactStore store;
+    private final String id;
     private String fullName;
-    private String primaryEmail;
-    private Set<String> emails = new HashSet<String>();
-    private Set<String> phoneNumbers = new HashSet<String>();
+    private int primaryEmail = StringDictionary.MISSING;
+    private int[] emailIds = NO_IDS;
+    private int[] phoneIds = NO_IDS;
     private boolean hadIgnoredEmails = false;
-    private static Pattern ignoreEmailPattern;
-    private static Set<String> mergedNames = new HashSet<String>();
+    // feed ids of the contacts merged into this one, null until something is
+    private List<String> mergedIds;
+    private static IgnoreListMatcher ignoreList;
 
     @SuppressWarnings("unused") // Spring setter
     public static void setIgnoredPatterns(List<String> inIgnoredPatterns) {
-        ignoreEmailPattern = Pattern.compile(StringUtils.join(inIgnoredPatterns.toArray(new String[inIgnoredPatterns.size()]), "|"));
+        ignoreList = new IgnoreListMatcher(inIgnoredPatterns);
+    }
+
+    public static IgnoreListMatcher getIgnoreList() {
+        return ignoreList;
+    }
+
+    /**
+     * Sets up the ignore list from ignore-list.xml on the classpath
+     */
+    public static void loadIgnoreList() {
+        new ClassPathXmlApplicationContext("ignore-list.xml");
     }
 
     public GoogleContact(ContactEntry entry) {
+        this(entry, new ContactStore(1));
+    }
+
+    /**
+     * @param inStore store to keep the emails and phone numbers in
+     */
+    public GoogleContact(ContactEntry entry, ContactStore inStore) {
+        long start = System.nanoTime();
+        store = inStore;
+        id = entry.getId();
         List<Email> emailAddresses = entry.getEmailAddresses();
-        for (Email emailAddress : emailAddresses) {
-            String oneEmail = emailAddress.getAddress();
-            if(!ignoreEmailPattern.matcher(oneEmail).matches()) {
-                emails.add(oneEmail);
-                if (emailAddress.getPrimary()) {
-                    primaryEmail = oneEmail;
-                }
-            } else {
-                hadIgnoredEmails = true;
+        if (!emailAddresses.isEmpty()) {
+            boolean[] ignored = new boolean[emailAddresses.size()];
+            long filterStart = System.nanoTime();
+            for (int i = 0; i < ignored.length; i++) {
+                ignored[i] = ignoreList.matches(emailAddresses.get(i).getAddress());
+            }
+            DedupeMetrics.IGNORE_FILTER.observeSince(filterStart);
+            for (int i = 0; i < ignored.length; i++) {
+                addEmail(emailAddresses.get(i).getAddress(), emailAddresses.get(i).getPrimary(), ignored[i]);
             }
         }
-        fullName = (entry.getName() != null) ? entry.getName().getFullName().getValue() : null;
+        fullName = (entry.getName() != null && entry.getName().getFullName() != null)
+                ? entry.getName().getFullName().getValue() : null;
         for (PhoneNumber number : entry.getPhoneNumbers()) {
-            String oneNumber = number.getPhoneNumber();
-            phoneNumbers.add(oneNumber);
+            addPhoneNumber(number.getPhoneNumber());
         }
+        DedupeMetrics.ENTRY_DECODE.observeSince(start);
+    }
+
+    /**
+     * Creates a contact from already extracted data, without a gdata entry (ie when reading exported contacts)
+     * @param inFullName full name, or null
+     * @param inEmails all the emails, the ignored ones are filtered out like for feed entries
+     * @param inPrimaryEmail which one of the emails is the primary one, or null
+     * @param inPhoneNumbers all the phone numbers
+     */
+    public GoogleContact(String inFullName, List<String> inEmails, String inPrimaryEmail, List<String> inPhoneNumbers) {
+        this(null, inFullName, inEmails, inPrimaryEmail, inPhoneNumbers);
+    }
+
+    /**
+     * @param inId id of the entry the contact came from, or null if it doesn't have one
+     */
+    public GoogleContact(String inId, String inFullName, List<String> inEmails, String inPrimaryEmail,
+                         List<String> inPhoneNumbers) {
+        this(inId, inFullName, inEmails, inPrimaryEmail, inPhoneNumbers, new ContactStore(1));
+    }
+
+    /**
+     * @param inStore store to keep the emails and phone numbers in
+     */
+    public GoogleContact(String inId, String inFullName, List<String> inEmails, String inPrimaryEmail,
+                         List<String> inPhoneNumbers, ContactStore inStore) {
+        store = inStore;
+        id = inId;
+        if (!inEmails.isEmpty()) {
+            boolean[] ignored = new boolean[inEmails.size()];
+            long filterStart = System.nanoTime();
+            for (int i = 0; i < ignored.length; i++) {
+                ignored[i] = ignoreList.matches(inEmails.get(i));
+            }
+            DedupeMetrics.IGNORE_FILTER.observeSince(filterStart);
+            for (int i = 0; i < ignored.length; i++) {
+                addEmail(inEmails.get(i), inEmails.get(i).equals(inPrimaryEmail), ignored[i]);
+            }
+        }
+        fullName = inFullName;
+        for (String oneNumber : inPhoneNumbers) {
+            addPhoneNumber(oneNumber);
+        }
+    }
+
+    /**
+     * Copy of another contact, so that merging into the copy leaves the original alone.
+     * The id arrays are never changed in place, so the copy shares them until either contact is merged into.
+     */
+    GoogleContact(GoogleContact other) {
+        store = other.store;
+        id = other.id;
+        fullName = other.fullName;
+        primaryEmail = other.primaryEmail;
+        emailIds = other.emailIds;
+        phoneIds = other.phoneIds;
+        hadIgnoredEmails = other.hadIgnoredEmails;
+        mergedIds = (other.mergedIds == null) ? null : new ArrayList<String>(other.mergedIds);
+    }
+
+    /**
+     * Copy of another contact in a different store
+     */
+    GoogleContact(GoogleContact other, ContactStore inStore) {
+        store = inStore;
+        id = other.id;
+        fullName = other.fullName;
+        primaryEmail = (other.primaryEmail == StringDictionary.MISSING) ? StringDictionary.MISSING
+                : inStore.getEmails().intern(other.getPrimaryEmail());
+        emailIds = translate(other.emailIds, other.store.getEmails(), inStore.getEmails());
+        phoneIds = translate(other.phoneIds, other.store.getPhones(), inStore.getPhones());
+        hadIgnoredEmails = other.hadIgnoredEmails;
+        mergedIds = (other.mergedIds == null) ? null : new ArrayList<String>(other.mergedIds);
+    }
+
+    /**
+     * @param ignored whether the email is on the ignore list; the constructors check all of a contact's emails at once,
+     * so the ignore list is timed once per contact rather than per email
+     */
+    private void addEmail(String oneEmail, boolean primary, boolean ignored) {
+        if(!ignored) {
+            int emailId = store.getEmails().intern(oneEmail);
+            emailIds = union(emailIds, new int[]{emailId});
+            if (primary) {
+                primaryEmail = emailId;
+            }
+        } else {
+            hadIgnoredEmails = true;
+            DedupeMetrics.IGNORED_EMAILS.inc();
+        }
+    }
+
+    private void addPhoneNumber(String oneNumber) {
+        phoneIds = union(phoneIds, new int[]{store.getPhones().intern(oneNumber)});
+    }
+
+    /**
+     * @return id of the feed entry this contact was read from (for merged contacts, the surviving one), or null
+     */
+    public String getId() {
+        return id;
     }
 
     public String getFullName() {
         return fullName;
     }
 
+    /**
+     * @return read-only view of the emails
+     */
     public Set<String> getEmails() {
-        return emails;
+        return new IdSet(emailIds, store.getEmails());
     }
 
-    public Set<String> getPhoneNumbers() { return phoneNumbers; }
+    /**
+     * @return read-only view of the phone numbers
+     */
+    public Set<String> getPhoneNumbers() { return new IdSet(phoneIds, store.getPhones()); }
 
-    public static String[] getMergedNames() {
-        String[] result = mergedNames.toArray(new String[mergedNames.size()]);
-        Arrays.sort(result);
-        return result;
+    public String getPrimaryEmail() {
+        return (primaryEmail == StringDictionary.MISSING) ? null : store.getEmails().get(primaryEmail);
     }
 
-    public String getPrimaryEmail() {
-        return primaryEmail;
+    public ContactStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return ids of the emails in the store's email dictionary, sorted; not to be changed
+     */
+    int[] getEmailIds() {
+        return emailIds;
+    }
+
+    /**
+     * @return ids of the phone numbers in the store's phone dictionary, sorted; not to be changed
+     */
+    int[] getPhoneIds() {
+        return phoneIds;
     }
 
     public boolean hadIgnoredEmails() {
         return hadIgnoredEmails;
     }
 
+    /**
+     * @return feed ids of all the contacts merged into this one, directly or through another merged contact,
+     * in merge order; the ones without an id are left out
+     */
+    public List<String> getMergedIds() {
+        return (mergedIds == null) ? Collections.<String>emptyList() : Collections.unmodifiableList(mergedIds);
+    }
+
     /**
      * Merges existing contact with incoming contact.
      * if the current name is empty and incoming name exists, takes the incoming name.
      * Adds all the incoming emails to current contact
      * Adds all incoming phone numbers
      * @param inContact
+     * @return true if the incoming contact added a name or emails
      */
-    public void merge(GoogleContact inContact) {
+    public boolean merge(GoogleContact inContact) {
+        if (inContact.store != store) {
+            inContact = new GoogleContact(inContact, store);
+        }
         boolean merged = false;
         if((inContact.getFullName() != null) && (fullName == null)) {
             fullName = inContact.getFullName();
             merged = true;
         }
-        if(inContact.getEmails().size() != 0) {
-            emails.addAll(inContact.getEmails());
-            if(primaryEmail  == null) {
-                primaryEmail = inContact.getPrimaryEmail();
+        if(inContact.emailIds.length != 0) {
+            emailIds = union(emailIds, inContact.emailIds);
+            if(primaryEmail == StringDictionary.MISSING) {
+                primaryEmail = inContact.primaryEmail;
             }
             merged = true;
         }
 
         // merge the phone numbers
-        phoneNumbers.addAll(inContact.getPhoneNumbers());
-
-        if(merged && inContact.getFullName()!=null) {
-            mergedNames.add(inContact.getFullName());
+        phoneIds = union(phoneIds, inContact.phoneIds);
+        // the merged contact is a duplicate whether it added anything or not
+        if (inContact.id != null || inContact.mergedIds != null) {
+            if (mergedIds == null) {
+                mergedIds = new ArrayList<String>(1);
+            }
+            if (inContact.id != null) {
+                mergedIds.add(inContact.id);
+            }
+            if (inContact.mergedIds != null) {
+                mergedIds.addAll(inContact.mergedIds);
+            }
         }
+        return merged;
+    }
+
+    /**
+     * Merges the incoming contact and records the merge in the session, whether it added anything or not
+     * @param session dedupe run to record the merge in
+     * @param key key the contacts were linked on, or null if not known
+     */
+    public boolean merge(GoogleContact inContact, DedupeSession session, String key) {
+        boolean merged = merge(inContact);
+        session.recordMerge(this, inContact, key, merged);
+        return merged;
     }
 
     @Override
     public String toString() {
         String theName = fullName == null ? "[no name]" : fullName;
-        return theName + " [" + primaryEmail + "]" + ", " + Arrays.toString(emails.toArray()) +
-                ", " + Arrays.toString(phoneNumbers.toArray());
+        return theName + " [" + getPrimaryEmail() + "]" + ", " + Arrays.toString(getEmails().toArray()) +
+                ", " + Arrays.toString(getPhoneNumbers().toArray());
+    }
+
+    /**
+     * @return sorted union of the two sorted id arrays; one of them if the other adds nothing
+     */
+    static int[] union(int[] ids1, int[] ids2) {
+        int[] result = new int[ids1.length + ids2.length];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < ids1.length || j < ids2.length) {
+            if (j == ids2.length || (i < ids1.length && ids1[i] < ids2[j])) {
+                result[size++] = ids1[i++];
+            } else if (i == ids1.length || ids2[j] < ids1[i]) {
+                result[size++] = ids2[j++];
+            } else {
+                result[size++] = ids1[i++];
+                j++;
+            }
+        }
+        if (size == ids1.length) {
+            return ids1;
+        }
+        if (size == ids2.length) {
+            return ids2;
+        }
+        return (size == result.length) ? result : Arrays.copyOf(result, size);
+    }
+
+    private static int[] translate(int[] ids, StringDictionary from, StringDictionary to) {
+        if (ids.length == 0) {
+            return ids;
+        }
+        int[] translated = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            translated[i] = to.intern(from.get(ids[i]));
+        }
+        Arrays.sort(translated);
+        return translated;
+    }
+
+    /**
+     * Strings of a sorted id array, looked up in a dictionary as they're iterated
+     */
+    private static class IdSet extends AbstractSet<String> {
+        private final int[] ids;
+        private final StringDictionary dictionary;
+
+        private IdSet(int[] inIds, StringDictionary inDictionary) {
+            ids = inIds;
+            dictionary = inDictionary;
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof String)) {
+                return false;
+            }
+            int id = dictionary.indexOf((String) o);
+            return id != StringDictionary.MISSING && Arrays.binarySearch(ids, id) >= 0;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int next = 0;
+
+                public boolean hasNext() {
+                    return next < ids.length;
+                }
+
+                public String next() {
+                    if (next == ids.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return dictionary.get(ids[next++]);
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException("Contact emails and phones are read-only");
+                }
+            };
+        }
     }
 }
@@ -0,0 +1,218 @@
+package com.google.plus.samples.quickstart;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streams contacts out of a Google CSV export, one record at a time.
+ *
+ * The header row tells which columns hold what: "Name" (or given/family name columns),
+ * "E-mail N - Value"/"E-mail N - Type" and "Phone N - Value". A type starting with "* " marks the
+ * primary email, and a single cell can hold several values separated by " ::: ".
+ * Quoted fields may contain commas, doubled quotes and line breaks.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class GoogleCsvContactSource implements ContactSource {
+    private static final Pattern EMAIL_VALUE = Pattern.compile("E-mail (\\d+) - Value");
+    private static final Pattern EMAIL_TYPE = Pattern.compile("E-mail (\\d+) - Type");
+    private static final Pattern PHONE_VALUE = Pattern.compile("Phone (\\d+) - Value");
+    private static final String MULTI_VALUE_SEPARATOR = " ::: ";
+    private static final String PRIMARY_TYPE_PREFIX = "* ";
+
+    private final BufferedReader reader;
+    private final ContactStore store;
+    private int nameColumn = -1;
+    private int givenNameColumn = -1;
+    private int familyNameColumn = -1;
+    private final List<Integer> emailColumns = new ArrayList<Integer>();
+    private final List<Integer> emailTypeColumns = new ArrayList<Integer>();
+    private final List<Integer> phoneColumns = new ArrayList<Integer>();
+    private boolean headerRead;
+    private final List<String> record = new ArrayList<String>();
+    private final StringBuilder field = new StringBuilder();
+
+    public GoogleCsvContactSource(Reader inReader) {
+        this(inReader, new ContactStore());
+    }
+
+    /**
+     * @param inStore store to create the contacts in
+     */
+    public GoogleCsvContactSource(Reader inReader, ContactStore inStore) {
+        reader = (inReader instanceof BufferedReader) ? (BufferedReader) inReader : new BufferedReader(inReader);
+        store = inStore;
+    }
+
+    public String getOwnerName() {
+        return null;
+    }
+
+    public GoogleContact next() throws IOException {
+        if (!headerRead) {
+            readHeader();
+        }
+        while (readRecord()) {
+            if (record.size() == 1 && record.get(0).length() == 0) {
+                // blank line
+                continue;
+            }
+            return toContact();
+        }
+        return null;
+    }
+
+    private void readHeader() throws IOException {
+        headerRead = true;
+        if (!readRecord()) {
+            return;
+        }
+        List<Integer> emailNumbers = new ArrayList<Integer>();
+        List<Integer> typeNumbers = new ArrayList<Integer>();
+        for (int i = 0; i < record.size(); i++) {
+            String column = record.get(i).trim();
+            if ("Name".equals(column)) {
+                nameColumn = i;
+            } else if ("Given Name".equals(column) || "First Name".equals(column)) {
+                givenNameColumn = i;
+            } else if ("Family Name".equals(column) || "Last Name".equals(column)) {
+                familyNameColumn = i;
+            } else {
+                Matcher matcher;
+                if ((matcher = EMAIL_VALUE.matcher(column)).matches()) {
+                    emailColumns.add(i);
+                    emailNumbers.add(Integer.valueOf(matcher.group(1)));
+                } else if ((matcher = EMAIL_TYPE.matcher(column)).matches()) {
+                    typeNumbers.add(Integer.valueOf(matcher.group(1)));
+                    emailTypeColumns.add(i);
+                } else if (PHONE_VALUE.matcher(column).matches()) {
+                    phoneColumns.add(i);
+                }
+            }
+        }
+        // line the type columns up with the value columns
+        List<Integer> alignedTypes = new ArrayList<Integer>();
+        for (Integer number : emailNumbers) {
+            int typeIndex = typeNumbers.indexOf(number);
+            alignedTypes.add(typeIndex < 0 ? -1 : emailTypeColumns.get(typeIndex));
+        }
+        emailTypeColumns.clear();
+        emailTypeColumns.addAll(alignedTypes);
+    }
+
+    private GoogleContact toContact() {
+        String fullName = cell(nameColumn);
+        if (fullName == null) {
+            String given = cell(givenNameColumn);
+            String family = cell(familyNameColumn);
+            if (given != null && family != null) {
+                fullName = given + " " + family;
+            } else {
+                fullName = (given != null) ? given : family;
+            }
+        }
+        List<String> emails = new ArrayList<String>();
+        String primaryEmail = null;
+        for (int i = 0; i < emailColumns.size(); i++) {
+            String value = cell(emailColumns.get(i));
+            if (value == null) {
+                continue;
+            }
+            String type = cell(emailTypeColumns.get(i));
+            boolean primary = (type != null && type.startsWith(PRIMARY_TYPE_PREFIX));
+            for (String email : split(value)) {
+                emails.add(email);
+                if (primary && primaryEmail == null) {
+                    primaryEmail = email;
+                }
+            }
+        }
+        List<String> phones = new ArrayList<String>();
+        for (Integer column : phoneColumns) {
+            String value = cell(column);
+            if (value != null) {
+                phones.addAll(split(value));
+            }
+        }
+        return new GoogleContact(null, fullName, emails, primaryEmail, phones, store);
+    }
+
+    private String cell(int column) {
+        if (column < 0 || column >= record.size()) {
+            return null;
+        }
+        String value = record.get(column).trim();
+        return value.length() == 0 ? null : value;
+    }
+
+    private static List<String> split(String value) {
+        List<String> values = new ArrayList<String>(1);
+        int start = 0;
+        int separator;
+        while ((separator = value.indexOf(MULTI_VALUE_SEPARATOR, start)) >= 0) {
+            addTrimmed(values, value.substring(start, separator));
+            start = separator + MULTI_VALUE_SEPARATOR.length();
+        }
+        addTrimmed(values, value.substring(start));
+        return values;
+    }
+
+    private static void addTrimmed(List<String> values, String value) {
+        String trimmed = value.trim();
+        if (trimmed.length() > 0) {
+            values.add(trimmed);
+        }
+    }
+
+    /**
+     * Reads the next CSV record into {@link #record}
+     * @return false at the end of input
+     */
+    private boolean readRecord() throws IOException {
+        record.clear();
+        field.setLength(0);
+        boolean quoted = false;
+        boolean sawAnything = false;
+        int c;
+        while ((c = reader.read()) != -1) {
+            sawAnything = true;
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    if (reader.read() == '"') {
+                        field.append('"');
+                    } else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                record.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+        if (!sawAnything) {
+            return false;
+        }
+        record.add(field.toString());
+        return true;
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,64 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.util.ServiceException;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Contacts read live from the Google contacts feed, through a {@link ContactFeedPipeline}
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class GoogleFeedContactSource implements ContactSource {
+    private final ContactFeedPipeline pipeline;
+    private final ContactStore store;
+    private Iterator<ContactEntry> currentPage = Collections.<ContactEntry>emptyList().iterator();
+
+    public GoogleFeedContactSource(ContactFeedPipeline inPipeline) {
+        this(inPipeline, new ContactStore());
+    }
+
+    /**
+     * @param inStore store to create the contacts in
+     */
+    public GoogleFeedContactSource(ContactFeedPipeline inPipeline, ContactStore inStore) {
+        pipeline = inPipeline;
+        store = inStore;
+    }
+
+    public GoogleContact next() throws IOException {
+        try {
+            while (!currentPage.hasNext()) {
+                List<ContactEntry> page = pipeline.nextPage();
+                if (page == null) {
+                    return null;
+                }
+                currentPage = page.iterator();
+            }
+        } catch (ServiceException e) {
+            throw new IOException("Failed to read contacts feed: " + e.getMessage(), e);
+        }
+        return new GoogleContact(currentPage.next(), store);
+    }
+
+    public String getOwnerName() throws IOException {
+        try {
+            return pipeline.start().getTitle().getPlainText();
+        } catch (ServiceException e) {
+            throw new IOException("Failed to read contacts feed: " + e.getMessage(), e);
+        }
+    }
+
+    public ContactFeedPipeline getPipeline() {
+        return pipeline;
+    }
+
+    public void close() {
+        pipeline.close();
+    }
+}
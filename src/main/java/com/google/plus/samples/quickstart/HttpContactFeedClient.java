@@ -0,0 +1,104 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.ApacheHttpTransport;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.ExtensionProfile;
+import com.google.gdata.data.contacts.ContactFeed;
+import com.google.gdata.util.ServiceException;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads contacts feed pages from Google over a shared {@link HttpTransport}, so the pages of all the sessions reuse
+ * the transport's pooled keep-alive connections, and parses them into gdata feeds.
+ *
+ * Pages are asked for gzipped, and with a partial response {@link #FIELDS} selection of only what
+ * {@link GoogleContact} and {@link ContactCache} read: the full projection also carries links, group memberships,
+ * extended properties and the like for every entry, several times the bytes to download and parse.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class HttpContactFeedClient implements ContactFeedClient {
+    /**
+     * Feed id, title (the owner), updated time and total, and each entry's id, updated time, deleted mark, full name,
+     * emails and phone numbers
+     */
+    public static final String FIELDS = "id,updated,title,openSearch:totalResults,"
+            + "entry(id,updated,gd:deleted,gd:name(gd:fullName),gd:email,gd:phoneNumber)";
+
+    private final HttpTransport transport;
+    private final HttpRequestInitializer credential;
+    private final String feedUrl;
+    private final ExtensionProfile extensionProfile = new ExtensionProfile();
+
+    /**
+     * @param inCredential authorizes the requests, ie the session's GoogleCredential
+     * @param inFeedUrl ie https://www.google.com/m8/feeds/contacts/default/full
+     */
+    public HttpContactFeedClient(HttpTransport inTransport, HttpRequestInitializer inCredential, String inFeedUrl) {
+        transport = inTransport;
+        credential = inCredential;
+        feedUrl = inFeedUrl;
+        new ContactFeed().declareExtensions(extensionProfile);
+    }
+
+    /**
+     * @return transport with a pool of up to maxConnections keep-alive connections, to share between sessions
+     */
+    public static HttpTransport newPooledTransport(int maxConnections) {
+        ApacheHttpTransport.Builder builder = new ApacheHttpTransport.Builder();
+        HttpParams params = builder.getHttpParams();
+        ConnManagerParams.setMaxTotalConnections(params, maxConnections);
+        // nearly every request goes to the same couple of hosts, so they may have all the connections
+        ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxConnections));
+        HttpConnectionParams.setConnectionTimeout(params, 20 * 1000);
+        HttpConnectionParams.setSoTimeout(params, 60 * 1000);
+        HttpConnectionParams.setTcpNoDelay(params, true);
+        return builder.build();
+    }
+
+    public ContactFeed fetchPage(int startIndex, int maxResults, long updatedMin) throws IOException, ServiceException {
+        GenericUrl url = new GenericUrl(feedUrl);
+        url.set("start-index", startIndex);
+        url.set("max-results", maxResults);
+        if (updatedMin > 0) {
+            url.set("updated-min", new DateTime(updatedMin).toString());
+            url.set("showdeleted", "true");
+        }
+        url.set("fields", FIELDS);
+        HttpRequest request = transport.createRequestFactory(credential).buildGetRequest(url);
+        request.getHeaders().setAcceptEncoding("gzip");
+        request.getHeaders().set("GData-Version", "3.0");
+        request.setThrowExceptionOnExecuteError(false);
+        HttpResponse response = request.execute();
+        try {
+            if (!response.isSuccessStatusCode()) {
+                // same as the gdata client, so a delta sync Google refuses still falls back to a full read
+                ServiceException e = new ServiceException(response.getStatusCode() + " " + response.getStatusMessage()
+                        + " reading " + url.build());
+                e.setHttpErrorCodeOverride(response.getStatusCode());
+                throw e;
+            }
+            // getContent() undoes the gzip
+            InputStream content = new BufferedInputStream(response.getContent(), 64 * 1024);
+            ContactFeed page = new ContactFeed();
+            page.parseAtom(extensionProfile, content);
+            return page;
+        } finally {
+            // reads what's left and puts the connection back in the pool; disconnect() would close it
+            response.ignore();
+        }
+    }
+}
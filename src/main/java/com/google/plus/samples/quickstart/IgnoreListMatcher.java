@@ -0,0 +1,210 @@
+package com.google.plus.samples.quickstart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+/**
+ * Matches emails against the ignore-list patterns without running one big alternation regex per email.
+ *
+ * The patterns in ignore-list.xml are nearly all of the form "literal.*literal", so they get sorted into:
+ * 1. domain/suffix rules, like ".*@reply.facebook.com" - looked up in a reversed character trie walked
+ *    from the end of the email
+ * 2. local-part prefix rules, like "sale-.*@craigslist.org" or "unsubscribe@.*" - looked up in a prefix trie,
+ *    with the (optional) literal suffix checked on the rules hanging off the matched nodes
+ * 3. everything else, like ".*auto_reply.*" - compiled into its own regex and tried last
+ *
+ * In literal parts a bare '.' is taken to mean a dot, which is what the domains in the list mean anyway.
+ * Every rule keeps a hit counter, so we can see which patterns actually earn their keep.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class IgnoreListMatcher {
+    private static final String WILDCARD = ".*";
+
+    private final List<String> patterns;
+    private final AtomicLongArray hits;
+    private final TrieNode suffixTrie = new TrieNode();
+    private final TrieNode prefixTrie = new TrieNode();
+    private final List<Pattern> regexRules = new ArrayList<Pattern>();
+    private final List<Integer> regexRuleIndexes = new ArrayList<Integer>();
+    private int numSuffixRules;
+    private int numPrefixRules;
+
+    public IgnoreListMatcher(List<String> inPatterns) {
+        patterns = Collections.unmodifiableList(new ArrayList<String>(inPatterns));
+        hits = new AtomicLongArray(patterns.size());
+        for (int i = 0; i < patterns.size(); i++) {
+            addRule(patterns.get(i), i);
+        }
+    }
+
+    private void addRule(String pattern, int ruleIndex) {
+        int wildcard = pattern.indexOf(WILDCARD);
+        if (wildcard >= 0 && pattern.indexOf(WILDCARD, wildcard + WILDCARD.length()) < 0) {
+            String prefix = toLiteral(pattern.substring(0, wildcard));
+            String suffix = toLiteral(pattern.substring(wildcard + WILDCARD.length()));
+            if (prefix != null && suffix != null) {
+                if (prefix.length() == 0 && suffix.length() > 0) {
+                    TrieNode node = suffixTrie;
+                    for (int i = suffix.length() - 1; i >= 0; i--) {
+                        node = node.childOrCreate(suffix.charAt(i));
+                    }
+                    node.addRule(new Rule(ruleIndex, ""));
+                    numSuffixRules++;
+                    return;
+                } else if (prefix.length() > 0) {
+                    TrieNode node = prefixTrie;
+                    for (int i = 0; i < prefix.length(); i++) {
+                        node = node.childOrCreate(prefix.charAt(i));
+                    }
+                    node.addRule(new Rule(ruleIndex, suffix));
+                    numPrefixRules++;
+                    return;
+                }
+            }
+        }
+        regexRules.add(Pattern.compile(pattern));
+        regexRuleIndexes.add(ruleIndex);
+    }
+
+    /**
+     * @return the literal text of the regex fragment, or null if it uses any regex feature other than '.'
+     */
+    private static String toLiteral(String fragment) {
+        StringBuilder literal = new StringBuilder(fragment.length());
+        for (int i = 0; i < fragment.length(); i++) {
+            char c = fragment.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < fragment.length() && !Character.isLetterOrDigit(fragment.charAt(i + 1))) {
+                    literal.append(fragment.charAt(++i));
+                } else {
+                    return null;
+                }
+            } else if ("[](){}*+?|^$".indexOf(c) >= 0) {
+                return null;
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.toString();
+    }
+
+    /**
+     * @return true if the email matches any of the ignore patterns
+     */
+    public boolean matches(String email) {
+        int length = email.length();
+        // suffix rules: walk the email backwards
+        TrieNode node = suffixTrie;
+        for (int i = length - 1; i >= 0 && node != null; i--) {
+            node = node.child(email.charAt(i));
+            if (node != null && node.rules != null) {
+                return hit(node.rules[0]);
+            }
+        }
+        // prefix rules: walk the email forwards, checking the suffix of every rule on the way
+        node = prefixTrie;
+        for (int i = 0; i < length && node != null; i++) {
+            node = node.child(email.charAt(i));
+            if (node != null && node.rules != null) {
+                for (Rule rule : node.rules) {
+                    if (length - (i + 1) >= rule.suffix.length() && email.endsWith(rule.suffix)) {
+                        return hit(rule);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < regexRules.size(); i++) {
+            if (regexRules.get(i).matcher(email).matches()) {
+                hits.incrementAndGet(regexRuleIndexes.get(i));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hit(Rule rule) {
+        hits.incrementAndGet(rule.index);
+        return true;
+    }
+
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * @return number of emails each pattern has caught so far, in ignore-list order
+     */
+    public Map<String, Long> getHitCounts() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < patterns.size(); i++) {
+            result.put(patterns.get(i), hits.get(i));
+        }
+        return result;
+    }
+
+    public int getNumSuffixRules() {
+        return numSuffixRules;
+    }
+
+    public int getNumPrefixRules() {
+        return numPrefixRules;
+    }
+
+    public int getNumRegexRules() {
+        return regexRules.size();
+    }
+
+    private static class Rule {
+        private final int index;
+        private final String suffix;
+
+        private Rule(int inIndex, String inSuffix) {
+            index = inIndex;
+            suffix = inSuffix;
+        }
+    }
+
+    /**
+     * Character trie node, children are kept in small parallel arrays since the fan-out is tiny
+     */
+    private static class TrieNode {
+        private char[] labels = new char[0];
+        private TrieNode[] children = new TrieNode[0];
+        private Rule[] rules;
+
+        private TrieNode child(char c) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private TrieNode childOrCreate(char c) {
+            TrieNode existing = child(c);
+            if (existing != null) {
+                return existing;
+            }
+            TrieNode created = new TrieNode();
+            labels = Arrays.copyOf(labels, labels.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            labels[labels.length - 1] = c;
+            children[children.length - 1] = created;
+            return created;
+        }
+
+        private void addRule(Rule rule) {
+            rules = (rules == null) ? new Rule[]{rule} : Arrays.copyOf(rules, rules.length + 1);
+            rules[rules.length - 1] = rule;
+        }
+    }
+}
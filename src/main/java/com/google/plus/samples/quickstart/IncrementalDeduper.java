@@ -0,0 +1,360 @@
+package com.google.plus.samples.quickstart;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Keeps a deduped view of an address book up to date as single contacts are added, changed or removed.
+ *
+ * Clusters are the same as {@link ContactDeduper}'s: contacts sharing a (lowercase) full name, an email
+ * (up to {@link EmailCanonicalizer canonical form}) or a canonical phone number - or with fuzzily matching
+ * names, given a {@link NameMatcher} - are in one cluster, and the cluster is merged into the contact that was
+ * added first. Unlike the batch deduper, the source contacts are kept as they came in and every cluster
+ * knows which contacts it was built from, so a change only re-walks the clusters the contact was, or now
+ * is, linked to - a cluster splits again when the email that held it together goes away.
+ * Merged contacts are built from copies on demand, and only for clusters that changed since.
+ *
+ * Not thread safe.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class IncrementalDeduper {
+    private static final Comparator<Node> ADDED_ORDER = new Comparator<Node>() {
+        public int compare(Node o1, Node o2) {
+            return (o1.seq < o2.seq) ? -1 : ((o1.seq == o2.seq) ? 0 : 1);
+        }
+    };
+
+    private final PhoneNumberNormalizer phoneNormalizer;
+    private final ContactStore store = new ContactStore();
+    private final EmailCanonicalizer emailCanonicalizer = EmailCanonicalizer.DEFAULT;
+    private final NameMatcher nameMatcher;
+    private final NameMatcher.Index<Node> fuzzyNames;
+    private final Map<String, Node> nodes = new HashMap<String, Node>();
+    private final Map<String, Set<Node>> nameIndex = new HashMap<String, Set<Node>>();
+    private final Map<EmailCanonicalizer.Key, Set<Node>> emailIndex =
+            new HashMap<EmailCanonicalizer.Key, Set<Node>>();
+    private final Map<Long, Set<Node>> phoneIndex = new HashMap<Long, Set<Node>>();
+    // clusters by the add order of their surviving contact, so results come out in a stable order
+    private final TreeMap<Long, Cluster> clusters = new TreeMap<Long, Cluster>();
+    private long nextSeq;
+    private long syncedTo;
+
+    public IncrementalDeduper() {
+        this(PhoneNumberNormalizer.DEFAULT, NameMatcher.getDefault());
+    }
+
+    public IncrementalDeduper(PhoneNumberNormalizer inPhoneNormalizer) {
+        this(inPhoneNormalizer, null);
+    }
+
+    /**
+     * @param inNameMatcher matcher for names that aren't exactly the same, or null for exact matches only
+     */
+    public IncrementalDeduper(PhoneNumberNormalizer inPhoneNormalizer, NameMatcher inNameMatcher) {
+        phoneNormalizer = inPhoneNormalizer;
+        nameMatcher = inNameMatcher;
+        fuzzyNames = (inNameMatcher == null) ? null : new NameMatcher.Index<Node>(inNameMatcher);
+    }
+
+    /**
+     * @return store to create the contacts in, so they don't need to be copied when put; strings of removed
+     * contacts stay in it until the deduper is rebuilt
+     */
+    public ContactStore getStore() {
+        return store;
+    }
+
+    /**
+     * Adds the contact, or replaces the one with the same id; a changed contact keeps its place in the add order.
+     * Contacts that had only ignored emails are left out, same as in the batch dedupe.
+     * @return false if the contact was left out
+     */
+    public boolean put(GoogleContact contact) {
+        if (contact.getId() == null) {
+            throw new IllegalArgumentException("Contact has no id: " + contact);
+        }
+        Set<Node> dirty = new LinkedHashSet<Node>();
+        Node old = nodes.remove(contact.getId());
+        long seq;
+        if (old != null) {
+            seq = old.seq;
+            detach(old, dirty);
+        } else {
+            seq = nextSeq++;
+        }
+        boolean added = !(contact.hadIgnoredEmails() && contact.getEmails().size() == 0);
+        if (added) {
+            contact = store.adopt(contact);
+            Node node = new Node(contact, seq);
+            nodes.put(contact.getId(), node);
+            node.nameKey = (contact.getFullName() != null) ? contact.getFullName().toLowerCase() : null;
+            if (node.nameKey != null) {
+                index(nameIndex, node.nameKey, node);
+                if (fuzzyNames != null) {
+                    node.fuzzyName = nameMatcher.prepare(contact.getFullName());
+                    if (node.fuzzyName != null) {
+                        dissolveAll(fuzzyNames.add(node, node.fuzzyName), dirty);
+                    }
+                }
+            }
+            node.emailKeys = new ArrayList<EmailCanonicalizer.Key>(contact.getEmails().size());
+            for (String email : contact.getEmails()) {
+                EmailCanonicalizer.Key emailKey = emailCanonicalizer.key(email);
+                node.emailKeys.add(emailKey);
+                index(emailIndex, emailKey, node);
+            }
+            node.phoneKeys = new ArrayList<Long>(contact.getPhoneNumbers().size());
+            node.phones = new ArrayList<String>(contact.getPhoneNumbers().size());
+            for (String phone : contact.getPhoneNumbers()) {
+                long phoneKey = phoneNormalizer.normalize(phone);
+                if (phoneKey != PhoneNumberNormalizer.INVALID) {
+                    node.phoneKeys.add(phoneKey);
+                    node.phones.add(phone);
+                    index(phoneIndex, phoneKey, node);
+                }
+            }
+            dirty.add(node);
+        }
+        recluster(dirty);
+        return added;
+    }
+
+    /**
+     * Removes the contact with the given id, splitting its cluster if it was the only link between the rest
+     * @return false if there was no such contact
+     */
+    public boolean remove(String id) {
+        Node old = nodes.remove(id);
+        if (old == null) {
+            return false;
+        }
+        Set<Node> dirty = new LinkedHashSet<Node>();
+        detach(old, dirty);
+        recluster(dirty);
+        return true;
+    }
+
+    /**
+     * Takes the node out of the indexes and dissolves its cluster, collecting the rest of the members
+     */
+    private void detach(Node node, Set<Node> dirty) {
+        if (node.nameKey != null) {
+            unindex(nameIndex, node.nameKey, node);
+        }
+        for (EmailCanonicalizer.Key emailKey : node.emailKeys) {
+            unindex(emailIndex, emailKey, node);
+        }
+        for (Long phoneKey : node.phoneKeys) {
+            unindex(phoneIndex, phoneKey, node);
+        }
+        dissolve(node.cluster, node, dirty);
+        if (node.fuzzyName != null) {
+            dissolveAll(fuzzyNames.remove(node), dirty);
+        }
+    }
+
+    /**
+     * Dissolves the clusters of the given nodes: a name block just got too large or small enough to look at,
+     * so whatever linked them through it changed
+     */
+    private void dissolveAll(Collection<Node> affected, Set<Node> dirty) {
+        for (Node member : affected) {
+            if (member.cluster != null) {
+                dissolve(member.cluster, null, dirty);
+            }
+        }
+    }
+
+    private void dissolve(Cluster cluster, Node removed, Set<Node> dirty) {
+        clusters.remove(cluster.members.get(0).seq);
+        for (Node member : cluster.members) {
+            member.cluster = null;
+            if (member != removed) {
+                dirty.add(member);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the clusters reachable from the dirty nodes. Untouched clusters that a dirty node now links
+     * to are dissolved into the new cluster along the way.
+     */
+    private void recluster(Set<Node> dirty) {
+        Deque<Node> queue = new ArrayDeque<Node>();
+        for (Node start : dirty) {
+            if (start.cluster != null) {
+                // already reached from an earlier dirty node
+                continue;
+            }
+            Cluster cluster = new Cluster();
+            start.cluster = cluster;
+            start.linkKey = null;
+            queue.add(start);
+            while (!queue.isEmpty()) {
+                Node node = queue.poll();
+                cluster.members.add(node);
+                if (node.nameKey != null) {
+                    visit(nameIndex.get(node.nameKey), cluster, queue, "name:" + node.nameKey);
+                }
+                if (node.fuzzyName != null) {
+                    visit(fuzzyNames.findMatches(node, node.fuzzyName), cluster, queue,
+                            "fuzzyName:" + node.fuzzyName);
+                }
+                for (EmailCanonicalizer.Key emailKey : node.emailKeys) {
+                    visit(emailIndex.get(emailKey), cluster, queue, "email:" + emailKey.getEmail());
+                }
+                for (int i = 0; i < node.phoneKeys.size(); i++) {
+                    visit(phoneIndex.get(node.phoneKeys.get(i)), cluster, queue, "phone:" + node.phones.get(i));
+                }
+            }
+            Collections.sort(cluster.members, ADDED_ORDER);
+            clusters.put(cluster.members.get(0).seq, cluster);
+        }
+    }
+
+    private void visit(Collection<Node> linked, Cluster cluster, Deque<Node> queue, String key) {
+        for (Node node : linked) {
+            if (node.cluster != cluster) {
+                if (node.cluster != null) {
+                    clusters.remove(node.cluster.members.get(0).seq);
+                }
+                node.cluster = cluster;
+                node.linkKey = key;
+                queue.add(node);
+            }
+        }
+    }
+
+    private static <K> void index(Map<K, Set<Node>> index, K key, Node node) {
+        Set<Node> linked = index.get(key);
+        if (linked == null) {
+            linked = new LinkedHashSet<Node>(2);
+            index.put(key, linked);
+        }
+        linked.add(node);
+    }
+
+    private static <K> void unindex(Map<K, Set<Node>> index, K key, Node node) {
+        Set<Node> linked = index.get(key);
+        if (linked != null) {
+            linked.remove(node);
+            if (linked.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @return one merged contact per cluster, in the order the surviving contacts were first added
+     */
+    public List<GoogleContact> getResult() {
+        return getResult(null);
+    }
+
+    /**
+     * @param session records the merges of every cluster, or null
+     * @return one merged contact per cluster, in the order the surviving contacts were first added
+     */
+    public List<GoogleContact> getResult(DedupeSession session) {
+        List<GoogleContact> result = new ArrayList<GoogleContact>(clusters.size());
+        for (Cluster cluster : clusters.values()) {
+            result.add(cluster.getMerged());
+            if (session != null && !cluster.merges.getMerges().isEmpty()) {
+                session.recordMerges(cluster.merges.getMerges());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return ids of the contacts that were merged into the one with the given id, itself included;
+     * empty if there's no such contact
+     */
+    public List<String> getSourceIds(String id) {
+        Node node = nodes.get(id);
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        List<String> ids = new ArrayList<String>(node.cluster.members.size());
+        for (Node member : node.cluster.members) {
+            ids.add(member.contact.getId());
+        }
+        return ids;
+    }
+
+    public int getNumContacts() {
+        return nodes.size();
+    }
+
+    public int getNumClusters() {
+        return clusters.size();
+    }
+
+    public int getUniqueEmailCount() {
+        return emailIndex.size();
+    }
+
+    public int getUniquePhoneCount() {
+        return phoneIndex.size();
+    }
+
+    /**
+     * @return version of the contacts source this deduper reflects (ie the contacts cache's last sync time)
+     */
+    public long getSyncedTo() {
+        return syncedTo;
+    }
+
+    public void setSyncedTo(long inSyncedTo) {
+        syncedTo = inSyncedTo;
+    }
+
+    private static class Node {
+        private final GoogleContact contact;
+        private final long seq;
+        private String nameKey;
+        private NameMatcher.Name fuzzyName;
+        private List<EmailCanonicalizer.Key> emailKeys;
+        private List<Long> phoneKeys;
+        // the phone numbers behind the phone keys
+        private List<String> phones;
+        private Cluster cluster;
+        // key this node was reached on when its cluster was built
+        private String linkKey;
+
+        private Node(GoogleContact inContact, long inSeq) {
+            contact = inContact;
+            seq = inSeq;
+        }
+    }
+
+    private static class Cluster {
+        // in add order, the first one survives
+        private final List<Node> members = new ArrayList<Node>(2);
+        private GoogleContact merged;
+        private DedupeSession merges;
+
+        private GoogleContact getMerged() {
+            if (merged == null) {
+                merged = new GoogleContact(members.get(0).contact);
+                merges = new DedupeSession();
+                for (int i = 1; i < members.size(); i++) {
+                    merged.merge(members.get(i).contact, merges, members.get(i).linkKey);
+                }
+            }
+            return merged;
+        }
+    }
+}
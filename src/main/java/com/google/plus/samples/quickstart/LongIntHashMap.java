@@ -0,0 +1,136 @@
+package com.google.plus.samples.quickstart;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing (linear probing) map from primitive long keys to int values.
+ * Avoids boxing a Long/Integer pair and an entry object per mapping, so the memory
+ * is two flat arrays no matter how many keys are stored.
+ * Key {@link #EMPTY_KEY} marks a free slot and can't be stored.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class LongIntHashMap {
+    public static final long EMPTY_KEY = 0L;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int resizeAt;
+
+    public LongIntHashMap() {
+        this(64);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max((int) (expectedSize / LOAD_FACTOR), 4) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the value mapped to the key, or missingValue if there's none
+     */
+    public int get(long key, int missingValue) {
+        int slot = findSlot(key);
+        return keys[slot] == key ? values[slot] : missingValue;
+    }
+
+    public boolean containsKey(long key) {
+        return key != EMPTY_KEY && keys[findSlot(key)] == key;
+    }
+
+    /**
+     * Maps the key to the value unless it's already mapped
+     * @return the existing value if the key was already present, missingValue otherwise
+     */
+    public int putIfAbsent(long key, int value, int missingValue) {
+        checkKey(key);
+        int slot = findSlot(key);
+        if (keys[slot] == key) {
+            return values[slot];
+        }
+        insert(slot, key, value);
+        return missingValue;
+    }
+
+    /**
+     * @return the previous value for the key, or missingValue if there was none
+     */
+    public int put(long key, int value, int missingValue) {
+        checkKey(key);
+        int slot = findSlot(key);
+        if (keys[slot] == key) {
+            int previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        insert(slot, key, value);
+        return missingValue;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY_KEY);
+        size = 0;
+    }
+
+    private void insert(int slot, long key, int value) {
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeAt) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) {
+                int slot = findSlot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * @return slot holding the key, or the free slot where it would go
+     */
+    private int findSlot(long key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY_KEY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static void checkKey(long key) {
+        if (key == EMPTY_KEY) {
+            throw new IllegalArgumentException("Key " + EMPTY_KEY + " is reserved for empty slots");
+        }
+    }
+
+    // murmur3 finalizer, spreads sequential numbers over the whole table
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,196 @@
+package com.google.plus.samples.quickstart;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters, histograms and gauges, written out in the Prometheus text exposition format.
+ *
+ * Recording is a couple of atomic adds and never allocates, so it's cheap enough for per-contact timings.
+ * Histograms count raw longs (nanoseconds, bytes) and scale them to the exposed unit (seconds) only when written.
+ * Metric names are unique within a registry.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class Metrics {
+    public static final Metrics REGISTRY = new Metrics();
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+
+    private final Map<String, Metric> metrics = new TreeMap<String, Metric>();
+
+    public synchronized Counter counter(String name, String help) {
+        return register(new Counter(name, help));
+    }
+
+    /**
+     * @param unit what one recorded unit is in the exposed unit, ie 1e-9 for nanoseconds exposed as seconds
+     * @param buckets upper bounds of the buckets in the exposed unit, ascending; +Inf is always added
+     */
+    public synchronized Histogram histogram(String name, String help, double unit, double... buckets) {
+        return register(new Histogram(name, help, unit, buckets));
+    }
+
+    public synchronized void gauge(String name, String help, Gauge gauge) {
+        register(new GaugeMetric(name, help, gauge));
+    }
+
+    private <M extends Metric> M register(M metric) {
+        if (metrics.containsKey(metric.name)) {
+            throw new IllegalArgumentException("Metric " + metric.name + " is already registered");
+        }
+        metrics.put(metric.name, metric);
+        return metric;
+    }
+
+    /**
+     * Writes all the metrics, sorted by name
+     */
+    public void writeTo(Writer writer) throws IOException {
+        List<Metric> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<Metric>(metrics.values());
+        }
+        for (Metric metric : snapshot) {
+            writer.write("# HELP " + metric.name + " " + metric.help + "\n");
+            writer.write("# TYPE " + metric.name + " " + metric.type + "\n");
+            metric.writeSamples(writer);
+        }
+        writer.flush();
+    }
+
+    /**
+     * A value read when the metrics are written, ie heap usage
+     */
+    public interface Gauge {
+        double getValue();
+    }
+
+    private abstract static class Metric {
+        protected final String name;
+        private final String help;
+        private final String type;
+
+        protected Metric(String inName, String inHelp, String inType) {
+            name = inName;
+            help = inHelp;
+            type = inType;
+        }
+
+        protected abstract void writeSamples(Writer writer) throws IOException;
+    }
+
+    public static class Counter extends Metric {
+        private final AtomicLong value = new AtomicLong();
+
+        private Counter(String inName, String inHelp) {
+            super(inName, inHelp, "counter");
+        }
+
+        public void inc() {
+            value.incrementAndGet();
+        }
+
+        public void add(long amount) {
+            value.addAndGet(amount);
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        @Override
+        protected void writeSamples(Writer writer) throws IOException {
+            writer.write(name + " " + value.get() + "\n");
+        }
+    }
+
+    public static class Histogram extends Metric {
+        private final double unit;
+        private final double[] buckets;
+        // bucket bounds in recorded units
+        private final long[] bounds;
+        // per bucket, not cumulative; the last one is +Inf
+        private final AtomicLongArray counts;
+        private final AtomicLong sum = new AtomicLong();
+
+        private Histogram(String inName, String inHelp, double inUnit, double[] inBuckets) {
+            super(inName, inHelp, "histogram");
+            unit = inUnit;
+            buckets = inBuckets.clone();
+            bounds = new long[inBuckets.length];
+            for (int i = 0; i < inBuckets.length; i++) {
+                if (i > 0 && inBuckets[i] <= inBuckets[i - 1]) {
+                    throw new IllegalArgumentException("Buckets of " + inName + " aren't ascending");
+                }
+                bounds[i] = (long) Math.floor(toRecorded(inBuckets[i]));
+            }
+            counts = new AtomicLongArray(inBuckets.length + 1);
+        }
+
+        public void observe(long value) {
+            int bucket = 0;
+            while (bucket < bounds.length && value > bounds[bucket]) {
+                bucket++;
+            }
+            counts.incrementAndGet(bucket);
+            sum.addAndGet(value);
+        }
+
+        /**
+         * Records the nanoseconds since the given System.nanoTime()
+         */
+        public void observeSince(long startNanos) {
+            observe(System.nanoTime() - startNanos);
+        }
+
+        // divide by whole numbers for fractional units, 1e-9 itself isn't exact
+        private double toRecorded(double exposed) {
+            return (unit < 1) ? exposed * Math.rint(1 / unit) : exposed / unit;
+        }
+
+        private double toExposed(long recorded) {
+            return (unit < 1) ? recorded / Math.rint(1 / unit) : recorded * unit;
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                count += counts.get(i);
+            }
+            return count;
+        }
+
+        @Override
+        protected void writeSamples(Writer writer) throws IOException {
+            long cumulative = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                cumulative += counts.get(i);
+                String bound = (i < buckets.length) ? Double.toString(buckets[i]) : "+Inf";
+                writer.write(name + "_bucket{le=\"" + bound + "\"} " + cumulative + "\n");
+            }
+            writer.write(name + "_sum " + toExposed(sum.get()) + "\n");
+            writer.write(name + "_count " + cumulative + "\n");
+        }
+    }
+
+    private static class GaugeMetric extends Metric {
+        private final Gauge gauge;
+
+        private GaugeMetric(String inName, String inHelp, Gauge inGauge) {
+            super(inName, inHelp, "gauge");
+            gauge = inGauge;
+        }
+
+        @Override
+        protected void writeSamples(Writer writer) throws IOException {
+            writer.write(name + " " + gauge.getValue() + "\n");
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package com.google.plus.samples.quickstart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Fuzzy full name matching, for names that are the same person but not the same string:
+ * "Bob Smith", "Robert Smith", "Smith, Robert" and "Robert Smyth".
+ *
+ * Names are first brought to a canonical form: lowercase, "Last, First" turned around, punctuation dropped,
+ * a common nickname in the first name replaced by the full one, and the words sorted. Single letters are kept aside as
+ * initials - two names with different initials (Bob A. Smith, Bob B. Smith) never match.
+ * Two canonical names match if their Jaro-Winkler similarity is at least the threshold.
+ *
+ * Scoring every pair doesn't scale to big address books, so names are only scored against the ones sharing
+ * a blocking key with them: the canonical form itself, and the sorted Soundex codes of its words. An
+ * {@link Index} keeps names by their blocking keys; keys shared by more than {@link #MAX_BLOCK_SIZE} names
+ * (ie thousands of Smiths) are skipped, so no name gets scored against more than a few hundred others.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class NameMatcher {
+    public static final int MAX_BLOCK_SIZE = 100;
+    private static final String SOUNDEX_CODES = "01230120022455012623010202";
+    private static final Map<String, String> NICKNAMES = new HashMap<String, String>();
+
+    static {
+        // only nicknames that stand for one given name; ones shared by several (pat, bert, chris, sam) would
+        // merge different people
+        addNicknames("robert", "bob", "bobby", "rob", "robbie");
+        addNicknames("william", "bill", "billy", "will", "willy");
+        addNicknames("james", "jim", "jimmy");
+        addNicknames("michael", "mike", "mikey", "mick");
+        addNicknames("richard", "rick", "ricky", "dick", "rich");
+        addNicknames("thomas", "tom", "tommy");
+        addNicknames("joseph", "joe", "joey");
+        addNicknames("david", "dave", "davey");
+        addNicknames("daniel", "dan", "danny");
+        addNicknames("matthew", "matt");
+        addNicknames("nicholas", "nick");
+        addNicknames("anthony", "tony");
+        addNicknames("andrew", "andy");
+        addNicknames("benjamin", "ben", "benny");
+        addNicknames("steven", "steve");
+        addNicknames("timothy", "tim", "timmy");
+        addNicknames("alexander", "alexandr");
+        addNicknames("katherine", "kate", "katie", "kathy", "catherine", "cathy", "kat");
+        addNicknames("elizabeth", "liz", "lizzy", "beth", "betty");
+        addNicknames("jennifer", "jen", "jenny");
+        addNicknames("margaret", "maggie", "meg", "peggy");
+        addNicknames("patricia", "patty", "trish");
+        addNicknames("susan", "sue", "suzy");
+        addNicknames("dmitry", "dima", "dmitri");
+        addNicknames("ekaterina", "katya");
+    }
+
+    private final double threshold;
+
+    /**
+     * @param inThreshold Jaro-Winkler similarity at or above which two names match, between 0 and 1
+     */
+    public NameMatcher(double inThreshold) {
+        if (inThreshold <= 0 || inThreshold > 1) {
+            throw new IllegalArgumentException("Invalid similarity threshold: " + inThreshold);
+        }
+        threshold = inThreshold;
+    }
+
+    /**
+     * @return matcher with the -Ddeduper.fuzzyNameThreshold=... threshold (ie 0.93), or null if it isn't set,
+     * for exact name matches only
+     */
+    public static NameMatcher getDefault() {
+        String threshold = System.getProperty("deduper.fuzzyNameThreshold");
+        return (threshold == null) ? null : new NameMatcher(Double.parseDouble(threshold));
+    }
+
+    private static void addNicknames(String fullName, String... nicknames) {
+        for (String nickname : nicknames) {
+            NICKNAMES.put(nickname, fullName);
+        }
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return the name in canonical form along with its blocking keys, or null if there's nothing to match on
+     */
+    public Name prepare(String fullName) {
+        String name = fullName.toLowerCase();
+        int comma = name.indexOf(',');
+        if (comma >= 0 && comma == name.lastIndexOf(',')) {
+            // "Smith, Robert"
+            name = name.substring(comma + 1) + " " + name.substring(0, comma);
+        }
+        TreeSet<String> words = new TreeSet<String>();
+        TreeSet<String> initials = new TreeSet<String>();
+        StringBuilder word = new StringBuilder();
+        // nicknames only stand in for the first name, "Dick" or "Bob" as a last name stays as it is
+        boolean firstName = true;
+        for (int i = 0; i <= name.length(); i++) {
+            char c = (i < name.length()) ? name.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                if (word.length() == 1) {
+                    initials.add(word.toString());
+                } else {
+                    String nickname = firstName ? NICKNAMES.get(word.toString()) : null;
+                    words.add((nickname != null) ? nickname : word.toString());
+                    firstName = false;
+                }
+                word.setLength(0);
+            }
+        }
+        if (words.isEmpty()) {
+            return null;
+        }
+        StringBuilder canonical = new StringBuilder();
+        String[] soundex = new String[words.size()];
+        int i = 0;
+        for (String oneWord : words) {
+            if (canonical.length() > 0) {
+                canonical.append(' ');
+            }
+            canonical.append(oneWord);
+            soundex[i++] = soundex(oneWord);
+        }
+        Arrays.sort(soundex);
+        StringBuilder soundexKey = new StringBuilder("s:");
+        for (String code : soundex) {
+            soundexKey.append(code);
+        }
+        String canonicalName = canonical.toString();
+        List<String> keys = Arrays.asList("n:" + canonicalName, soundexKey.toString());
+        return new Name(canonicalName, initials.toString(), initials.isEmpty(), keys);
+    }
+
+    /**
+     * @return true if the two names are likely the same person
+     */
+    public boolean matches(Name name1, Name name2) {
+        if (!name1.noInitials && !name2.noInitials && !name1.initials.equals(name2.initials)) {
+            return false;
+        }
+        return name1.canonical.equals(name2.canonical) || similarity(name1.canonical, name2.canonical) >= threshold;
+    }
+
+    /**
+     * @return Jaro-Winkler similarity of the two strings, 1 for identical ones and 0 for nothing in common
+     */
+    static double similarity(String s1, String s2) {
+        int length1 = s1.length();
+        int length2 = s2.length();
+        if (length1 == 0 || length2 == 0) {
+            return (length1 == length2) ? 1 : 0;
+        }
+        int window = Math.max(0, Math.max(length1, length2) / 2 - 1);
+        boolean[] matched1 = new boolean[length1];
+        boolean[] matched2 = new boolean[length2];
+        int matches = 0;
+        for (int i = 0; i < length1; i++) {
+            int end = Math.min(i + window + 1, length2);
+            for (int j = Math.max(0, i - window); j < end; j++) {
+                if (!matched2[j] && s1.charAt(i) == s2.charAt(j)) {
+                    matched1[i] = true;
+                    matched2[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) {
+            return 0;
+        }
+        int transpositions = 0;
+        for (int i = 0, j = 0; i < length1; i++) {
+            if (matched1[i]) {
+                while (!matched2[j]) {
+                    j++;
+                }
+                if (s1.charAt(i) != s2.charAt(j)) {
+                    transpositions++;
+                }
+                j++;
+            }
+        }
+        double jaro = ((double) matches / length1 + (double) matches / length2
+                + (matches - transpositions / 2.0) / matches) / 3;
+        int prefix = 0;
+        while (prefix < 4 && prefix < length1 && prefix < length2 && s1.charAt(prefix) == s2.charAt(prefix)) {
+            prefix++;
+        }
+        return jaro + prefix * 0.1 * (1 - jaro);
+    }
+
+    /**
+     * @return American Soundex code of the word, ie "S530" for both smith and smyth; words that don't
+     * start with a latin letter are their own code
+     */
+    static String soundex(String word) {
+        char first = word.charAt(0);
+        if (first < 'a' || first > 'z') {
+            return word;
+        }
+        StringBuilder code = new StringBuilder(4);
+        code.append(Character.toUpperCase(first));
+        char last = SOUNDEX_CODES.charAt(first - 'a');
+        for (int i = 1; i < word.length() && code.length() < 4; i++) {
+            char c = word.charAt(i);
+            if (c < 'a' || c > 'z') {
+                continue;
+            }
+            char digit = SOUNDEX_CODES.charAt(c - 'a');
+            if (digit != '0' && digit != last) {
+                code.append(digit);
+            }
+            // h and w don't separate letters with the same code, vowels do
+            if (c != 'h' && c != 'w') {
+                last = digit;
+            }
+        }
+        while (code.length() < 4) {
+            code.append('0');
+        }
+        return code.toString();
+    }
+
+    /**
+     * A name prepared for matching
+     */
+    public static class Name {
+        private final String canonical;
+        private final String initials;
+        private final boolean noInitials;
+        private final List<String> keys;
+
+        Name(String inCanonical, String inInitials, boolean inNoInitials, List<String> inKeys) {
+            canonical = inCanonical;
+            initials = inInitials;
+            noInitials = inNoInitials;
+            keys = inKeys;
+        }
+
+        public String getCanonical() {
+            return canonical;
+        }
+
+        public List<String> getBlockingKeys() {
+            return keys;
+        }
+
+        @Override
+        public String toString() {
+            return noInitials ? canonical : canonical + " " + initials;
+        }
+    }
+
+    /**
+     * Items (contacts, or their ids) by the blocking keys of their names, to find the ones with matching names.
+     * Blocks of more than {@link #MAX_BLOCK_SIZE} items are too common a key to be of use and aren't looked at,
+     * so which names match depends only on what's in the index, not on the order it got there.
+     * Not thread safe.
+     */
+    public static class Index<T> {
+        private final NameMatcher matcher;
+        private final Map<String, Set<T>> blocks = new HashMap<String, Set<T>>();
+        private final Map<T, Name> names = new HashMap<T, Name>();
+
+        public Index(NameMatcher inMatcher) {
+            matcher = inMatcher;
+        }
+
+        /**
+         * @param item item the name belongs to, whether it's in the index already or not
+         * @return the other items in the index whose names match the given one
+         */
+        public List<T> findMatches(T item, Name name) {
+            List<T> found = Collections.emptyList();
+            for (String key : name.keys) {
+                Set<T> block = blocks.get(key);
+                if (block == null || block.size() > MAX_BLOCK_SIZE) {
+                    continue;
+                }
+                for (T other : block) {
+                    if (!other.equals(item) && matcher.matches(name, names.get(other)) && !found.contains(other)) {
+                        if (found.isEmpty()) {
+                            found = new ArrayList<T>(2);
+                        }
+                        found.add(other);
+                    }
+                }
+            }
+            return found;
+        }
+
+        /**
+         * @return items that may have lost matches, because a block they're in just got too large to look at
+         */
+        public List<T> add(T item, Name name) {
+            Set<T> affected = null;
+            names.put(item, name);
+            for (String key : name.keys) {
+                Set<T> block = blocks.get(key);
+                if (block == null) {
+                    block = new LinkedHashSet<T>(2);
+                    blocks.put(key, block);
+                }
+                if (block.size() == MAX_BLOCK_SIZE) {
+                    // every key that just got too large, not only the last one
+                    if (affected == null) {
+                        affected = new LinkedHashSet<T>(block);
+                    } else {
+                        affected.addAll(block);
+                    }
+                }
+                block.add(item);
+            }
+            return asList(affected);
+        }
+
+        /**
+         * @return items that may have new matches, because a block they're in is small enough to look at again
+         */
+        public List<T> remove(T item) {
+            Set<T> affected = null;
+            Name name = names.remove(item);
+            if (name == null) {
+                return Collections.emptyList();
+            }
+            for (String key : name.keys) {
+                Set<T> block = blocks.get(key);
+                if (block != null) {
+                    block.remove(item);
+                    if (block.isEmpty()) {
+                        blocks.remove(key);
+                    } else if (block.size() == MAX_BLOCK_SIZE) {
+                        if (affected == null) {
+                            affected = new LinkedHashSet<T>(block);
+                        } else {
+                            affected.addAll(block);
+                        }
+                    }
+                }
+            }
+            return asList(affected);
+        }
+
+        private static <T> List<T> asList(Set<T> items) {
+            return (items == null) ? Collections.<T>emptyList() : new ArrayList<T>(items);
+        }
+
+        public Name getName(T item) {
+            return names.get(item);
+        }
+
+        public int size() {
+            return names.size();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.google.plus.samples.quickstart;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * HTML page with {{ NAME }} placeholders, compiled once instead of on every request.
+ *
+ * The placeholders with fixed values (client id, application name) are filled in when the file is loaded,
+ * and the page is split around the one per-request placeholder into pre-encoded UTF-8 segments, so a request
+ * just writes the segments with its value in between. The file is checked for changes at most once per
+ * check interval and recompiled if it changed.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class PageTemplate {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final Map<String, String> fixedValues;
+    private final Pattern variable;
+    private final long checkIntervalMillis;
+    private volatile Page page;
+    private volatile long lastCheck;
+
+    /**
+     * @param inFixedValues values of the placeholders that are the same for every request
+     * @param variableName the placeholder that's filled in per request
+     * @param inCheckIntervalMillis how often to check the file for changes, negative to never reload it
+     */
+    public PageTemplate(File inFile, Map<String, String> inFixedValues, String variableName, long inCheckIntervalMillis) {
+        file = inFile;
+        fixedValues = inFixedValues;
+        variable = placeholder(variableName);
+        checkIntervalMillis = inCheckIntervalMillis;
+    }
+
+    private static Pattern placeholder(String name) {
+        return Pattern.compile("[{]{2}\\s*" + Pattern.quote(name) + "\\s*[}]{2}");
+    }
+
+    /**
+     * @return the current compiled page, loading or reloading it if needed
+     * @throws FileNotFoundException if there's no template file
+     */
+    public Page get() throws IOException {
+        Page current = page;
+        if (current == null) {
+            return reload(null);
+        }
+        if (checkIntervalMillis >= 0) {
+            long now = System.currentTimeMillis();
+            if (now - lastCheck >= checkIntervalMillis) {
+                lastCheck = now;
+                if (file.lastModified() != current.lastModified) {
+                    return reload(current);
+                }
+            }
+        }
+        return current;
+    }
+
+    private synchronized Page reload(Page seen) throws IOException {
+        if (page != seen) {
+            // someone else got here first
+            return page;
+        }
+        if (!file.isFile()) {
+            throw new FileNotFoundException(file.getAbsolutePath());
+        }
+        long lastModified = file.lastModified();
+        String text = FileUtils.readFileToString(file, "UTF-8");
+        for (Map.Entry<String, String> fixed : fixedValues.entrySet()) {
+            text = placeholder(fixed.getKey()).matcher(text).replaceAll(Matcher.quoteReplacement(fixed.getValue()));
+        }
+        List<byte[]> segments = new ArrayList<byte[]>();
+        Matcher matcher = variable.matcher(text);
+        int start = 0;
+        while (matcher.find()) {
+            segments.add(text.substring(start, matcher.start()).getBytes(UTF_8));
+            start = matcher.end();
+        }
+        segments.add(text.substring(start).getBytes(UTF_8));
+        page = new Page(segments.toArray(new byte[segments.size()][]), lastModified);
+        lastCheck = System.currentTimeMillis();
+        return page;
+    }
+
+    /**
+     * One compiled version of the template
+     */
+    public static class Page {
+        private final byte[][] segments;
+        private final long lastModified;
+        private final String version;
+        private final int staticLength;
+
+        private Page(byte[][] inSegments, long inLastModified) {
+            segments = inSegments;
+            lastModified = inLastModified;
+            CRC32 crc = new CRC32();
+            int length = 0;
+            for (byte[] segment : inSegments) {
+                crc.update(segment);
+                length += segment.length;
+            }
+            version = Long.toHexString(crc.getValue());
+            staticLength = length;
+        }
+
+        /**
+         * @return entity tag of the page filled in with the given value: the template version plus the value's hash
+         */
+        public String getETag(String value) {
+            return "\"" + version + "-" + Integer.toHexString(value.hashCode()) + "\"";
+        }
+
+        public int getLength(String value) {
+            return staticLength + (segments.length - 1) * value.getBytes(UTF_8).length;
+        }
+
+        public void write(OutputStream out, String value) throws IOException {
+            byte[] encoded = value.getBytes(UTF_8);
+            out.write(segments[0]);
+            for (int i = 1; i < segments.length; i++) {
+                out.write(encoded);
+                out.write(segments[i]);
+            }
+        }
+
+        public String getVersion() {
+            return version;
+        }
+    }
+}
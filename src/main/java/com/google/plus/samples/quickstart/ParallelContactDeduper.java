@@ -0,0 +1,468 @@
+package com.google.plus.samples.quickstart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Dedupes one large address book on several threads, with exactly the same result as {@link ContactDeduper}:
+ * the same clusters, survivors, merges and link keys, in the same order.
+ *
+ * {@link #add} only collects the contacts; {@link #dedupe()} then
+ * 1. computes every contact's keys (lowercase name, canonical email hash, normalized phone) in parallel, partitioned
+ * into shards by the hash of the key,
+ * 2. finds the first contact of every key, one task per shard; a key only ever lives in one shard, and each shard
+ * sees its keys in read order, so it finds the same owners the sequential index does,
+ * 3. unions every contact with the owners of its keys, in read order on one thread - clusters that span shards come
+ * together here, and it's only int array work, the hashing and the maps are all done by then,
+ * 4. finds fuzzy name matches in parallel (if there's a {@link NameMatcher}) and unions them in read order,
+ * 5. merges the clusters in parallel, each into its first-read contact in read order, and records the merges in
+ * read order.
+ *
+ * The unique email and phone counts are only known once the contacts are deduped.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class ParallelContactDeduper implements Deduper {
+    // contacts per task when computing keys, matching names and merging
+    private static final int CHUNK_SIZE = 4096;
+    // shards per thread, so a shard with a few very common keys doesn't keep the others waiting
+    private static final int SHARDS_PER_THREAD = 4;
+    private static final byte NAME = 0;
+    private static final byte EMAIL = 1;
+    private static final byte PHONE = 2;
+
+    private final List<GoogleContact> contacts = new ArrayList<GoogleContact>();
+    private final ContactStore store = new ContactStore();
+    private final PhoneNumberNormalizer phoneNormalizer;
+    private final NameMatcher nameMatcher;
+    private final EmailCanonicalizer emailCanonicalizer = EmailCanonicalizer.DEFAULT;
+    private final int parallelism;
+    private final int numShards;
+    private int uniqueEmails;
+    private int uniquePhones;
+    private List<GoogleContact> deduped;
+
+    public ParallelContactDeduper(int inParallelism) {
+        this(PhoneNumberNormalizer.DEFAULT, NameMatcher.getDefault(), inParallelism);
+    }
+
+    /**
+     * @param inNameMatcher matcher for names that aren't exactly the same, or null for exact matches only
+     * @param inParallelism how many threads to dedupe on
+     */
+    public ParallelContactDeduper(PhoneNumberNormalizer inPhoneNormalizer, NameMatcher inNameMatcher,
+                                  int inParallelism) {
+        if (inParallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism has to be positive: " + inParallelism);
+        }
+        phoneNormalizer = inPhoneNormalizer;
+        nameMatcher = inNameMatcher;
+        parallelism = inParallelism;
+        numShards = inParallelism * SHARDS_PER_THREAD;
+    }
+
+    public ContactStore getStore() {
+        return store;
+    }
+
+    /**
+     * Adds the contact; it's only linked to the others when they're deduped
+     * @return id of the contact within this deduper
+     */
+    public int add(GoogleContact contact) {
+        if (deduped != null) {
+            throw new IllegalStateException("Contacts were already deduped");
+        }
+        contacts.add(store.adopt(contact));
+        return contacts.size() - 1;
+    }
+
+    public List<GoogleContact> dedupe() {
+        return dedupe(new DedupeSession());
+    }
+
+    public List<GoogleContact> dedupe(DedupeSession session) {
+        if (deduped != null) {
+            return deduped;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            Keys keys = new Keys();
+            keys.compute(pool);
+            keys.findOwners(pool);
+            DisjointSet clusters = new DisjointSet(contacts.size());
+            String[] linkKeys = new String[contacts.size()];
+            keys.link(clusters, linkKeys);
+            if (nameMatcher != null) {
+                keys.linkFuzzyNames(pool, clusters, linkKeys);
+            }
+            deduped = merge(pool, clusters, linkKeys, session);
+        } finally {
+            pool.shutdown();
+        }
+        return deduped;
+    }
+
+    /**
+     * Merges each cluster into its first-read contact, clusters in parallel
+     */
+    private List<GoogleContact> merge(ForkJoinPool pool, DisjointSet clusters, final String[] linkKeys,
+                                      DedupeSession session) {
+        int numContacts = contacts.size();
+        int[] survivorOfRoot = new int[numContacts];
+        Arrays.fill(survivorOfRoot, -1);
+        // the rest of each cluster as a linked list in read order, starting from the survivor
+        final int[] next = new int[numContacts];
+        Arrays.fill(next, -1);
+        int[] last = new int[numContacts];
+        final int[] survivors = new int[numContacts];
+        int numSurvivors = 0;
+        List<GoogleContact> result = new ArrayList<GoogleContact>();
+        for (int id = 0; id < numContacts; id++) {
+            int root = clusters.find(id);
+            int survivor = survivorOfRoot[root];
+            if (survivor < 0) {
+                survivorOfRoot[root] = id;
+                last[id] = id;
+                survivors[numSurvivors++] = id;
+                result.add(contacts.get(id));
+            } else {
+                next[last[survivor]] = id;
+                last[survivor] = id;
+            }
+        }
+        final DedupeSession.Merge[] merges = new DedupeSession.Merge[numContacts];
+        final int survivorCount = numSurvivors;
+        runChunks(pool, survivorCount, new ChunkTask() {
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    GoogleContact survivor = contacts.get(survivors[i]);
+                    for (int id = next[survivors[i]]; id >= 0; id = next[id]) {
+                        GoogleContact contact = contacts.get(id);
+                        boolean addedDetails = survivor.merge(contact);
+                        merges[id] = new DedupeSession.Merge(survivor.getId(), survivor.getFullName(),
+                                contact.getId(), contact.getFullName(), linkKeys[id], addedDetails);
+                    }
+                }
+            }
+        });
+        List<DedupeSession.Merge> inOrder = new ArrayList<DedupeSession.Merge>();
+        for (DedupeSession.Merge merge : merges) {
+            if (merge != null) {
+                inOrder.add(merge);
+            }
+        }
+        session.recordMerges(inOrder);
+        return result;
+    }
+
+    public int getNumContacts() {
+        return contacts.size();
+    }
+
+    /**
+     * @return number of distinct mailboxes, 0 until the contacts are deduped
+     */
+    public int getUniqueEmailCount() {
+        return uniqueEmails;
+    }
+
+    /**
+     * @return number of distinct phone numbers, 0 until the contacts are deduped
+     */
+    public int getUniquePhoneCount() {
+        return uniquePhones;
+    }
+
+    private static void union(DisjointSet clusters, String[] linkKeys, int owner, int id, String key) {
+        if (clusters.union(owner, id)) {
+            if (linkKeys[owner] == null) {
+                linkKeys[owner] = key;
+            }
+            if (linkKeys[id] == null) {
+                linkKeys[id] = key;
+            }
+        }
+    }
+
+    private int shardOf(long hash) {
+        return (int) (((hash * 0x9E3779B97F4A7C15L) >>> 33) % numShards);
+    }
+
+    /**
+     * Runs the task over [0, count) in chunks of {@link #CHUNK_SIZE}, on the pool
+     */
+    private static void runChunks(ForkJoinPool pool, int count, ChunkTask task) {
+        runChunks(pool, count, CHUNK_SIZE, task);
+    }
+
+    private static void runChunks(ForkJoinPool pool, int count, int chunkSize, ChunkTask task) {
+        pool.invoke(new ChunksAction(task, count, chunkSize, 0, (count + chunkSize - 1) / chunkSize));
+    }
+
+    private interface ChunkTask {
+        void run(int from, int to);
+    }
+
+    /**
+     * Runs chunks [fromChunk, toChunk), splitting in halves down to one chunk per task
+     */
+    private static class ChunksAction extends RecursiveAction {
+        private final ChunkTask task;
+        private final int count;
+        private final int chunkSize;
+        private final int fromChunk;
+        private final int toChunk;
+
+        private ChunksAction(ChunkTask inTask, int inCount, int inChunkSize, int inFromChunk, int inToChunk) {
+            task = inTask;
+            count = inCount;
+            chunkSize = inChunkSize;
+            fromChunk = inFromChunk;
+            toChunk = inToChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk == 1) {
+                task.run(fromChunk * chunkSize, Math.min(count, (fromChunk + 1) * chunkSize));
+            } else if (toChunk - fromChunk > 1) {
+                int middle = (fromChunk + toChunk) >>> 1;
+                invokeAll(new ChunksAction(task, count, chunkSize, fromChunk, middle),
+                        new ChunksAction(task, count, chunkSize, middle, toChunk));
+            }
+        }
+    }
+
+    /**
+     * The keys of all the contacts, flattened: each contact's name, emails and phones take consecutive positions,
+     * in the order the sequential deduper links them on
+     */
+    private class Keys {
+        private final int numContacts = contacts.size();
+        private final String[] emails = store.getEmails().toArray();
+        private final String[] phones = store.getPhones().toArray();
+        // first position of each contact's keys
+        private final int[] offsets = new int[numContacts + 1];
+        private final String[] lowercaseNames = new String[numContacts];
+        private final NameMatcher.Name[] fuzzyNames = new NameMatcher.Name[numContacts];
+        private final int numPositions;
+        private final byte[] types;
+        private final long[] hashes;
+        // contact id of each position
+        private final int[] ids;
+        // email id of each email position
+        private final int[] emailIds;
+        // first contact with the same key, -1 for the first one itself and for invalid phones
+        private final int[] owners;
+        // positions of each shard's keys, per chunk of contacts
+        private final int[][][] shardPositions;
+        private final int[][] shardSizes;
+
+        private Keys() {
+            for (int id = 0; id < numContacts; id++) {
+                GoogleContact contact = contacts.get(id);
+                offsets[id + 1] = offsets[id] + ((contact.getFullName() != null) ? 1 : 0)
+                        + contact.getEmailIds().length + contact.getPhoneIds().length;
+            }
+            numPositions = offsets[numContacts];
+            types = new byte[numPositions];
+            hashes = new long[numPositions];
+            ids = new int[numPositions];
+            emailIds = new int[numPositions];
+            owners = new int[numPositions];
+            int numChunks = (numContacts + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            shardPositions = new int[numChunks][][];
+            shardSizes = new int[numChunks][];
+        }
+
+        /**
+         * Computes the keys of all the contacts and sorts their positions into shards, a task per chunk of contacts
+         */
+        private void compute(ForkJoinPool pool) {
+            runChunks(pool, numContacts, new ChunkTask() {
+                public void run(int from, int to) {
+                    int chunk = from / CHUNK_SIZE;
+                    int[][] positions = new int[numShards][];
+                    int[] sizes = new int[numShards];
+                    for (int id = from; id < to; id++) {
+                        GoogleContact contact = contacts.get(id);
+                        int position = offsets[id];
+                        String fullName = contact.getFullName();
+                        if (fullName != null) {
+                            lowercaseNames[id] = fullName.toLowerCase();
+                            if (nameMatcher != null) {
+                                fuzzyNames[id] = nameMatcher.prepare(fullName);
+                            }
+                            addKey(positions, sizes, position++, id, NAME, lowercaseNames[id].hashCode());
+                        }
+                        for (int emailId : contact.getEmailIds()) {
+                            emailIds[position] = emailId;
+                            addKey(positions, sizes, position++, id, EMAIL, emailCanonicalizer.hash(emails[emailId]));
+                        }
+                        for (int phoneId : contact.getPhoneIds()) {
+                            long phoneKey = phoneNormalizer.normalize(phones[phoneId]);
+                            if (phoneKey != PhoneNumberNormalizer.INVALID) {
+                                addKey(positions, sizes, position, id, PHONE, phoneKey);
+                            } else {
+                                owners[position] = -1;
+                            }
+                            position++;
+                        }
+                    }
+                    shardPositions[chunk] = positions;
+                    shardSizes[chunk] = sizes;
+                }
+            });
+        }
+
+        private void addKey(int[][] positions, int[] sizes, int position, int id, byte type, long hash) {
+            types[position] = type;
+            hashes[position] = hash;
+            ids[position] = id;
+            // the types have separate indexes, keep equal hashes of different types from crowding one shard
+            int shard = shardOf(hash + type);
+            int[] buffer = positions[shard];
+            if (buffer == null) {
+                buffer = new int[16];
+                positions[shard] = buffer;
+            } else if (sizes[shard] == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length << 1);
+                positions[shard] = buffer;
+            }
+            buffer[sizes[shard]++] = position;
+        }
+
+        /**
+         * Finds the owner of every key, a task per shard
+         */
+        private void findOwners(ForkJoinPool pool) {
+            // contact id by email id, -1 for emails not seen yet; a shard only touches the ids of its own emails
+            final int[] emailOwners = new int[emails.length];
+            Arrays.fill(emailOwners, -1);
+            final int[] shardUniqueEmails = new int[numShards];
+            final int[] shardUniquePhones = new int[numShards];
+            runChunks(pool, numShards, 1, new ChunkTask() {
+                public void run(int from, int to) {
+                    for (int shard = from; shard < to; shard++) {
+                        findOwners(shard, emailOwners, shardUniqueEmails, shardUniquePhones);
+                    }
+                }
+            });
+            for (int shard = 0; shard < numShards; shard++) {
+                uniqueEmails += shardUniqueEmails[shard];
+                uniquePhones += shardUniquePhones[shard];
+            }
+        }
+
+        /**
+         * Finds the owners of one shard's keys, going over them in read order like the sequential deduper
+         */
+        private void findOwners(int shard, int[] emailOwners, int[] shardUniqueEmails, int[] shardUniquePhones) {
+            Map<String, Integer> nameToId = new HashMap<String, Integer>();
+            LongIntHashMap canonicalEmails = new LongIntHashMap();
+            LongIntHashMap phoneToId = new LongIntHashMap();
+            for (int chunk = 0; chunk < shardPositions.length; chunk++) {
+                int[] positions = shardPositions[chunk][shard];
+                for (int i = 0; i < shardSizes[chunk][shard]; i++) {
+                    int position = positions[i];
+                    int id = ids[position];
+                    if (types[position] == NAME) {
+                        Integer owner = nameToId.get(lowercaseNames[id]);
+                        if (owner == null) {
+                            nameToId.put(lowercaseNames[id], id);
+                        }
+                        owners[position] = (owner == null) ? -1 : owner;
+                    } else if (types[position] == EMAIL) {
+                        // same as ContactDeduper.linkEmail
+                        int emailId = emailIds[position];
+                        int owner = emailOwners[emailId];
+                        if (owner < 0) {
+                            int canonicalId = canonicalEmails.putIfAbsent(hashes[position], emailId, -1);
+                            if (canonicalId >= 0
+                                    && emailCanonicalizer.equivalent(emails[emailId], emails[canonicalId])) {
+                                owner = emailOwners[canonicalId];
+                            } else {
+                                shardUniqueEmails[shard]++;
+                            }
+                            emailOwners[emailId] = (owner < 0) ? id : owner;
+                        }
+                        owners[position] = owner;
+                    } else {
+                        owners[position] = phoneToId.putIfAbsent(hashes[position], id, -1);
+                    }
+                }
+            }
+            shardUniquePhones[shard] = phoneToId.size();
+        }
+
+        /**
+         * Unions every contact with the owners of its keys, in the order the sequential deduper does
+         */
+        private void link(DisjointSet clusters, String[] linkKeys) {
+            for (int id = 0; id < numContacts; id++) {
+                clusters.makeSet();
+            }
+            for (int id = 0; id < numContacts; id++) {
+                GoogleContact contact = contacts.get(id);
+                int position = offsets[id];
+                if (contact.getFullName() != null) {
+                    int owner = owners[position++];
+                    if (owner >= 0) {
+                        union(clusters, linkKeys, owner, id, "name:" + lowercaseNames[id]);
+                    }
+                }
+                for (int emailId : contact.getEmailIds()) {
+                    int owner = owners[position++];
+                    if (owner >= 0) {
+                        union(clusters, linkKeys, owner, id, "email:" + emails[emailId]);
+                    }
+                }
+                for (int phoneId : contact.getPhoneIds()) {
+                    int owner = owners[position++];
+                    if (owner >= 0) {
+                        union(clusters, linkKeys, owner, id, "phone:" + phones[phoneId]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Looks for fuzzy name matches in parallel, the index is only read by then, and unions them in read order
+         */
+        private void linkFuzzyNames(ForkJoinPool pool, DisjointSet clusters, String[] linkKeys) {
+            final NameMatcher.Index<Integer> index = new NameMatcher.Index<Integer>(nameMatcher);
+            for (int id = 0; id < numContacts; id++) {
+                if (fuzzyNames[id] != null) {
+                    index.add(id, fuzzyNames[id]);
+                }
+            }
+            @SuppressWarnings("unchecked")
+            final List<Integer>[] matches = new List[numContacts];
+            runChunks(pool, numContacts, new ChunkTask() {
+                public void run(int from, int to) {
+                    for (int id = from; id < to; id++) {
+                        if (fuzzyNames[id] != null) {
+                            matches[id] = index.findMatches(id, fuzzyNames[id]);
+                        }
+                    }
+                }
+            });
+            for (int id = 0; id < numContacts; id++) {
+                if (matches[id] != null) {
+                    for (Integer owner : matches[id]) {
+                        if (owner < id) {
+                            union(clusters, linkKeys, owner, id, "fuzzyName:" + fuzzyNames[id]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
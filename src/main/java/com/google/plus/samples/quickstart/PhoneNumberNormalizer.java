@@ -0,0 +1,137 @@
+package com.google.plus.samples.quickstart;
+
+/**
+ * Turns the free-form phone numbers people type into their address books
+ * ("(415) 555-1234", "+1 415.555.1234 x12", "00 44 20 7946 0000") into a canonical long,
+ * so the same number written differently maps to the same key.
+ *
+ * Rules:
+ * 1. punctuation and spaces are dropped, letters are mapped to their keypad digits
+ * 2. anything after an extension marker (x, ext, #, ;, ,) is dropped
+ * 3. a leading + or 00 (or 011 for the default NANP country) means the number already has a country code
+ * 4. otherwise the default country code is prepended, dropping a national trunk 0 (or a leading 1 for NANP)
+ *
+ * The canonical form packs the digits and their count into one long, so leading zeros still count.
+ * Numbers with fewer than {@link #MIN_DIGITS} digits can't be told apart reliably and come back as
+ * {@link #INVALID}.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class PhoneNumberNormalizer {
+    public static final long INVALID = LongIntHashMap.EMPTY_KEY;
+    public static final int MIN_DIGITS = 7;
+    // E.164 max length
+    private static final int MAX_DIGITS = 15;
+    private static final String KEYPAD = "22233344455566677778889999";
+
+    public static final PhoneNumberNormalizer DEFAULT = new PhoneNumberNormalizer(1);
+
+    private final int defaultCountryCode;
+    private final String defaultCountryCodeDigits;
+
+    public PhoneNumberNormalizer(int inDefaultCountryCode) {
+        if (inDefaultCountryCode < 1 || inDefaultCountryCode > 999) {
+            throw new IllegalArgumentException("Invalid country code: " + inDefaultCountryCode);
+        }
+        defaultCountryCode = inDefaultCountryCode;
+        defaultCountryCodeDigits = String.valueOf(inDefaultCountryCode);
+    }
+
+    /**
+     * @param rawNumber phone number as typed by the user
+     * @return canonical form, or {@link #INVALID} if the number is missing or too short/long
+     */
+    public long normalize(String rawNumber) {
+        if (rawNumber == null) {
+            return INVALID;
+        }
+        // collect up to MAX_DIGITS + 3 digits, leaving room for international prefixes that get stripped
+        char[] digits = new char[MAX_DIGITS + 3];
+        int numDigits = 0;
+        boolean plus = false;
+        int length = rawNumber.length();
+        for (int i = 0; i < length; i++) {
+            char c = rawNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (numDigits == digits.length) {
+                    return INVALID;
+                }
+                digits[numDigits++] = c;
+            } else if (c == '+') {
+                plus |= (numDigits == 0);
+            } else if (isExtensionStart(rawNumber, i) && numDigits > 0) {
+                break;
+            } else if (isAsciiLetter(c)) {
+                if (numDigits == digits.length) {
+                    return INVALID;
+                }
+                digits[numDigits++] = KEYPAD.charAt(Character.toUpperCase(c) - 'A');
+            }
+        }
+
+        int start = 0;
+        boolean international = plus;
+        if (!international && startsWith(digits, numDigits, "00")) {
+            international = true;
+            start = 2;
+        } else if (!international && defaultCountryCode == 1 && startsWith(digits, numDigits, "011")) {
+            international = true;
+            start = 3;
+        }
+
+        long value = 0;
+        int canonicalDigits = 0;
+        if (!international) {
+            if (defaultCountryCode == 1) {
+                // NANP: 10 digit national number, optionally written with the leading 1
+                if (numDigits == 11 && digits[0] == '1') {
+                    start = 1;
+                } else if (numDigits != 10) {
+                    return pack(digits, 0, numDigits, 0, 0);
+                }
+            } else if (numDigits > 0 && digits[0] == '0') {
+                start = 1;
+            }
+            for (int i = 0; i < defaultCountryCodeDigits.length(); i++) {
+                value = value * 10 + (defaultCountryCodeDigits.charAt(i) - '0');
+            }
+            canonicalDigits = defaultCountryCodeDigits.length();
+        }
+        return pack(digits, start, numDigits, value, canonicalDigits);
+    }
+
+    private static long pack(char[] digits, int start, int end, long value, int numDigits) {
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (digits[i] - '0');
+        }
+        numDigits += end - start;
+        if (numDigits < MIN_DIGITS || numDigits > MAX_DIGITS) {
+            return INVALID;
+        }
+        // the low 4 bits keep the digit count, so 0412... and 412... stay different
+        return (value << 4) | numDigits;
+    }
+
+    private static boolean startsWith(char[] digits, int numDigits, String prefix) {
+        if (numDigits < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (digits[i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isExtensionStart(String rawNumber, int index) {
+        char c = rawNumber.charAt(index);
+        return c == 'x' || c == 'X' || c == '#' || c == ';' || c == ','
+                || rawNumber.regionMatches(true, index, "ext", 0, 3);
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
@@ -0,0 +1,46 @@
+package com.google.plus.samples.quickstart;
+
+/**
+ * Output formats for the deduped contacts report
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public enum ReportFormat {
+    HTML("html", "text/html"),
+    CSV("csv", "text/csv"),
+    /** newline-delimited JSON, one record per line */
+    JSON("json", "application/x-ndjson");
+
+    private final String extension;
+    private final String contentType;
+
+    ReportFormat(String inExtension, String inContentType) {
+        extension = inExtension;
+        contentType = inContentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return format matching the name (case-insensitive), or HTML if the name is missing
+     * @throws IllegalArgumentException if the name doesn't match any format
+     */
+    public static ReportFormat fromString(String name) {
+        if (name == null || name.length() == 0) {
+            return HTML;
+        }
+        for (ReportFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name) || format.extension.equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown report format: " + name);
+    }
+}
@@ -0,0 +1,88 @@
+package com.google.plus.samples.quickstart;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads request bodies in bulk, up to a maximum size and within a deadline.
+ *
+ * Bodies declared (Content-Length) or found to be larger than the maximum are refused without reading
+ * them into memory, and the deadline is checked between reads, so a client trickling a body in can only
+ * hold a worker thread for the deadline plus one read - the connector's max idle time bounds how long
+ * a single read can block.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class RequestBodyReader {
+    private static final int BUFFER_SIZE = 4 * 1024;
+
+    private final int maxBytes;
+    private final long timeoutMillis;
+
+    /**
+     * @param inMaxBytes largest body accepted
+     * @param inTimeoutMillis how long reading a whole body may take
+     */
+    public RequestBodyReader(int inMaxBytes, long inTimeoutMillis) {
+        maxBytes = inMaxBytes;
+        timeoutMillis = inTimeoutMillis;
+    }
+
+    /**
+     * @param contentLength declared length of the body, or -1 if unknown
+     * @return the whole body decoded as UTF-8
+     * @throws TooLargeException if the body is larger than the maximum
+     * @throws TimeoutException if reading it took longer than the deadline
+     */
+    public String readString(InputStream input, int contentLength) throws IOException {
+        return new String(readBytes(input, contentLength), "UTF-8");
+    }
+
+    public byte[] readBytes(InputStream input, int contentLength) throws IOException {
+        if (contentLength > maxBytes) {
+            throw new TooLargeException(contentLength, maxBytes);
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        ByteArrayOutputStream body = new ByteArrayOutputStream(contentLength >= 0 ? contentLength : BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            if (body.size() + read > maxBytes) {
+                throw new TooLargeException(body.size() + read, maxBytes);
+            }
+            body.write(buffer, 0, read);
+            if (System.currentTimeMillis() > deadline) {
+                throw new TimeoutException(timeoutMillis);
+            }
+        }
+        return body.toByteArray();
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Body is larger than the maximum
+     */
+    public static class TooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public TooLargeException(long size, int maxBytes) {
+            super("Request body of " + size + " bytes or more is larger than " + maxBytes + " bytes");
+        }
+    }
+
+    /**
+     * Body took longer than the deadline to arrive
+     */
+    public static class TimeoutException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public TimeoutException(long timeoutMillis) {
+            super("Request body took longer than " + timeoutMillis + "ms to read");
+        }
+    }
+}
@@ -20,22 +20,17 @@ import com.google.api.client.auth.oauth2.TokenResponseException;
 import com.google.api.client.googleapis.auth.oauth2.*;
 import com.google.api.client.http.GenericUrl;
 import com.google.api.client.http.HttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.jackson.JacksonFactory;
-import com.google.gdata.client.Query;
 import com.google.gdata.client.contacts.ContactsService;
-import com.google.gdata.data.contacts.ContactEntry;
 import com.google.gdata.data.contacts.ContactFeed;
 import com.google.gdata.util.ServiceException;
 import com.google.gson.Gson;
-import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
+import org.mortbay.jetty.Connector;
 import org.mortbay.jetty.Server;
 import org.mortbay.jetty.servlet.ServletHandler;
 import org.mortbay.jetty.servlet.SessionHandler;
-import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -46,6 +41,7 @@ import java.math.BigInteger;
 import java.net.URL;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Simple server to demonstrate how to use Google+ Sign-In and make a request
@@ -57,9 +53,11 @@ import java.util.*;
 public class Signin {
     private static final Logger LOGGER = Logger.getLogger(Signin.class);
     /*
-     * Default HTTP transport to use to make HTTP requests.
+     * HTTP transport for everything the server asks Google (token exchange, refresh and revoke, contacts feed pages):
+     * one pool of keep-alive connections shared by all the sessions, -Ddeduper.maxConnections=... of them.
      */
-    private static final HttpTransport TRANSPORT = new NetHttpTransport();
+    private static final HttpTransport TRANSPORT = HttpContactFeedClient.newPooledTransport(
+            Integer.getInteger("deduper.maxConnections", 200));
 
     /*
      * Default JSON factory to use to deserialize JSON.
@@ -100,6 +98,50 @@ public class Signin {
      */
     private static final String APPLICATION_NAME = "Contacts Deduper";
 
+    /*
+     * Where authorization codes are exchanged and access tokens refreshed, -Ddeduper.tokenServerUrl=... to point it
+     * at a stand-in server.
+     */
+    private static final String TOKEN_SERVER_URL =
+            System.getProperty("deduper.tokenServerUrl", GoogleOAuthConstants.TOKEN_SERVER_URL);
+
+    /*
+     * Background dedupe jobs, -Ddeduper.maxRunningJobs sets how many run at once.
+     */
+    private static final DedupeJobManager JOBS = new DedupeJobManager(
+            Integer.getInteger("deduper.maxRunningJobs", 4), 30 * 60 * 1000);
+
+    /*
+     * Reads POST bodies for all the servlets: an authorization code is a few hundred bytes,
+     * anything much bigger or slower than that isn't one.
+     */
+    private static final RequestBodyReader BODY_READER = new RequestBodyReader(
+            Integer.getInteger("deduper.maxRequestBytes", 16 * 1024),
+            Long.getLong("deduper.requestBodyTimeoutMillis", 10 * 1000));
+
+    /*
+     * How long a connection may sit idle (ie in the middle of a request body) before Jetty closes it.
+     */
+    private static final int MAX_IDLE_MILLIS = Integer.getInteger("deduper.maxIdleMillis", 30 * 1000);
+
+    /*
+     * Lets /people?writeBack=apply update and delete contacts, -Ddeduper.writeBack=true; it asks for the read-write
+     * contacts scope at sign-in instead of the read-only one.
+     */
+    private static final boolean WRITE_BACK = Boolean.getBoolean("deduper.writeBack");
+
+    /*
+     * Credentials and contacts services of connected sessions, kept fresh in the background.
+     */
+    private static final CredentialCache CREDENTIALS =
+            new CredentialCache(TRANSPORT, JSON_FACTORY, CLIENT_ID, CLIENT_SECRET, TOKEN_SERVER_URL,
+                    "Contacts-Lister");
+
+    /*
+     * Each account's dedupe index between runs, for as long as a session that used it lasts.
+     */
+    private static final DedupeIndexCache DEDUPE_INDEXES = new DedupeIndexCache();
+
     /**
      * Register all endpoints that we'll handle in our server.
      *
@@ -113,26 +155,60 @@ public class Signin {
         loadSpringContext();
 
         Server server = new Server(4567);
+        if (VirtualThreads.isEnabled()) {
+            // requests mostly wait on Google (token exchange, revoke), so they get a virtual thread each
+            server.setThreadPool(new VirtualThreadPool("deduper-request-"));
+            LOGGER.info("Handling requests on virtual threads");
+        }
+        for (Connector connector : server.getConnectors()) {
+            connector.setMaxIdleTime(MAX_IDLE_MILLIS);
+        }
         ServletHandler servletHandler = new ServletHandler();
         SessionHandler sessionHandler = new SessionHandler();
         sessionHandler.setHandler(servletHandler);
+        sessionHandler.getSessionManager().addEventListener(CREDENTIALS);
+        sessionHandler.getSessionManager().addEventListener(DEDUPE_INDEXES);
         server.setHandler(sessionHandler);
         servletHandler.addServletWithMapping(ConnectServlet.class, "/connect");
         servletHandler.addServletWithMapping(DisconnectServlet.class, "/disconnect");
         servletHandler.addServletWithMapping(PeopleServlet.class, "/people");
+        servletHandler.addServletWithMapping(JobServlet.class, "/jobs/*");
+        servletHandler.addServletWithMapping(MetricsServlet.class, "/metrics");
         servletHandler.addServletWithMapping(MainServlet.class, "/");
         server.start();
         server.join();
     }
 
     protected static void loadSpringContext() {
-        new ClassPathXmlApplicationContext("ignore-list.xml");
+        GoogleContact.loadIgnoreList();
     }
 
     /**
      * Initialize a session for the current user, and render index.html.
      */
     public static class MainServlet extends HttpServlet {
+        // how often to look for changes to index.html, -Ddeduper.templateCheckMillis=-1 to never reload it
+        private static final long TEMPLATE_CHECK_MILLIS = Long.getLong("deduper.templateCheckMillis", 1000);
+        private static final PageTemplate INDEX_PAGE = new PageTemplate(new File("index.html"),
+                indexPageValues(), "STATE", TEMPLATE_CHECK_MILLIS);
+
+        private static Map<String, String> indexPageValues() {
+            Map<String, String> values = new HashMap<String, String>();
+            values.put("CLIENT_ID", CLIENT_ID);
+            values.put("APPLICATION_NAME", APPLICATION_NAME);
+            values.put("SCOPE", WRITE_BACK ? "https://www.google.com/m8/feeds"
+                    : "https://www.googleapis.com/auth/contacts.readonly");
+            return values;
+        }
+
+        @Override
+        public void init() throws ServletException {
+            try {
+                INDEX_PAGE.get();
+            } catch (IOException e) {
+                LOGGER.warn("Can't load index.html yet", e);
+            }
+        }
 
         @Override
         protected void doGet(HttpServletRequest request, HttpServletResponse response)
@@ -143,27 +219,42 @@ public class Signin {
                 return;
             }
 
-            response.setContentType("text/html");
             try {
-                // Create a state token to prevent request forgery.
+                // Create a state token to prevent request forgery, or reuse the one the session already has.
                 // Store it in the session for later validation.
-                String state = new BigInteger(130, new SecureRandom()).toString(32);
-                request.getSession().setAttribute("state", state);
-                // Fancy way to read index.html into memory, and set the client ID
-                // and state values in the HTML before serving it.
-                response.getWriter().print(new Scanner(new File("index.html"), "UTF-8")
-                //response.getWriter().print(new Scanner(new File("deduper.html"), "UTF-8")
-                        .useDelimiter("\\A").next()
-                        .replaceAll("[{]{2}\\s*CLIENT_ID\\s*[}]{2}", CLIENT_ID)
-                        .replaceAll("[{]{2}\\s*STATE\\s*[}]{2}", state)
-                        .replaceAll("[{]{2}\\s*APPLICATION_NAME\\s*[}]{2}",
-                                APPLICATION_NAME));
+                String state = (String) request.getSession().getAttribute("state");
+                if (state == null) {
+                    state = new BigInteger(130, new SecureRandom()).toString(32);
+                    request.getSession().setAttribute("state", state);
+                }
+                // index.html with the client ID and application name already filled in, just add the state
+                PageTemplate.Page page = INDEX_PAGE.get();
+                String etag = page.getETag(state);
+                response.setHeader("ETag", etag);
+                response.setHeader("Cache-Control", "private, no-cache");
+                response.setHeader("Vary", "Accept-Encoding");
+                if (etag.equals(request.getHeader("If-None-Match"))) {
+                    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
+                response.setContentType("text/html; charset=UTF-8");
                 response.setStatus(HttpServletResponse.SC_OK);
+                String acceptEncoding = request.getHeader("Accept-Encoding");
+                if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    response.setHeader("Content-Encoding", "gzip");
+                    GZIPOutputStream gzip = new GZIPOutputStream(response.getOutputStream(), 8 * 1024);
+                    page.write(gzip, state);
+                    gzip.finish();
+                } else {
+                    response.setContentLength(page.getLength(state));
+                    page.write(response.getOutputStream(), state);
+                }
             } catch (FileNotFoundException e) {
                 // When running the quickstart, there was some path issue in finding
                 // index.html.  Double check the quickstart guide.
                 e.printStackTrace();
                 response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                response.setContentType("text/plain");
                 response.getWriter().print(e.toString());
             }
         }
@@ -200,15 +291,25 @@ public class Signin {
             // implement this best practice.
             //request.getSession().removeAttribute("state");
 
-            ByteArrayOutputStream resultStream = new ByteArrayOutputStream();
-            getContent(request.getInputStream(), resultStream);
-            String code = new String(resultStream.toByteArray(), "UTF-8");
+            String code;
+            try {
+                code = BODY_READER.readString(request.getInputStream(), request.getContentLength());
+            } catch (RequestBodyReader.TooLargeException e) {
+                response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                response.getWriter().print(GSON.toJson("Authorization code is too large."));
+                return;
+            } catch (RequestBodyReader.TimeoutException e) {
+                response.setStatus(HttpServletResponse.SC_REQUEST_TIMEOUT);
+                response.getWriter().print(GSON.toJson("Timed out reading the authorization code."));
+                return;
+            }
 
             try {
                 // Upgrade the authorization code into an access and refresh token.
                 GoogleTokenResponse tokenResponse =
                         new GoogleAuthorizationCodeTokenRequest(TRANSPORT, JSON_FACTORY,
-                                CLIENT_ID, CLIENT_SECRET, code, "postmessage").execute();
+                                CLIENT_ID, CLIENT_SECRET, code, "postmessage")
+                                .setTokenServerUrl(new GenericUrl(TOKEN_SERVER_URL)).execute();
 
                 // Store the token in the session for later use.
                 request.getSession().setAttribute("token", tokenResponse.toString());
@@ -223,24 +324,6 @@ public class Signin {
                         e.getMessage()));
             }
         }
-
-        /*
-         * Read the content of an InputStream.
-         *
-         * @param inputStream the InputStream to be read.
-         * @return the content of the InputStream as a ByteArrayOutputStream.
-         * @throws IOException
-         */
-        static void getContent(InputStream inputStream, ByteArrayOutputStream outputStream)
-                throws IOException {
-            // Read the response into a buffered stream
-            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-            int readChar;
-            while ((readChar = reader.read()) != -1) {
-                outputStream.write(readChar);
-            }
-            reader.close();
-        }
     }
 
     /**
@@ -260,13 +343,7 @@ public class Signin {
                 return;
             }
             try {
-                // Build credential from stored token data.
-                GoogleCredential credential = new GoogleCredential.Builder()
-                        .setJsonFactory(JSON_FACTORY)
-                        .setTransport(TRANSPORT)
-                        .setClientSecrets(CLIENT_ID, CLIENT_SECRET).build()
-                        .setFromTokenResponse(JSON_FACTORY.fromString(
-                                tokenData, GoogleTokenResponse.class));
+                GoogleCredential credential = CREDENTIALS.getCredential(request.getSession());
                 // Execute HTTP GET request to revoke current token.
                 TRANSPORT.createRequestFactory()
                         .buildGetRequest(new GenericUrl(
@@ -275,6 +352,7 @@ public class Signin {
                                         credential.getAccessToken()))).execute();
                 // Reset the user's session.
                 request.getSession().removeAttribute("token");
+                CREDENTIALS.evict(request.getSession());
                 response.setStatus(HttpServletResponse.SC_OK);
                 response.getWriter().print(GSON.toJson("Successfully disconnected."));
             } catch (IOException e) {
@@ -286,10 +364,24 @@ public class Signin {
     }
 
     /**
-     * Get list of people user has shared with this app.
+     * Starts a background job reading and deduping the connected user's contacts, and returns its id right away.
+     * Progress is at /jobs/status?id=..., and the report at /jobs/result?id=... once the job is done.
      */
     public static class PeopleServlet extends HttpServlet {
         private static final int REQUEST_WINDOW = 5000;
+        private static final int MAX_CONCURRENT_PAGES = 4;
+        // keep contacts on disk between runs and only read what changed, -Ddeduper.contactCache=false turns it off
+        private static final boolean USE_CONTACT_CACHE =
+                Boolean.parseBoolean(System.getProperty("deduper.contactCache", "true"));
+        // threads to dedupe one address book on when it's read without the cache, -Ddeduper.dedupeParallelism=...
+        private static final int DEDUPE_PARALLELISM = Integer.getInteger("deduper.dedupeParallelism", 1);
+        // -Ddeduper.feedUrl=... reads the contacts from somewhere else, ie a stand-in server for load testing
+        private static final String FEED_URL =
+                System.getProperty("deduper.feedUrl", "https://www.google.com/m8/feeds/contacts/default/full");
+        private static final int WRITE_BACK_BATCH_SIZE = ContactWriteBack.MAX_BATCH_SIZE;
+        private static final int WRITE_BACK_CONCURRENT_BATCHES = 4;
+        private static final int WRITE_BACK_ATTEMPTS = 3;
+        private static final long WRITE_BACK_BACKOFF_MILLIS = 1000;
 
         @Override
         protected void doGet(HttpServletRequest request, HttpServletResponse response)
@@ -303,248 +395,308 @@ public class Signin {
                 response.getWriter().print(GSON.toJson("Current user not connected."));
                 return;
             }
+            final ReportFormat format;
             try {
-                // Build credential from stored token data.
-                GoogleCredential credential = new GoogleCredential.Builder()
-                        .setJsonFactory(JSON_FACTORY)
-                        .setTransport(TRANSPORT)
-                        .setClientSecrets(CLIENT_ID, CLIENT_SECRET).build()
-                        .setFromTokenResponse(JSON_FACTORY.fromString(
-                                tokenData, GoogleTokenResponse.class));
-
-                printAllContacts(credential, response);
-            } catch (Exception e) {
+                format = ReportFormat.fromString(request.getParameter("format"));
+            } catch (IllegalArgumentException e) {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                response.getWriter().print(GSON.toJson(e.getMessage()));
+                return;
+            }
+            // writeBack=dryrun reports what writing the result back would do, writeBack=apply does it
+            final String writeBack = request.getParameter("writeBack");
+            if (writeBack != null && !"dryrun".equals(writeBack) && !("apply".equals(writeBack) && WRITE_BACK)) {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                response.getWriter().print(GSON.toJson("apply".equals(writeBack)
+                        ? "Write-back is off, start the server with -Ddeduper.writeBack=true."
+                        : "Unknown writeBack: " + writeBack));
+                return;
+            }
+            final ContactsService contactsService;
+            final GoogleCredential credential;
+            try {
+                contactsService = CREDENTIALS.getContactsService(request.getSession());
+                credential = CREDENTIALS.getCredential(request.getSession());
+            } catch (IOException e) {
                 response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-                response.getWriter().print(GSON.toJson("Failed to read data from Google. " + e.getMessage()));
-                e.printStackTrace();
+                response.getWriter().print(GSON.toJson("Failed to refresh the access token. " + e.getMessage()));
+                return;
             }
+            // the job only keeps the session id, the session may be gone before the job is done
+            final String sessionId = request.getSession().getId();
+            DedupeJob job = JOBS.submit(sessionId, new DedupeJobManager.Task() {
+                public DedupeResult run(DedupeJob job) throws Exception {
+                    DedupeResult result = dedupeAllContacts(credential, sessionId, job);
+                    if (writeBack != null) {
+                        job.wroteBack(writeBack(contactsService, result, "dryrun".equals(writeBack)));
+                    }
+                    return result;
+                }
+            });
+            Map<String, Object> body = job.getProgress();
+            body.put("statusUrl", "jobs/status?id=" + job.getId());
+            body.put("resultUrl", "jobs/result?id=" + job.getId() + "&format=" + format.getExtension());
+            response.setStatus(HttpServletResponse.SC_ACCEPTED);
+            response.getWriter().print(GSON.toJson(body));
         }
 
         /**
-         * This function gets the Google credential and reaches out to Google to download all the contacts for the
+         * Updates the merged contacts in the address book and deletes the ones merged into them,
+         * or only counts what that would take for a dry run
+         */
+        private static ContactWriteBack.Result writeBack(ContactsService contactsService, DedupeResult result,
+                                                         boolean dryRun)
+                throws IOException, InterruptedException {
+            ContactBatchClient client = new GDataContactBatchClient(contactsService, new URL(FEED_URL + "/batch"));
+            return new ContactWriteBack(client, WRITE_BACK_BATCH_SIZE, WRITE_BACK_CONCURRENT_BATCHES,
+                    WRITE_BACK_ATTEMPTS, WRITE_BACK_BACKOFF_MILLIS, dryRun).apply(result.getDedupedContacts());
+        }
+
+        /**
+         * This function takes the session's Google credential and reaches out to Google to download all the contacts for the
          * specified person.
-         * It then proceeds to dedupe the contacts - builds a few mapping tables
-         * 1. fullNameToPerson - table of contact name to all of the contact emails
-         * 2. emailToPerson - reverse map, of unique emails to Google Contacts
-         * 3. noNameSetOfEmails - emails that dont' have names associated with them.
-         *
-         * As it reads the incoming contacts, it tries to see if a contact contains an email that's already been seen and merges
-         * the incoming contact to an existing one in that case
-         * If the contact has same (lowercase) name as existing contact, merges all emails to existing contact
+         * It then proceeds to dedupe the contacts with a {@link ContactDeduper} (or, with the contacts cache on,
+         * by updating the account's {@link IncrementalDeduper} with what changed): every contact that shares a
+         * (lowercase) name, an email or a phone number with another one ends up in the same cluster, no matter in which order they
+         * were read, and each cluster is merged into the first contact read.
          * (as a result, it's possible that we may have all lowercase full name if that's found first, can obviously
          * clean up and Camel Case names before sending out invites)
-         * Cleans up the "orphaned no-name emails" if it encounters an email w/out an associated name
-         * that's already been seen in some other known contact
+         * The deduped clusters are then split into named contacts, emails without names and names without emails,
+         * see {@link DedupeResult}.
          *
-         * @param credential Google credential
-         * @param response  servlet response
+         * @param credential the user's Google credential
+         * @param sessionId user's session, the account's dedupe index is kept for as long as it lasts
+         * @param job       job to report progress to
          * @throws ServiceException
          * @throws IOException
          */
-
-        public static void printAllContacts(GoogleCredential credential, HttpServletResponse response)
+        public static DedupeResult dedupeAllContacts(GoogleCredential credential, String sessionId,
+                                                     final DedupeJob job)
                 throws ServiceException, IOException {
-            ContactsService contactsService = new ContactsService("Contacts-Lister");
-            if (credential != null && (credential.getExpiresInSeconds() == null || credential.getExpiresInSeconds() < 5)) {
-                credential.refreshToken();
-            }
-
-            contactsService.setOAuth2Credentials(credential);
-
-            // Request the feed
-            URL feedUrl = new URL("https://www.google.com/m8/feeds/contacts/default/full");
-            Query query = new Query(feedUrl);
-            query.setMaxResults(REQUEST_WINDOW);
-            int totalContactsRead = 0;
-            Map<String, GoogleContact> emailToPerson = new HashMap<String, GoogleContact>();
-            Map<String, GoogleContact> fullNameToPerson = new HashMap<String, GoogleContact>();
-            Map<String, GoogleContact> phoneToPerson = new HashMap<String, GoogleContact>();
-            Set<String> noNameSetOfEmails = new HashSet<String>();
-            String ownerName = "[contacts owner]";
-
+            // Request the feed, several pages at a time
+            final ContactFeedClient httpClient = new HttpContactFeedClient(TRANSPORT, credential, FEED_URL);
+            ContactFeedClient feedClient = new ContactFeedClient() {
+                public ContactFeed fetchPage(int startIndex, int maxResults, long updatedMin)
+                        throws IOException, ServiceException {
+                    long start = System.nanoTime();
+                    ContactFeed page;
+                    try {
+                        page = httpClient.fetchPage(startIndex, maxResults, updatedMin);
+                    } catch (IOException e) {
+                        DedupeMetrics.FEED_PAGE_ERRORS.inc();
+                        throw e;
+                    } catch (ServiceException e) {
+                        DedupeMetrics.FEED_PAGE_ERRORS.inc();
+                        throw e;
+                    }
+                    DedupeMetrics.FEED_PAGE_FETCH.observeSince(start);
+                    job.pageFetched(page.getEntries().size());
+                    return page;
+                }
+            };
+            List<GoogleContact> deduped;
+            int totalContactsRead;
+            int uniqueEmails;
+            int uniquePhones;
+            String ownerName;
+            // this run's merges
+            DedupeSession dedupeSession = job.getDedupeSession();
             LOGGER.info("Connecting to Google to read contacts list, this may take a while");
-            while (true) {
-                ContactFeed resultFeed = contactsService.getFeed(query, ContactFeed.class);
-                int numRead = resultFeed.getEntries().size();
-                if (numRead == 0) {
-                    System.out.println("reached end of feed");
-                    break;
+            if (USE_CONTACT_CACHE) {
+                // the account is the feed id, which takes a one-entry request to find out
+                String account = feedClient.fetchPage(1, 1, 0).getId();
+                ContactCache cache = new ContactCache(ContactCache.getDefaultCacheDir(), account);
+                synchronized (ContactCache.lockFor(account)) {
+                    IncrementalDeduper deduper = syncDedupeIndex(feedClient, cache, sessionId);
+                    ownerName = cache.getOwnerName();
+                    totalContactsRead = cache.getRecords().size();
+                    job.contactsRead(totalContactsRead);
+                    // only the dedupe itself, the feed and the cache sync have timings of their own
+                    long start = System.nanoTime();
+                    deduped = deduper.getResult(dedupeSession);
+                    DedupeMetrics.DEDUPE.observeSince(start);
+                    uniqueEmails = deduper.getUniqueEmailCount();
+                    uniquePhones = deduper.getUniquePhoneCount();
                 }
-                // Print the results
-                ownerName = resultFeed.getTitle().getPlainText();
-                System.out.println("reading the feed of: " + ownerName);
-                System.out.println();
-                for (ContactEntry entry : resultFeed.getEntries()) {
-                    GoogleContact contact = new GoogleContact(entry);
-                    totalContactsRead++;
-                    LOGGER.trace(totalContactsRead + ": " + contact.toString());
-                    if (!(contact.hadIgnoredEmails() && contact.getEmails().size() == 0)) {
-                        // handle name -> contact mapping
-                        if ((contact.getFullName() != null)) {
-                            if (fullNameToPerson.containsKey(contact.getFullName().toLowerCase())) {
-                                // merge existing to incoming
-                                fullNameToPerson.get(contact.getFullName().toLowerCase()).merge(contact);
-                            } else {
-                                // add new one
-                                fullNameToPerson.put(contact.getFullName().toLowerCase(), contact);
-
-                            }
-                            // if we found someone with a name, remove any of those emails, that may have been w/out a name
-                            // that are also owned by this named person
-                            CollectionUtils.subtract(noNameSetOfEmails, contact.getEmails());
-                        } else {
-                            // if there's no name, add all the emails to non-name set
-                            noNameSetOfEmails.addAll(contact.getEmails());
+            } else {
+                Deduper deduper = (DEDUPE_PARALLELISM > 1)
+                        ? new ParallelContactDeduper(DEDUPE_PARALLELISM) : new ContactDeduper();
+                ContactSource source = new GoogleFeedContactSource(
+                        new ContactFeedPipeline(feedClient, REQUEST_WINDOW, MAX_CONCURRENT_PAGES),
+                        deduper.getStore());
+                totalContactsRead = 0;
+                try {
+                    ownerName = source.getOwnerName();
+                    LOGGER.info("reading the feed of: " + ownerName);
+                    GoogleContact contact;
+                    while ((contact = source.next()) != null) {
+                        totalContactsRead++;
+                        job.contactsRead(1);
+                        if (LOGGER.isTraceEnabled()) {
+                            LOGGER.trace(totalContactsRead + ": " + contact);
                         }
-
-                        boolean merged = updateEmailToContactsMap(contact, emailToPerson);
-                        //merged |= updatePhoneToContactsMap(contact, phoneToPerson);
-                        if (merged) {
-                            noNameSetOfEmails.removeAll(contact.getEmails());
-                            LOGGER.debug("Found a merge for " + contact.getEmails().toArray()[0] + ", removing from noName set");
+                        if (!(contact.hadIgnoredEmails() && contact.getEmails().size() == 0)) {
+                            deduper.add(contact);
                         }
                     }
+                    LOGGER.info("reached end of contacts");
+                } finally {
+                    source.close();
                 }
-                query.setStartIndex(query.getStartIndex() + REQUEST_WINDOW);
-                LOGGER.debug("reset query startIndex to " + query.getStartIndex());
+                long start = System.nanoTime();
+                deduped = deduper.dedupe(dedupeSession);
+                DedupeMetrics.DEDUPE.observeSince(start);
+                uniqueEmails = deduper.getUniqueEmailCount();
+                uniquePhones = deduper.getUniquePhoneCount();
             }
-            String[] justNamesArr = pruneNoEmailContacts(fullNameToPerson);
-            printByName(fullNameToPerson);
-            printStringArray(noNameSetOfEmails.toArray(new String[noNameSetOfEmails.size()]), "no-name emails");
-            printStringArray(justNamesArr, "just names, no emails");
-
-            System.out.println("Read total of contacts: " + totalContactsRead);
-            System.out.println("uniqueEmails total: " + emailToPerson.size());
-            System.out.println("emails with no names: " + noNameSetOfEmails.size());
-            System.out.println("just names w/out emails: " + justNamesArr.length);
-            System.out.println("Contacts with full name and emails: " + fullNameToPerson.size());
-            System.out.println("Merged " + GoogleContact.getMergedNames().length + " contacts: "
-                    + Arrays.toString(GoogleContact.getMergedNames()));
-
-            response.getWriter().print(GSON.toJson("Read total of " + totalContactsRead + " contacts\n"));
-            File outfile = new File("deduped-output.html");
-            response.getWriter().print(GSON.toJson("Toli sucks at Web output. Please open the generated file in a browser instead: " + outfile.getAbsolutePath()));
-            constructOutputHtml(outfile, ownerName, totalContactsRead, fullNameToPerson, emailToPerson, noNameSetOfEmails, justNamesArr);
-            response.setStatus(HttpServletResponse.SC_OK);
+
+            DedupeResult result = new DedupeResult(ownerName, totalContactsRead, uniqueEmails, uniquePhones, deduped,
+                    dedupeSession.getMergedNames());
+            DedupeMetrics.CONTACTS_READ.add(totalContactsRead);
+            DedupeMetrics.MERGES.add(dedupeSession.getNumMerges());
+            if (LOGGER.isDebugEnabled()) {
+                logByName(result);
+                logStringArray(result.getSortedNoNameEmails(), "no-name emails");
+                logStringArray(result.getJustNames(), "just names, no emails");
+                LOGGER.debug("Merged " + result.getMergedNames().length + " contacts: "
+                        + Arrays.toString(result.getMergedNames()));
+                LOGGER.debug("Merges: " + dedupeSession.getMerges());
+                LOGGER.debug("Ignore list hits: " + GoogleContact.getIgnoreList().getHitCounts());
+            }
+            LOGGER.info("Read total of contacts: " + totalContactsRead + ", unique emails: " + uniqueEmails
+                    + ", unique phone numbers: " + uniquePhones + ", emails with no names: "
+                    + result.getNumNoNameEmails() + ", just names w/out emails: " + result.getJustNames().length
+                    + ", contacts with full name and emails: " + result.getNumContacts() + ", merged: "
+                    + result.getMergedNames().length);
+            return result;
         }
 
         /**
-         * constructs the HTML output for deduped results
-         * I such at front-end, so this is a nice throwback to 1995
+         * Brings the account's on-disk contacts cache up to date - only what changed since the last run
+         * is read from the feed - and applies the changes to the account's dedupe index, so
+         * only the clusters the changed contacts belong to get recomputed.
+         * The index is rebuilt from the whole cache after a full sync, or if the cache was synced
+         * without it in the meantime (ie after the index was dropped with the sessions that used it).
+         * Callers hold the account's cache lock.
          */
-        private static void constructOutputHtml(File outfile, String contactsOwner, int totalContactsRead,
-                                                Map<String, GoogleContact> fullNameToPerson,
-                                                Map<String, GoogleContact> emailToPerson,
-                                                Set<String> noNameSetOfEmails, String[] justNamesArr) {
-
-            try {
-                FileUtils.write(outfile, ""); // erase the file if it's already present
-                FileUtils.write(outfile, "<html>\n<body>\n", true);
-                FileUtils.write(outfile, "<em>[" + contactsOwner + "]: total # of contacts read: " + totalContactsRead + "</em><br>\n", true);
-                FileUtils.write(outfile, "<em>total unique emails: " + emailToPerson.size() + "</em><br/>\n", true);
-                FileUtils.write(outfile, "<em>Emails with no names: " + noNameSetOfEmails.size() + "</em><br>\n", true);
-                FileUtils.write(outfile, "<em>Just names with no emails: " + justNamesArr.length + "</em><br>\n", true);
-
-                FileUtils.write(outfile, "<h3>All Deduped Contacts: " + fullNameToPerson.size() + "</h3><br/>\n", true);
-                FileUtils.write(outfile, "<table border='1'>\n", true);
-                FileUtils.write(outfile, "<th width='15%'>Name</th><th width='15%'>Primary email</th><th>All Emails</th>\n", true);
-                String[] allNames = fullNameToPerson.keySet().toArray(new String[fullNameToPerson.size()]);
-                Arrays.sort(allNames);
-                for (String name : allNames) {
-                    GoogleContact contact = fullNameToPerson.get(name);
-                    FileUtils.write(outfile, "<tr><td>" + contact.getFullName() + "</td><td>" + contact.getPrimaryEmail() + "</td><td>" +
-                            Arrays.toString(contact.getEmails().toArray()) + "</td></tr>\n", true);
+        private static IncrementalDeduper syncDedupeIndex(ContactFeedClient feedClient, ContactCache cache,
+                                                          String sessionId)
+                throws ServiceException, IOException {
+            cache.load();
+            long cachedSync = cache.getLastSync();
+            ContactCache.SyncResult sync = cache.sync(feedClient, REQUEST_WINDOW, MAX_CONCURRENT_PAGES);
+            cache.save();
+            LOGGER.info("contacts cache " + cache.getFile() + ": " + sync);
+
+            IncrementalDeduper deduper = DEDUPE_INDEXES.get(cache.getAccount());
+            if (deduper == null || sync.isFullSync() || deduper.getSyncedTo() != cachedSync) {
+                deduper = new IncrementalDeduper();
+                for (ContactRecord record : cache.getRecords()) {
+                    deduper.put(record.toContact(deduper.getStore()));
                 }
-                FileUtils.write(outfile, "</table>\n", true);
-
-
-                FileUtils.write(outfile, "<p/>", true);
-                FileUtils.write(outfile, "<em>total unique emails: " + emailToPerson.size() + "</em><br>\n", true);
-                FileUtils.write(outfile, "<h3>Emails with no names: " + noNameSetOfEmails.size() + "</h3><br>\n", true);
-                String[] sortedNoNameEmails = noNameSetOfEmails.toArray(new String[noNameSetOfEmails.size()]);
-                Arrays.sort(sortedNoNameEmails);
-                for (String justEmail : sortedNoNameEmails) {
-                    FileUtils.write(outfile, justEmail + "<br/>\n", true);
+            } else {
+                for (String id : sync.getDeletedIds()) {
+                    deduper.remove(id);
                 }
-                FileUtils.write(outfile, "<p/>\n", true);
-                Arrays.sort(justNamesArr);
-                FileUtils.write(outfile, "<h3>Just names with no emails: " + justNamesArr.length + "</h3><br>\n", true);
-                for (String name : justNamesArr) {
-                    FileUtils.write(outfile, name + "<br/>\n", true);
+                for (ContactRecord record : sync.getChangedRecords()) {
+                    deduper.put(record.toContact(deduper.getStore()));
                 }
-                FileUtils.write(outfile, "<em>Merged " + GoogleContact.getMergedNames().length + " contacts: " +
-                        Arrays.toString(GoogleContact.getMergedNames()) + "<br/>\n", true);
-                FileUtils.write(outfile, "</body></html>\n", true);
-
-            } catch (IOException ex) {
-                System.out.println("Error writing out put file: " + ex);
             }
+            deduper.setSyncedTo(cache.getLastSync());
+            DEDUPE_INDEXES.put(cache.getAccount(), sessionId, deduper);
+            return deduper;
         }
 
-
-        private static String[] pruneNoEmailContacts(Map<String, GoogleContact> fullNameToPerson) {
-            ArrayList<String> justNames = new ArrayList<String>();
-            GoogleContact[] allContacts = fullNameToPerson.values().toArray(new GoogleContact[fullNameToPerson.size()]);
-            for (GoogleContact contact : allContacts) {
-                if (contact.getEmails().size() == 0) {
-                    fullNameToPerson.remove(contact.getFullName().toLowerCase());
-                    justNames.add(contact.getFullName());
-                }
-            }
-            String[] justNamesArr = justNames.toArray(new String[justNames.size()]);
-            Arrays.sort(justNamesArr);
-            return justNamesArr;
-        }
-
-        private static void printStringArray(String[] array, String header) {
-            System.out.println("================ " + header + ": " + array.length + "==================");
-            Arrays.sort(array);
+        private static void logStringArray(String[] array, String header) {
+            LOGGER.debug("================ " + header + ": " + array.length + "==================");
             for (int i = 0; i < array.length; i++) {
-                System.out.println(i + ": " + array[i]);
+                LOGGER.debug(i + ": " + array[i]);
             }
-            System.out.println();
         }
 
         /**
-         * Prints by full name
+         * Logs by full name
          */
-        private static void printByName(Map<String, GoogleContact> fullNameToPerson) {
-            System.out.println("================ by name " + fullNameToPerson.size() + "==================");
-            String[] allNames = fullNameToPerson.keySet().toArray(new String[fullNameToPerson.size()]);
-            Arrays.sort(allNames);
+        private static void logByName(DedupeResult result) {
+            LOGGER.debug("================ by name " + result.getNumContacts() + "==================");
+            String[] allNames = result.getSortedNames();
             for (int i = 0; i < allNames.length; i++) {
-                System.out.println(i + ": " + fullNameToPerson.get(allNames[i]));
+                LOGGER.debug(i + ": " + result.getContact(allNames[i]));
             }
-            System.out.println();
         }
+    }
 
-        /**
-         * add all the unique emails into the map
-         *
-         * @param contact
-         * @param emailToPerson
-         * @return Whether or not existing contact was found and this was merged into that - means you can avoid putting the secondary contact in
-         */
-        private static boolean updateEmailToContactsMap(GoogleContact contact, Map<String, GoogleContact> emailToPerson) {
-            Set<String> allEmails = contact.getEmails();
-            boolean merged = false;
-            for (String oneEmail : allEmails) {
-                if (emailToPerson.containsKey(oneEmail)) {
-                    // merge
-                    GoogleContact existing = emailToPerson.get(oneEmail);
-                    existing.merge(contact);
-                    emailToPerson.put(oneEmail, existing);
-                    merged = true;
-                } else {
-                    emailToPerson.put(oneEmail, contact);
-                }
+    /**
+     * Dedupe job progress and results, for the session that started the job.
+     * /jobs/status?id=... - status and progress counters
+     * /jobs/result?id=...&format=json|csv|html - the finished report, streamed out as it's written (JSON by default)
+     */
+    public static class JobServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response)
+                throws ServletException, IOException {
+            DedupeJob job = JOBS.get(request.getParameter("id"), request.getSession().getId());
+            if (job == null) {
+                response.setContentType("application/json");
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                response.getWriter().print(GSON.toJson("No such job."));
+                return;
+            }
+            if ("/status".equals(request.getPathInfo())) {
+                response.setContentType("application/json");
+                response.setHeader("Cache-Control", "no-cache");
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.getWriter().print(GSON.toJson(job.getProgress()));
+            } else if ("/result".equals(request.getPathInfo())) {
+                writeResult(job, request, response);
+            } else {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
             }
-            return merged;
         }
 
-        private static boolean updatePhoneToContactsMap(GoogleContact inContact, Map<String, GoogleContact> inMap) {
-            // implement me
-            return false;
+        private static void writeResult(DedupeJob job, HttpServletRequest request, HttpServletResponse response)
+                throws IOException {
+            ReportFormat format;
+            try {
+                String formatName = request.getParameter("format");
+                format = (formatName == null) ? ReportFormat.JSON : ReportFormat.fromString(formatName);
+            } catch (IllegalArgumentException e) {
+                response.setContentType("application/json");
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                response.getWriter().print(GSON.toJson(e.getMessage()));
+                return;
+            }
+            if (job.getStatus() != DedupeJob.Status.DONE) {
+                response.setContentType("application/json");
+                response.setStatus(HttpServletResponse.SC_CONFLICT);
+                response.getWriter().print(GSON.toJson(job.getProgress()));
+                return;
+            }
+            // no content length, so the report goes out chunked as it's written
+            response.setContentType(format.getContentType() + "; charset=UTF-8");
+            response.setStatus(HttpServletResponse.SC_OK);
+            long start = System.nanoTime();
+            ContactReportWriter report = ContactReportWriter.create(response.getWriter(), format);
+            try {
+                job.getResult().writeTo(report);
+            } finally {
+                report.close();
+            }
+            DedupeMetrics.REPORT_RENDER.observeSince(start);
+        }
+    }
+
+    /**
+     * Counters and timings of the dedupe phases, in the Prometheus text format - see {@link DedupeMetrics}
+     */
+    public static class MetricsServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response)
+                throws ServletException, IOException {
+            response.setContentType(Metrics.CONTENT_TYPE + "; charset=UTF-8");
+            response.setHeader("Cache-Control", "no-cache");
+            response.setStatus(HttpServletResponse.SC_OK);
+            DedupeMetrics.writeTo(response.getWriter());
         }
     }
 }
@@ -0,0 +1,103 @@
+package com.google.plus.samples.quickstart;
+
+/**
+ * Gives every distinct string a small int id, handed out in order from 0, and keeps one copy of each string.
+ * Lets contacts store their emails and phone numbers as int arrays instead of sets of strings, with the same
+ * email on a thousand contacts held in memory just once.
+ * Open addressing (linear probing) over an int table of ids, like {@link LongIntHashMap}; strings are never
+ * removed. Thread safe.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class StringDictionary {
+    public static final int MISSING = -1;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    // id + 1 of the string hashed to each slot, 0 for a free slot
+    private int[] slots;
+    private String[] strings;
+    private int size;
+    private int resizeAt;
+
+    public StringDictionary() {
+        this(64);
+    }
+
+    public StringDictionary(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max((int) (expectedSize / LOAD_FACTOR), 4) - 1) << 1;
+        slots = new int[capacity];
+        strings = new String[Math.max(expectedSize, 1)];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * @return id of the string, adding it if it's new
+     */
+    public synchronized int intern(String string) {
+        int slot = findSlot(string);
+        if (slots[slot] != 0) {
+            return slots[slot] - 1;
+        }
+        int id = size++;
+        if (id == strings.length) {
+            String[] grown = new String[strings.length << 1];
+            System.arraycopy(strings, 0, grown, 0, id);
+            strings = grown;
+        }
+        strings[id] = string;
+        slots[slot] = id + 1;
+        if (size > resizeAt) {
+            rehash(slots.length << 1);
+        }
+        return id;
+    }
+
+    /**
+     * @return id of the string, or {@link #MISSING} if it was never added
+     */
+    public synchronized int indexOf(String string) {
+        return slots[findSlot(string)] - 1;
+    }
+
+    public synchronized String get(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("No string with id " + id);
+        }
+        return strings[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return copy of the strings by id, for reading many of them from several threads without taking the lock
+     */
+    public synchronized String[] toArray() {
+        String[] copy = new String[size];
+        System.arraycopy(strings, 0, copy, 0, size);
+        return copy;
+    }
+
+    private void rehash(int newCapacity) {
+        slots = new int[newCapacity];
+        resizeAt = (int) (newCapacity * LOAD_FACTOR);
+        for (int id = 0; id < size; id++) {
+            slots[findSlot(strings[id])] = id + 1;
+        }
+    }
+
+    /**
+     * @return slot holding the string's id, or the free slot where it would go
+     */
+    private int findSlot(String string) {
+        int mask = slots.length - 1;
+        int hash = string.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (slots[slot] != 0 && !strings[slots[slot] - 1].equals(string)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,129 @@
+package com.google.plus.samples.quickstart;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams contacts out of a vCard (.vcf) export, one BEGIN:VCARD/END:VCARD block at a time.
+ * Reads FN as the full name, EMAIL (a PREF parameter or TYPE=PREF marks the primary one) and TEL.
+ * Folded lines are unfolded; quoted-printable values (vCard 2.1) aren't decoded.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class VCardContactSource implements ContactSource {
+    private final BufferedReader reader;
+    private final ContactStore store;
+    private String pendingLine;
+
+    public VCardContactSource(Reader inReader) {
+        this(inReader, new ContactStore());
+    }
+
+    /**
+     * @param inStore store to create the contacts in
+     */
+    public VCardContactSource(Reader inReader, ContactStore inStore) {
+        reader = (inReader instanceof BufferedReader) ? (BufferedReader) inReader : new BufferedReader(inReader);
+        store = inStore;
+    }
+
+    public String getOwnerName() {
+        return null;
+    }
+
+    public GoogleContact next() throws IOException {
+        String line;
+        boolean inCard = false;
+        String fullName = null;
+        String primaryEmail = null;
+        List<String> emails = new ArrayList<String>();
+        List<String> phones = new ArrayList<String>();
+        while ((line = readUnfoldedLine()) != null) {
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String nameAndParams = line.substring(0, colon);
+            String value = line.substring(colon + 1).trim();
+            String[] params = nameAndParams.split(";");
+            String name = params[0];
+            // strip the group prefix, ie item1.EMAIL
+            name = name.substring(name.lastIndexOf('.') + 1).toUpperCase();
+
+            if ("BEGIN".equals(name) && "VCARD".equalsIgnoreCase(value)) {
+                inCard = true;
+            } else if (!inCard) {
+                continue;
+            } else if ("END".equals(name) && "VCARD".equalsIgnoreCase(value)) {
+                return new GoogleContact(null, fullName, emails, primaryEmail, phones, store);
+            } else if ("FN".equals(name) && value.length() > 0) {
+                fullName = unescape(value);
+            } else if ("EMAIL".equals(name) && value.length() > 0) {
+                emails.add(value);
+                if (primaryEmail == null && isPreferred(params)) {
+                    primaryEmail = value;
+                }
+            } else if ("TEL".equals(name) && value.length() > 0) {
+                phones.add(value.startsWith("tel:") ? value.substring(4) : value);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isPreferred(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].toUpperCase();
+            if (param.startsWith("PREF") || (param.startsWith("TYPE=") && param.contains("PREF"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads a logical line - physical lines starting with a space or a tab continue the previous one
+     */
+    private String readUnfoldedLine() throws IOException {
+        String line = (pendingLine != null) ? pendingLine : reader.readLine();
+        pendingLine = null;
+        if (line == null) {
+            return null;
+        }
+        StringBuilder unfolded = null;
+        String next;
+        while ((next = reader.readLine()) != null && next.length() > 0
+                && (next.charAt(0) == ' ' || next.charAt(0) == '\t')) {
+            if (unfolded == null) {
+                unfolded = new StringBuilder(line);
+            }
+            unfolded.append(next, 1, next.length());
+        }
+        pendingLine = next;
+        return (unfolded == null) ? line : unfolded.toString();
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char escaped = value.charAt(++i);
+                result.append((escaped == 'n' || escaped == 'N') ? ' ' : escaped);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+}
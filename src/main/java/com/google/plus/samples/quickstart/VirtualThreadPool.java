@@ -0,0 +1,91 @@
+package com.google.plus.samples.quickstart;
+
+import org.mortbay.component.AbstractLifeCycle;
+import org.mortbay.thread.ThreadPool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Jetty thread pool that runs every job (accepting connections, handling a request) on a virtual thread of its own,
+ * so a request blocked on Google holds no platform thread and there's no pool size to run out of.
+ * Needs Java 21 or later, see {@link VirtualThreads}.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
+
+    private final String namePrefix;
+    private final AtomicInteger running = new AtomicInteger();
+    private volatile ExecutorService executor;
+
+    /**
+     * @param inNamePrefix prefix of the thread names, ie "jetty-request-"
+     */
+    public VirtualThreadPool(String inNamePrefix) {
+        namePrefix = inNamePrefix;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        executor = VirtualThreads.newThreadPerTaskExecutor(namePrefix);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        executor.shutdown();
+        if (!executor.awaitTermination(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+
+    public boolean dispatch(final Runnable job) {
+        ExecutorService current = executor;
+        if (current == null) {
+            return false;
+        }
+        try {
+            current.execute(new Runnable() {
+                public void run() {
+                    running.incrementAndGet();
+                    try {
+                        job.run();
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    public void join() throws InterruptedException {
+        while (executor != null && !executor.awaitTermination(1, TimeUnit.SECONDS)) {
+            // keep waiting, like the other pools do until they're stopped
+        }
+    }
+
+    /**
+     * @return jobs running right now
+     */
+    public int getThreads() {
+        return running.get();
+    }
+
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    /**
+     * @return always false, a new virtual thread is always there to be had
+     */
+    public boolean isLowOnThreads() {
+        return false;
+    }
+}
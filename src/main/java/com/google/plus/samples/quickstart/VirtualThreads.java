@@ -0,0 +1,104 @@
+package com.google.plus.samples.quickstart;
+
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads (Java 21 and later) for work that spends its time waiting on the network: requests to Google,
+ * and the server requests making them. They're looked up by reflection, so the code still builds and runs on older
+ * Java, where {@link #isAvailable()} is false and callers keep their platform thread pools.
+ *
+ * -Ddeduper.virtualThreads=true turns them on, see {@link #isEnabled()}. Experimental: Jetty 6 synchronizes a lot,
+ * which pins virtual threads to their carriers on Java 21, and the server hasn't been load tested with them yet.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public final class VirtualThreads {
+    private static final Logger LOGGER = Logger.getLogger(VirtualThreads.class);
+    // Thread.Builder.OfVirtual, null if this JVM doesn't have virtual threads
+    private static final Object BUILDER;
+    private static final Method NAME_METHOD;
+    private static final Method FACTORY_METHOD;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+    private static final boolean ENABLED;
+
+    static {
+        Object builder = null;
+        Method name = null;
+        Method factory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            name = builderClass.getMethod("name", String.class, long.class);
+            factory = builderClass.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (Exception e) {
+            builder = null;
+        }
+        BUILDER = builder;
+        NAME_METHOD = name;
+        FACTORY_METHOD = factory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+        boolean requested = Boolean.getBoolean("deduper.virtualThreads");
+        if (requested && builder == null) {
+            LOGGER.warn("Virtual threads need Java 21 or later, running on platform threads instead");
+        }
+        ENABLED = requested && builder != null;
+        if (ENABLED) {
+            LOGGER.warn("Virtual threads are experimental, Jetty's synchronized code may pin them to carrier threads");
+        }
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if this JVM has virtual threads
+     */
+    public static boolean isAvailable() {
+        return BUILDER != null;
+    }
+
+    /**
+     * @return true if -Ddeduper.virtualThreads=true and this JVM has virtual threads
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * @param namePrefix thread names are the prefix and a counter, ie contact-feed-fetcher-1
+     * @throws UnsupportedOperationException if this JVM doesn't have virtual threads
+     */
+    public static ThreadFactory newThreadFactory(String namePrefix) {
+        if (BUILDER == null) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later");
+        }
+        try {
+            // builders aren't thread safe and keep the counter, so every factory gets its own
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) FACTORY_METHOD.invoke(NAME_METHOD.invoke(builder, namePrefix, 1L));
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to create a virtual thread factory", e);
+        }
+    }
+
+    /**
+     * @return executor that starts a new virtual thread for every task, with no limit on how many run at once
+     * @throws UnsupportedOperationException if this JVM doesn't have virtual threads
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        ThreadFactory factory = newThreadFactory(namePrefix);
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to create a virtual thread executor", e);
+        }
+    }
+}
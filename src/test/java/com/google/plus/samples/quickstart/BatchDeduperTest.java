@@ -0,0 +1,119 @@
+package com.google.plus.samples.quickstart;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class BatchDeduperTest {
+    private File inputDir;
+    private File outputDir;
+
+    @BeforeClass
+    public static void setupOnce() {
+        GoogleContact.loadIgnoreList();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        inputDir = File.createTempFile("batch-in", "");
+        inputDir.delete();
+        inputDir.mkdirs();
+        outputDir = new File(File.createTempFile("batch-out", "").getPath() + ".d");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(inputDir);
+        FileUtils.deleteDirectory(outputDir);
+    }
+
+    @Test
+    /**
+     * Every account is deduped on its own, a broken one doesn't stop the rest
+     */
+    public void testRun() throws Exception {
+        FileUtils.writeStringToFile(new File(inputDir, "vasya.vcf"),
+                "BEGIN:VCARD\r\nFN:Vasya Pupkin\r\nEMAIL:vasya@pupkin.com\r\nEND:VCARD\r\n" +
+                "BEGIN:VCARD\r\nFN:Vasya Pupkin\r\nEMAIL:head@pupkin.com\r\nEND:VCARD\r\n" +
+                "BEGIN:VCARD\r\nFN:Masha Pupkina\r\nEMAIL:vasya@pupkin.com\r\nEND:VCARD\r\n", "UTF-8");
+        FileUtils.writeStringToFile(new File(inputDir, "kolya.csv"),
+                "Name,E-mail 1 - Value\r\nKolya,kolya@pupkin.com\r\n,kolya@pupkin.com\r\nPetya,\r\n", "UTF-8");
+        FileUtils.writeStringToFile(new File(inputDir, "broken.xml"), "<feed", "UTF-8");
+        FileUtils.writeStringToFile(new File(inputDir, "notes.txt"), "not contacts", "UTF-8");
+
+        List<BatchDeduper.AccountSummary> summaries = new BatchDeduper(2, ReportFormat.CSV).run(inputDir, outputDir);
+
+        assertEquals("only contacts files, in name order", 3, summaries.size());
+        assertEquals("broken", summaries.get(0).getAccount());
+        assertNull(summaries.get(0).getResult());
+        assertNotNull(summaries.get(0).getError());
+        assertEquals("kolya", summaries.get(1).getAccount());
+        assertEquals(3, summaries.get(1).getResult().getTotalContactsRead());
+        assertEquals(1, summaries.get(1).getResult().getNumContacts());
+        assertEquals(1, summaries.get(1).getResult().getJustNames().length);
+        assertEquals("vasya", summaries.get(2).getAccount());
+        assertNull(summaries.get(2).getError());
+        assertEquals("all three merged", 1, summaries.get(2).getResult().getNumContacts());
+
+        assertTrue(new File(outputDir, "kolya.csv").isFile());
+        assertTrue(new File(outputDir, "vasya.csv").isFile());
+        List<String> lines = FileUtils.readLines(new File(outputDir, BatchDeduper.SUMMARY_FILE), "UTF-8");
+        assertTrue(lines.get(0).startsWith("account,"));
+        List<String> broken = parseCsv(lines.get(1));
+        assertEquals(lines.get(1), BatchDeduper.SUMMARY_COLUMNS.length, broken.size());
+        assertEquals("broken", broken.get(0));
+        assertEquals("", broken.get(7));
+        assertEquals(String.valueOf(summaries.get(0).getMillis()), broken.get(8));
+        assertTrue("error in the last column", broken.get(9).startsWith(summaries.get(0).getError().split("\n")[0]));
+        String totals = lines.get(lines.size() - 1);
+        assertTrue(totals, totals.startsWith("total,,6,"));
+    }
+
+    /**
+     * Splits one CSV line into its fields, unquoting the quoted ones
+     */
+    private static List<String> parseCsv(String line) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append(c);
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
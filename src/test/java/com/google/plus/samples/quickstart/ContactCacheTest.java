@@ -0,0 +1,191 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.contacts.ContactFeed;
+import com.google.gdata.data.extensions.Deleted;
+import com.google.gdata.data.extensions.Email;
+import com.google.gdata.data.extensions.FullName;
+import com.google.gdata.data.extensions.Name;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class ContactCacheTest {
+    private static final String ACCOUNT = "vasya@pupkin.com";
+    private File cacheDir;
+    private StandInFeed feed;
+
+    @BeforeClass
+    public static void setupOnce() {
+        Signin.loadSpringContext();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDir = File.createTempFile("contacts-cache", "");
+        cacheDir.delete();
+        feed = new StandInFeed();
+        feed.put("1", "Vasya Pupkin", "vasya@pupkin.com");
+        feed.put("2", "Masha Pupkina", "masha@pupkin.com");
+        feed.put("3", "Petya Ivanov", "petya@ivanov.com");
+        feed.advanceClock();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(cacheDir);
+    }
+
+    @Test
+    /**
+     * First sync reads everything, the next one only what changed since - and applies deletions
+     */
+    public void testDeltaSync() throws Exception {
+        ContactCache cache = new ContactCache(cacheDir, ACCOUNT);
+        assertFalse(cache.load());
+        ContactCache.SyncResult result = cache.sync(feed, 2, 2);
+        assertTrue(result.isFullSync());
+        assertEquals(3, result.getEntriesRead());
+        assertEquals(3, result.getAdded());
+        cache.save();
+
+        feed.advanceClock();
+        feed.put("2", "Masha Pupkina", "masha@gmail.com");
+        feed.put("4", "Kolya Sidorov", "kolya@sidorov.com");
+        feed.delete("3");
+
+        cache = new ContactCache(cacheDir, ACCOUNT);
+        assertTrue(cache.load());
+        assertEquals(3, cache.getRecords().size());
+        result = cache.sync(feed, 2, 2);
+        assertFalse(result.isFullSync());
+        assertEquals("only the changes were read", 3, result.getEntriesRead());
+        assertEquals(1, result.getAdded());
+        assertEquals(1, result.getUpdated());
+        assertEquals(1, result.getDeleted());
+        assertTrue(feed.lastUpdatedMin > 0);
+
+        Map<String, String> emails = readEmails(cache.asContactSource());
+        assertEquals(3, emails.size());
+        assertEquals("vasya@pupkin.com", emails.get("Vasya Pupkin"));
+        assertEquals("masha@gmail.com", emails.get("Masha Pupkina"));
+        assertEquals("kolya@sidorov.com", emails.get("Kolya Sidorov"));
+    }
+
+    @Test
+    /**
+     * The cache file round-trips through save/load, and is readable as a plain Atom export
+     */
+    public void testSaveAndLoad() throws Exception {
+        ContactCache cache = new ContactCache(cacheDir, ACCOUNT);
+        cache.sync(feed, 10, 1);
+        cache.save();
+
+        ContactCache loaded = new ContactCache(cacheDir, ACCOUNT);
+        assertTrue(loaded.load());
+        assertEquals(cache.getLastSync(), loaded.getLastSync());
+        assertEquals("vasya pupkin", loaded.getOwnerName());
+        assertEquals(readEmails(cache.asContactSource()), readEmails(loaded.asContactSource()));
+        assertEquals(3, readEmails(ContactSources.open(cache.getFile())).size());
+
+        assertFalse("cache of another account", new ContactCache(cacheDir, "masha@pupkin.com").load());
+    }
+
+    private static Map<String, String> readEmails(ContactSource source) throws Exception {
+        Map<String, String> emails = new LinkedHashMap<String, String>();
+        try {
+            GoogleContact contact;
+            while ((contact = source.next()) != null) {
+                emails.put(contact.getFullName(), contact.getPrimaryEmail());
+            }
+        } finally {
+            source.close();
+        }
+        return emails;
+    }
+
+    /**
+     * Stand-in contacts feed, honouring updated-min and reporting deleted entries
+     */
+    private static class StandInFeed implements ContactFeedClient {
+        private final Map<String, ContactEntry> entries = new LinkedHashMap<String, ContactEntry>();
+        private final Map<String, Long> deleted = new HashMap<String, Long>();
+        private long clock = 1000000;
+        private long lastUpdatedMin;
+
+        private void advanceClock() {
+            clock += 10 * 60 * 1000;
+        }
+
+        private void put(String id, String fullName, String email) {
+            ContactEntry entry = new ContactEntry();
+            entry.setId(id);
+            entry.setUpdated(new DateTime(clock));
+            Name name = new Name();
+            name.setFullName(new FullName(fullName, null));
+            entry.setName(name);
+            Email address = new Email();
+            address.setAddress(email);
+            address.setPrimary(true);
+            entry.addEmailAddress(address);
+            entries.remove(id);
+            entries.put(id, entry);
+        }
+
+        private void delete(String id) {
+            entries.remove(id);
+            deleted.put(id, clock);
+        }
+
+        public ContactFeed fetchPage(int startIndex, int maxResults, long updatedMin) {
+            lastUpdatedMin = updatedMin;
+            List<ContactEntry> matching = new ArrayList<ContactEntry>();
+            for (ContactEntry entry : entries.values()) {
+                if (entry.getUpdated().getValue() >= updatedMin) {
+                    matching.add(entry);
+                }
+            }
+            if (updatedMin > 0) {
+                for (Map.Entry<String, Long> tombstone : deleted.entrySet()) {
+                    if (tombstone.getValue() >= updatedMin) {
+                        ContactEntry entry = new ContactEntry();
+                        entry.setId(tombstone.getKey());
+                        entry.setUpdated(new DateTime(tombstone.getValue()));
+                        entry.addExtension(new Deleted());
+                        matching.add(entry);
+                    }
+                }
+            }
+            ContactFeed page = new ContactFeed();
+            page.setId(ACCOUNT);
+            page.setTitle(new PlainTextConstruct("vasya pupkin"));
+            page.setUpdated(new DateTime(clock));
+            page.setTotalResults(matching.size());
+            for (int i = startIndex - 1; i < startIndex - 1 + maxResults && i < matching.size(); i++) {
+                page.getEntries().add(matching.get(i));
+            }
+            return page;
+        }
+    }
+}
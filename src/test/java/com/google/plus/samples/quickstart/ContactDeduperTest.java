@@ -0,0 +1,180 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.extensions.Email;
+import com.google.gdata.data.extensions.FullName;
+import com.google.gdata.data.extensions.Name;
+import com.google.gdata.data.extensions.PhoneNumber;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class ContactDeduperTest {
+    @BeforeClass
+    public static void beforeClass() {
+        Signin.loadSpringContext();
+    }
+
+    @Test
+    /**
+     * A shares an email with B, B shares a name with C - all three should end up in one contact
+     */
+    public void testTransitiveMerge() throws Exception {
+        ContactDeduper deduper = new ContactDeduper();
+        deduper.add(new GoogleContact(createEntry("vasya pupkin", Arrays.asList("vasya@pupkin.com"))));
+        deduper.add(new GoogleContact(createEntry("Head Pupkin", Arrays.asList("vasya@pupkin.com"))));
+        deduper.add(new GoogleContact(createEntry("head pupkin", Arrays.asList("head@pupkin.com"))));
+
+        List<GoogleContact> result = deduper.dedupe();
+        assertEquals("one cluster", 1, result.size());
+        assertEquals("first contact survives", "vasya pupkin", result.get(0).getFullName());
+        assertEquals("primary email of first contact", "vasya@pupkin.com", result.get(0).getPrimaryEmail());
+        assertEquals("num emails", 2, result.get(0).getEmails().size());
+        assertEquals("unique emails", 2, deduper.getUniqueEmailCount());
+    }
+
+    @Test
+    /**
+     * Nicknames, "Last, First" and typos only match with a name matcher, different initials never do
+     */
+    public void testFuzzyNames() throws Exception {
+        List<GoogleContact> contacts = Arrays.asList(
+                new GoogleContact(createEntry("Robert Smith", Arrays.asList("robert@smith.com"))),
+                new GoogleContact(createEntry("Smith, Bob", Arrays.asList("bob@smith.com"))),
+                new GoogleContact(createEntry("Robert Smyth", Arrays.asList("rsmyth@smith.com"))),
+                new GoogleContact(createEntry("Bob A. Pupkin", Arrays.asList("bob.a@pupkin.com"))),
+                new GoogleContact(createEntry("Bob B. Pupkin", Arrays.asList("bob.b@pupkin.com"))));
+        ContactDeduper exact = new ContactDeduper(PhoneNumberNormalizer.DEFAULT, null);
+        ContactDeduper fuzzy = new ContactDeduper(PhoneNumberNormalizer.DEFAULT, new NameMatcher(0.93));
+        for (GoogleContact contact : contacts) {
+            exact.add(new GoogleContact(contact));
+            fuzzy.add(new GoogleContact(contact));
+        }
+        assertEquals(5, exact.dedupe().size());
+
+        DedupeSession session = new DedupeSession();
+        List<GoogleContact> result = fuzzy.dedupe(session);
+        assertEquals(3, result.size());
+        assertEquals("Robert Smith", result.get(0).getFullName());
+        assertEquals(3, result.get(0).getEmails().size());
+        assertEquals("fuzzyName:robert smith", session.getMerges().get(0).getKey());
+    }
+
+    @Test
+    /**
+     * Differently written emails of the same gmail mailbox link their contacts, other domains only ignore case
+     */
+    public void testCanonicalEmails() throws Exception {
+        ContactDeduper deduper = new ContactDeduper();
+        deduper.add(new GoogleContact(createEntry("vasya pupkin", Arrays.asList("vasya.pupkin@gmail.com"))));
+        deduper.add(new GoogleContact(createEntry(null, Arrays.asList("VasyaPupkin+news@googlemail.com"))));
+        deduper.add(new GoogleContact(createEntry(null, Arrays.asList("Head@Pupkin.com"))));
+        deduper.add(new GoogleContact(createEntry("head pupkin", Arrays.asList("head@pupkin.com"))));
+        deduper.add(new GoogleContact(createEntry(null, Arrays.asList("head+work@pupkin.com"))));
+
+        DedupeSession session = new DedupeSession();
+        List<GoogleContact> result = deduper.dedupe(session);
+        assertEquals(3, result.size());
+        assertEquals(2, result.get(0).getEmails().size());
+        assertEquals("email:VasyaPupkin+news@googlemail.com", session.getMerges().get(0).getKey());
+        assertEquals("head pupkin", result.get(1).getFullName());
+        assertEquals(3, deduper.getUniqueEmailCount());
+    }
+
+    @Test
+    /**
+     * The link between the first two contacts only shows up with the third one
+     */
+    public void testOrderIndependent() throws Exception {
+        ContactDeduper deduper = new ContactDeduper();
+        deduper.add(new GoogleContact(createEntry(null, Arrays.asList("vasya@pupkin.com"))));
+        deduper.add(new GoogleContact(createEntry(null, Arrays.asList("head@pupkin.com"))));
+        deduper.add(new GoogleContact(createEntry("kolya", Arrays.asList("kolya@pupkin.com"))));
+        deduper.add(new GoogleContact(createEntry("vasya pupkin", Arrays.asList("head@pupkin.com", "vasya@pupkin.com"))));
+
+        List<GoogleContact> result = deduper.dedupe();
+        assertEquals("two clusters", 2, result.size());
+        assertEquals("no-name contact read first survives, takes the name", "vasya pupkin", result.get(0).getFullName());
+        assertEquals("primary email of first contact", "vasya@pupkin.com", result.get(0).getPrimaryEmail());
+        assertEquals("num emails", 2, result.get(0).getEmails().size());
+        assertEquals("kolya", result.get(1).getFullName());
+    }
+
+    @Test
+    /**
+     * Contacts that only share a phone number, written differently, are merged
+     */
+    public void testPhoneMerge() throws Exception {
+        ContactDeduper deduper = new ContactDeduper();
+        deduper.add(new GoogleContact(createEntry("vasya pupkin", Arrays.asList("vasya@pupkin.com"), "(415) 555-1234")));
+        deduper.add(new GoogleContact(createEntry("V. Pupkin", Arrays.asList("head@pupkin.com"), "+1 415 555 1234 x7")));
+        deduper.add(new GoogleContact(createEntry("kolya", Arrays.asList("kolya@pupkin.com"), "415 555 1235")));
+
+        List<GoogleContact> result = deduper.dedupe();
+        assertEquals("two clusters", 2, result.size());
+        assertEquals("vasya pupkin", result.get(0).getFullName());
+        assertEquals("num emails", 2, result.get(0).getEmails().size());
+        assertEquals("unique phones", 2, deduper.getUniquePhoneCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddAfterDedupe() throws Exception {
+        ContactDeduper deduper = new ContactDeduper();
+        deduper.add(new GoogleContact(createEntry("vasya pupkin", Arrays.asList("vasya@pupkin.com"))));
+        deduper.dedupe();
+        deduper.add(new GoogleContact(createEntry("vasya pupkin", Arrays.asList("head@pupkin.com"))));
+    }
+
+    @Test
+    /**
+     * The session records each merge with the key that linked the contact into its cluster
+     */
+    public void testMergeKeys() throws Exception {
+        ContactDeduper deduper = new ContactDeduper();
+        deduper.add(new GoogleContact(createEntry("vasya pupkin", Arrays.asList("vasya@pupkin.com"))));
+        deduper.add(new GoogleContact(createEntry(null, Arrays.asList("vasya@pupkin.com", "head@pupkin.com"))));
+        deduper.add(new GoogleContact(createEntry("Vasya Pupkin", Arrays.asList("v@pupkin.com"))));
+
+        DedupeSession session = new DedupeSession();
+        deduper.dedupe(session);
+        List<DedupeSession.Merge> merges = session.getMerges();
+        assertEquals(2, merges.size());
+        assertEquals("email:vasya@pupkin.com", merges.get(0).getKey());
+        assertEquals("name:vasya pupkin", merges.get(1).getKey());
+        assertEquals("Vasya Pupkin", merges.get(1).getMergedName());
+        assertEquals(1, session.getMergedNames().length);
+    }
+
+    private ContactEntry createEntry(String inName, List<String> emails, String... phones){
+        ContactEntry entry = new ContactEntry();
+        Name name = new Name();
+        FullName fname = new FullName();
+        fname.setValue(inName);
+        name.setFullName(fname);
+        entry.setName(name);
+        for (int i=0;i<emails.size();i++) {
+            Email g_email = new Email();
+            g_email.setAddress(emails.get(i));
+            if(i==0) {
+                g_email.setPrimary(true);
+            }
+            entry.addEmailAddress(g_email);
+        }
+        for (String phone : phones) {
+            PhoneNumber g_phone = new PhoneNumber();
+            g_phone.setPhoneNumber(phone);
+            entry.addPhoneNumber(g_phone);
+        }
+        return entry;
+    }
+}
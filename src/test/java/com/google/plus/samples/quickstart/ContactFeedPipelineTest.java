@@ -0,0 +1,125 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.contacts.ContactFeed;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class ContactFeedPipelineTest {
+    private static final int PAGE_SIZE = 10;
+    private static final long PAGE_LATENCY = 300;
+
+    @Test
+    /**
+     * Pages come back in feed order, even though they're fetched concurrently
+     */
+    public void testReadsWholeFeedInOrder() throws Exception {
+        SlowFeed feed = new SlowFeed(95, true);
+        List<String> ids = readAll(new ContactFeedPipeline(feed, PAGE_SIZE, 4));
+
+        assertEquals(95, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals("entry " + i, String.valueOf(i + 1), ids.get(i));
+        }
+        assertTrue("fetched concurrently", feed.maxInFlight.get() > 1);
+        assertTrue("at most 4 pages in flight", feed.maxInFlight.get() <= 4);
+    }
+
+    @Test
+    /**
+     * 10 pages at 300ms each would take 3s one after another
+     */
+    public void testOverlapsLatency() throws Exception {
+        long start = System.currentTimeMillis();
+        readAll(new ContactFeedPipeline(new SlowFeed(100, true), PAGE_SIZE, 5));
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("took " + elapsed + "ms", elapsed < 6 * PAGE_LATENCY);
+    }
+
+    @Test
+    /**
+     * Without openSearch:totalResults the pages are read one by one until an empty page
+     */
+    public void testUnknownTotal() throws Exception {
+        SlowFeed feed = new SlowFeed(30, false);
+        List<String> ids = readAll(new ContactFeedPipeline(feed, PAGE_SIZE, 4));
+        assertEquals(30, ids.size());
+        assertEquals("pages, plus the empty one", 4, feed.requests.get());
+        assertEquals(1, feed.maxInFlight.get());
+    }
+
+    private static List<String> readAll(ContactFeedPipeline pipeline) throws Exception {
+        List<String> ids = new ArrayList<String>();
+        try {
+            List<ContactEntry> page;
+            while ((page = pipeline.nextPage()) != null) {
+                for (ContactEntry entry : page) {
+                    ids.add(entry.getId());
+                }
+            }
+        } finally {
+            pipeline.close();
+        }
+        return ids;
+    }
+
+    /**
+     * Stand-in contacts feed with numbered entries and a fixed latency per page
+     */
+    private static class SlowFeed implements ContactFeedClient {
+        private final int numContacts;
+        private final boolean reportTotal;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+
+        private SlowFeed(int inNumContacts, boolean inReportTotal) {
+            numContacts = inNumContacts;
+            reportTotal = inReportTotal;
+        }
+
+        public ContactFeed fetchPage(int startIndex, int maxResults, long updatedMin) throws IOException {
+            requests.incrementAndGet();
+            int current = inFlight.incrementAndGet();
+            while (true) {
+                int max = maxInFlight.get();
+                if (current <= max || maxInFlight.compareAndSet(max, current)) {
+                    break;
+                }
+            }
+            try {
+                Thread.sleep(PAGE_LATENCY);
+                ContactFeed feed = new ContactFeed();
+                feed.setTitle(new PlainTextConstruct("vasya pupkin"));
+                if (reportTotal) {
+                    feed.setTotalResults(numContacts);
+                }
+                for (int i = startIndex; i < startIndex + maxResults && i <= numContacts; i++) {
+                    ContactEntry entry = new ContactEntry();
+                    entry.setId(String.valueOf(i));
+                    feed.getEntries().add(entry);
+                }
+                return feed;
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
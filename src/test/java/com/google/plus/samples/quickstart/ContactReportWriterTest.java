@@ -0,0 +1,104 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.extensions.Email;
+import com.google.gdata.data.extensions.FullName;
+import com.google.gdata.data.extensions.Name;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class ContactReportWriterTest {
+    @BeforeClass
+    public static void beforeClass() {
+        Signin.loadSpringContext();
+    }
+
+    @Test
+    /**
+     * All the sections are written, in order, even if some of them are empty
+     */
+    public void testHtmlSections() throws Exception {
+        StringWriter out = new StringWriter();
+        ContactReportWriter report = ContactReportWriter.create(out, ReportFormat.HTML);
+        report.writeSummary(new ContactReportWriter.Summary("<owner>", 3, 1, 1, 0, 1));
+        report.writeContact(new GoogleContact(createEntry("vasya pupkin", Arrays.asList("vasya@pupkin.com"))));
+        report.writeJustName("kolya");
+        report.finish(new String[]{"head pupkin"});
+
+        String html = out.toString();
+        assertTrue("owner is escaped", html.contains("[&lt;owner&gt;]"));
+        assertTrue(html.contains("<tr><td>vasya pupkin</td><td>vasya@pupkin.com</td><td>[vasya@pupkin.com]</td></tr>\n</table>"));
+        assertTrue("empty section still has its header", html.contains("<h3>Emails with no names: 0</h3>"));
+        assertTrue(html.indexOf("<h3>Emails with no names") < html.indexOf("kolya<br/>"));
+        assertTrue(html.endsWith("<em>Merged 1 contacts: [head pupkin]<br/>\n</body></html>\n"));
+    }
+
+    @Test
+    public void testCsv() throws Exception {
+        StringWriter out = new StringWriter();
+        ContactReportWriter report = ContactReportWriter.create(out, ReportFormat.CSV);
+        report.writeSummary(new ContactReportWriter.Summary("owner", 1, 1, 1, 1, 0));
+        report.writeContact(new GoogleContact(createEntry("Pupkin, \"Vasya\"", Arrays.asList("vasya@pupkin.com"))));
+        report.writeNoNameEmail("head@pupkin.com");
+        report.finish(new String[0]);
+
+        assertEquals("record_type,name,primary_email,emails,phones\n" +
+                "contact,\"Pupkin, \"\"Vasya\"\"\",vasya@pupkin.com,vasya@pupkin.com,\n" +
+                "no_name_email,,head@pupkin.com,,\n", out.toString());
+    }
+
+    @Test
+    public void testJsonLines() throws Exception {
+        StringWriter out = new StringWriter();
+        ContactReportWriter report = ContactReportWriter.create(out, ReportFormat.JSON);
+        report.writeSummary(new ContactReportWriter.Summary("owner", 1, 1, 1, 0, 0));
+        report.writeContact(new GoogleContact(createEntry("vasya pupkin", Arrays.asList("vasya@pupkin.com"))));
+        report.finish(new String[0]);
+
+        String[] lines = out.toString().split("\n");
+        assertEquals("summary, contact, merged", 3, lines.length);
+        assertTrue(lines[0].startsWith("{\"type\":\"summary\",\"owner\":\"owner\""));
+        assertEquals("{\"type\":\"contact\",\"name\":\"vasya pupkin\",\"primaryEmail\":\"vasya@pupkin.com\"," +
+                "\"emails\":[\"vasya@pupkin.com\"],\"phones\":[]}", lines[1]);
+        assertEquals("{\"type\":\"merged\",\"names\":[]}", lines[2]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSectionsOutOfOrder() throws Exception {
+        ContactReportWriter report = ContactReportWriter.create(new StringWriter(), ReportFormat.HTML);
+        report.writeSummary(new ContactReportWriter.Summary("owner", 1, 1, 1, 1, 0));
+        report.writeNoNameEmail("head@pupkin.com");
+        report.writeContact(new GoogleContact(createEntry("vasya pupkin", Arrays.asList("vasya@pupkin.com"))));
+    }
+
+    private ContactEntry createEntry(String inName, List<String> emails){
+        ContactEntry entry = new ContactEntry();
+        Name name = new Name();
+        FullName fname = new FullName();
+        fname.setValue(inName);
+        name.setFullName(fname);
+        entry.setName(name);
+        for (int i=0;i<emails.size();i++) {
+            Email g_email = new Email();
+            g_email.setAddress(emails.get(i));
+            if(i==0) {
+                g_email.setPrimary(true);
+            }
+            entry.addEmailAddress(g_email);
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,147 @@
+package com.google.plus.samples.quickstart;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class ContactSourcesTest {
+    @BeforeClass
+    public static void beforeClass() {
+        Signin.loadSpringContext();
+    }
+
+    @Test
+    public void testAtom() throws Exception {
+        String atom = "<?xml version='1.0' encoding='UTF-8'?>\n" +
+                "<feed xmlns='http://www.w3.org/2005/Atom' xmlns:gd='http://schemas.google.com/g/2005'>" +
+                "<id>vasya@pupkin.com</id><title type='text'>Vasya Pupkin's Contacts</title>" +
+                "<entry><id>1</id><title>ignored</title>" +
+                "<gd:name><gd:fullName>Head Pupkin</gd:fullName></gd:name>" +
+                "<gd:email rel='http://schemas.google.com/g/2005#other' address='head@pupkin.com'/>" +
+                "<gd:email rel='http://schemas.google.com/g/2005#work' address='boss@pupkin.com' primary='true'/>" +
+                "<gd:email address='auto_reply@pupkin.com'/>" +
+                "<gd:phoneNumber rel='http://schemas.google.com/g/2005#mobile'>415-555-1234</gd:phoneNumber>" +
+                "</entry>" +
+                "<entry><id>2</id><gd:email address='kolya@pupkin.com'/></entry>" +
+                "</feed>";
+        AtomContactSource source = new AtomContactSource(new ByteArrayInputStream(atom.getBytes("UTF-8")));
+        assertEquals("Vasya Pupkin's Contacts", source.getOwnerName());
+        List<GoogleContact> contacts = readAll(source);
+
+        assertEquals(2, contacts.size());
+        GoogleContact head = contacts.get(0);
+        assertEquals("Head Pupkin", head.getFullName());
+        assertEquals("boss@pupkin.com", head.getPrimaryEmail());
+        assertEquals(new HashSet<String>(Arrays.asList("head@pupkin.com", "boss@pupkin.com")), head.getEmails());
+        assertTrue("ignored email was filtered", head.hadIgnoredEmails());
+        assertEquals(new HashSet<String>(Arrays.asList("415-555-1234")), head.getPhoneNumbers());
+        assertNull(contacts.get(1).getFullName());
+        assertEquals(1, contacts.get(1).getEmails().size());
+    }
+
+    @Test
+    public void testVCard() throws Exception {
+        String vcf = "BEGIN:VCARD\r\n" +
+                "VERSION:3.0\r\n" +
+                "FN:Vasya\\, the\r\n" +
+                "  Pupkin\r\n" +
+                "EMAIL;TYPE=INTERNET:vasya@pupkin.com\r\n" +
+                "item1.EMAIL;TYPE=INTERNET;TYPE=PREF:head@pupkin.com\r\n" +
+                "TEL;TYPE=CELL:+1 415 555 1234\r\n" +
+                "END:VCARD\r\n" +
+                "BEGIN:VCARD\r\n" +
+                "VERSION:4.0\r\n" +
+                "EMAIL;PREF=1:kolya@pupkin.com\r\n" +
+                "TEL;VALUE=uri:tel:+1-415-555-1235\r\n" +
+                "END:VCARD\r\n";
+        List<GoogleContact> contacts = readAll(new VCardContactSource(new StringReader(vcf)));
+
+        assertEquals(2, contacts.size());
+        assertEquals("folded and unescaped", "Vasya, the Pupkin", contacts.get(0).getFullName());
+        assertEquals("head@pupkin.com", contacts.get(0).getPrimaryEmail());
+        assertEquals(2, contacts.get(0).getEmails().size());
+        assertNull(contacts.get(1).getFullName());
+        assertEquals("kolya@pupkin.com", contacts.get(1).getPrimaryEmail());
+        assertEquals(new HashSet<String>(Arrays.asList("+1-415-555-1235")), contacts.get(1).getPhoneNumbers());
+    }
+
+    @Test
+    public void testGoogleCsv() throws Exception {
+        String csv = "Name,Given Name,Family Name,E-mail 1 - Type,E-mail 1 - Value,E-mail 2 - Type,E-mail 2 - Value," +
+                "Phone 1 - Type,Phone 1 - Value\r\n" +
+                "\"Pupkin, Vasya\",Vasya,Pupkin,Home,vasya@pupkin.com,* Work,head@pupkin.com ::: boss@pupkin.com," +
+                "Mobile,415-555-1234 ::: 415-555-1235\r\n" +
+                ",Kolya,Pupkin,* Other,kolya@pupkin.com,,,,\r\n" +
+                "\"Multi\nLine\",,,,,,,,\r\n";
+        List<GoogleContact> contacts = readAll(new GoogleCsvContactSource(new StringReader(csv)));
+
+        assertEquals(3, contacts.size());
+        GoogleContact vasya = contacts.get(0);
+        assertEquals("Pupkin, Vasya", vasya.getFullName());
+        assertEquals("first value of the starred type is primary", "head@pupkin.com", vasya.getPrimaryEmail());
+        assertEquals(3, vasya.getEmails().size());
+        assertEquals(2, vasya.getPhoneNumbers().size());
+        assertEquals("name made of given and family names", "Kolya Pupkin", contacts.get(1).getFullName());
+        assertEquals("kolya@pupkin.com", contacts.get(1).getPrimaryEmail());
+        assertEquals("Multi\nLine", contacts.get(2).getFullName());
+    }
+
+    @Test
+    public void testByteOrderMark() throws Exception {
+        byte[] utf16 = "\uFEFFName,E-mail 1 - Value\r\nVasya,vasya@pupkin.com\r\n".getBytes("UTF-16LE");
+        List<GoogleContact> contacts = readAll(new GoogleCsvContactSource(ContactSources.textReader(
+                new BufferedInputStream(new ByteArrayInputStream(utf16)))));
+        assertEquals(1, contacts.size());
+        assertEquals("Vasya", contacts.get(0).getFullName());
+    }
+
+    @Test
+    /**
+     * Contacts are read straight into the given store, and share its dictionaries
+     */
+    public void testStore() throws Exception {
+        ContactStore store = new ContactStore();
+        String csv = "Name,E-mail 1 - Value\r\nVasya,vasya@pupkin.com\r\nKolya,vasya@pupkin.com\r\n";
+        List<GoogleContact> contacts = readAll(new GoogleCsvContactSource(new StringReader(csv), store));
+        String vcf = "BEGIN:VCARD\r\nFN:Head\r\nEMAIL:vasya@pupkin.com\r\nEND:VCARD\r\n";
+        contacts.addAll(readAll(new VCardContactSource(new StringReader(vcf), store)));
+
+        assertEquals(3, contacts.size());
+        for (GoogleContact contact : contacts) {
+            assertSame(store, contact.getStore());
+            assertSame("adopted as is", contact, store.adopt(contact));
+        }
+        assertEquals(1, store.getEmails().size());
+    }
+
+    private static List<GoogleContact> readAll(ContactSource source) throws Exception {
+        List<GoogleContact> contacts = new ArrayList<GoogleContact>();
+        try {
+            GoogleContact contact;
+            while ((contact = source.next()) != null) {
+                contacts.add(contact);
+            }
+        } finally {
+            source.close();
+        }
+        return contacts;
+    }
+}
@@ -0,0 +1,153 @@
+package com.google.plus.samples.quickstart;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class ContactWriteBackTest {
+    @BeforeClass
+    public static void beforeClass() {
+        GoogleContact.loadIgnoreList();
+    }
+
+    @Test
+    /**
+     * A dry run counts the operations without sending any; contacts that absorbed nothing aren't touched
+     */
+    public void testDryRun() throws Exception {
+        FakeClient client = new FakeClient();
+        ContactWriteBack.Result result = new ContactWriteBack(client, 100, 4, 3, 1, true).apply(clusters(3, 2));
+
+        assertTrue(result.isDryRun());
+        assertEquals(3, result.getPlannedUpdates());
+        assertEquals(6, result.getPlannedDeletes());
+        assertEquals(0, result.getUpdated());
+        assertEquals(0, result.getBatches());
+        assertTrue(client.batches.isEmpty());
+    }
+
+    @Test
+    /**
+     * 150 clusters of 2 absorbed contacts each: 2 batches of updates, then 3 batches of deletes, none over the size
+     */
+    public void testBatchesUpdatesBeforeDeletes() throws Exception {
+        FakeClient client = new FakeClient();
+        ContactWriteBack.Result result = new ContactWriteBack(client, 100, 4, 3, 1, false).apply(clusters(150, 2));
+
+        assertEquals(150, result.getUpdated());
+        assertEquals(300, result.getDeleted());
+        assertEquals(5, result.getBatches());
+        assertEquals(5, client.batches.size());
+        boolean deleting = false;
+        for (List<ContactWriteBack.Operation> batch : client.batches) {
+            assertTrue(batch.size() <= 100);
+            for (ContactWriteBack.Operation operation : batch) {
+                if (operation.getType() == ContactWriteBack.Operation.Type.DELETE) {
+                    deleting = true;
+                } else {
+                    assertFalse("update after a delete", deleting);
+                }
+            }
+        }
+        assertTrue(result.getFailures().isEmpty());
+    }
+
+    @Test
+    /**
+     * A rate limited operation goes again in the next round; a contact that's gone is final
+     */
+    public void testRetries() throws Exception {
+        FakeClient client = new FakeClient();
+        client.statuses.put("survivor-0", new ArrayList<Integer>(Arrays.asList(503, 503)));
+        client.statuses.put("merged-1-0", new ArrayList<Integer>(Arrays.asList(404)));
+        ContactWriteBack.Result result = new ContactWriteBack(client, 100, 1, 3, 1, false).apply(clusters(2, 1));
+
+        assertEquals(2, result.getUpdated());
+        assertEquals(1, result.getDeleted());
+        assertEquals("sent 3 times", 2, result.getRetries());
+        assertEquals(Collections.singletonMap("merged-1-0", 404), result.getFailures());
+    }
+
+    @Test
+    /**
+     * When the survivor fails to update for good, what was merged into it isn't deleted
+     */
+    public void testFailedUpdateSkipsDeletes() throws Exception {
+        FakeClient client = new FakeClient();
+        client.statuses.put("survivor-1", new ArrayList<Integer>(Arrays.asList(503, 503)));
+        client.failBatches = 1;
+        ContactWriteBack.Result result = new ContactWriteBack(client, 100, 2, 2, 1, false).apply(clusters(3, 2));
+
+        assertEquals("the first batch failed as a whole, then survivor-1 was rate limited", 2, result.getUpdated());
+        assertEquals(4, result.getDeleted());
+        assertEquals(2, result.getSkippedDeletes());
+        assertEquals(Collections.singletonMap("survivor-1", 503), result.getFailures());
+        for (List<ContactWriteBack.Operation> batch : client.batches) {
+            for (ContactWriteBack.Operation operation : batch) {
+                assertFalse(operation.getId().startsWith("merged-1-"));
+            }
+        }
+    }
+
+    /**
+     * @return count survivors with numMerged contacts merged into each, plus a contact that absorbed nothing
+     */
+    private static List<GoogleContact> clusters(int count, int numMerged) {
+        List<GoogleContact> deduped = new ArrayList<GoogleContact>();
+        for (int i = 0; i < count; i++) {
+            GoogleContact survivor = new GoogleContact("survivor-" + i, "Vasya Pupkin" + i,
+                    Arrays.asList("vasya" + i + "@pupkin.com"), null, new ArrayList<String>());
+            for (int j = 0; j < numMerged; j++) {
+                survivor.merge(new GoogleContact("merged-" + i + "-" + j, null,
+                        Arrays.asList("vasya" + i + "@pupkin.com", "head" + j + "@pupkin.com"), null,
+                        new ArrayList<String>()));
+            }
+            deduped.add(survivor);
+        }
+        deduped.add(new GoogleContact("loner", "Kolya", Arrays.asList("kolya@pupkin.com"), null,
+                new ArrayList<String>()));
+        return deduped;
+    }
+
+    /**
+     * Answers 200 to everything, unless told otherwise per contact id or for the first few batches
+     */
+    private static class FakeClient implements ContactBatchClient {
+        private final List<List<ContactWriteBack.Operation>> batches =
+                Collections.synchronizedList(new ArrayList<List<ContactWriteBack.Operation>>());
+        // statuses to answer with for a contact, one per attempt, before 200
+        private final Map<String, List<Integer>> statuses = new HashMap<String, List<Integer>>();
+        private int failBatches;
+
+        public synchronized int[] execute(List<ContactWriteBack.Operation> operations) throws IOException {
+            batches.add(new ArrayList<ContactWriteBack.Operation>(operations));
+            if (failBatches > 0) {
+                failBatches--;
+                throw new IOException("Connection reset");
+            }
+            int[] result = new int[operations.size()];
+            for (int i = 0; i < operations.size(); i++) {
+                List<Integer> next = statuses.get(operations.get(i).getId());
+                result[i] = (next == null || next.isEmpty()) ? 200 : next.remove(0);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.google.plus.samples.quickstart;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class DedupeIndexCacheTest {
+    @Test
+    /**
+     * An account's index is shared by its sessions, and goes away with the last of them
+     */
+    public void testKeptWhileSessionsLast() throws Exception {
+        DedupeIndexCache cache = new DedupeIndexCache();
+        cache.sessionCreated("s1");
+        cache.sessionCreated("s2");
+        IncrementalDeduper first = new IncrementalDeduper();
+        cache.put("vasya@pupkin.com", "s1", first);
+        assertSame(first, cache.get("vasya@pupkin.com"));
+        IncrementalDeduper second = new IncrementalDeduper();
+        cache.put("vasya@pupkin.com", "s2", second);
+        assertSame("the latest one", second, cache.get("vasya@pupkin.com"));
+
+        cache.sessionDestroyed("s1");
+        assertSame(second, cache.get("vasya@pupkin.com"));
+        cache.sessionDestroyed("s2");
+        assertNull(cache.get("vasya@pupkin.com"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    /**
+     * A job that finishes after its session ended doesn't leave its index behind
+     */
+    public void testSessionGoneBeforeJobFinished() throws Exception {
+        DedupeIndexCache cache = new DedupeIndexCache();
+        cache.sessionCreated("s1");
+        cache.sessionDestroyed("s1");
+        cache.put("vasya@pupkin.com", "s1", new IncrementalDeduper());
+        assertNull(cache.get("vasya@pupkin.com"));
+        assertEquals(0, cache.size());
+
+        cache.sessionCreated("s2");
+        cache.put("vasya@pupkin.com", "s2", new IncrementalDeduper());
+        IncrementalDeduper late = new IncrementalDeduper();
+        cache.put("vasya@pupkin.com", "s1", late);
+        assertSame("still there for the other session", late, cache.get("vasya@pupkin.com"));
+    }
+}
@@ -0,0 +1,137 @@
+package com.google.plus.samples.quickstart;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class DedupeJobManagerTest {
+    private DedupeJobManager manager;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        Signin.loadSpringContext();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        manager = new DedupeJobManager(2, 60 * 1000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        manager.shutdown();
+    }
+
+    @Test
+    /**
+     * Progress shows while the job runs, the result once it's done, and only to the session that started it
+     */
+    public void testJobLifecycle() throws Exception {
+        final CountDownLatch readSome = new CountDownLatch(1);
+        final CountDownLatch goOn = new CountDownLatch(1);
+        DedupeJob job = manager.submit("session1", new DedupeJobManager.Task() {
+            public DedupeResult run(DedupeJob job) throws Exception {
+                job.pageFetched(25);
+                job.contactsRead(25);
+                readSome.countDown();
+                goOn.await();
+                GoogleContact contact = new GoogleContact("Vasya Pupkin", Arrays.asList("vasya@pupkin.com"), null,
+                        Collections.<String>emptyList());
+                return new DedupeResult("me", 25, 1, 0, Collections.singletonList(contact), new String[0]);
+            }
+        });
+        assertTrue(readSome.await(5, TimeUnit.SECONDS));
+        assertSame(job, manager.get(job.getId(), "session1"));
+        assertNull("other session", manager.get(job.getId(), "session2"));
+        assertNull(manager.get("nope", "session1"));
+
+        Map<String, Object> progress = job.getProgress();
+        assertEquals("RUNNING", progress.get("status"));
+        assertEquals(1, progress.get("pagesFetched"));
+        assertEquals(25, progress.get("contactsRead"));
+        assertFalse(job.isFinished());
+        assertSame("one running job per session", job, manager.submit("session1", null));
+
+        goOn.countDown();
+        waitFor(job);
+        assertEquals(DedupeJob.Status.DONE, job.getStatus());
+        assertEquals(1, job.getResult().getNumContacts());
+        assertEquals(1, job.getProgress().get("contacts"));
+    }
+
+    @Test
+    /**
+     * A failing job reports its error, and the session can start a new one
+     */
+    public void testFailedJob() throws Exception {
+        DedupeJob job = manager.submit("session1", new DedupeJobManager.Task() {
+            public DedupeResult run(DedupeJob job) throws Exception {
+                throw new IllegalStateException("feed went away");
+            }
+        });
+        waitFor(job);
+        assertEquals(DedupeJob.Status.FAILED, job.getStatus());
+        assertEquals("feed went away", job.getProgress().get("error"));
+        assertNull(job.getResult());
+
+        DedupeJob next = manager.submit("session1", new DedupeJobManager.Task() {
+            public DedupeResult run(DedupeJob job) throws Exception {
+                return null;
+            }
+        });
+        assertNotSame(job, next);
+        assertEquals(2, manager.getNumJobs());
+    }
+
+    @Test
+    /**
+     * Finished jobs are dropped once they're kept long enough, without another job coming to trigger it
+     */
+    public void testFinishedJobsEvicted() throws Exception {
+        DedupeJobManager shortLived = new DedupeJobManager(1, 50);
+        try {
+            DedupeJob job = shortLived.submit("session1", new DedupeJobManager.Task() {
+                public DedupeResult run(DedupeJob job) throws Exception {
+                    return null;
+                }
+            });
+            waitFor(job);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (shortLived.getNumJobs() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, shortLived.getNumJobs());
+            assertNull(shortLived.get(job.getId(), "session1"));
+        } finally {
+            shortLived.shutdown();
+        }
+    }
+
+    private static void waitFor(DedupeJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!job.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue("job finished", job.isFinished());
+    }
+}
@@ -0,0 +1,48 @@
+package com.google.plus.samples.quickstart;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class DedupeResultTest {
+    @BeforeClass
+    public static void beforeClass() {
+        Signin.loadSpringContext();
+    }
+
+    @Test
+    /**
+     * Accented names sort with their letter, and the sorted views are built once
+     */
+    public void testCollationOrder() throws Exception {
+        List<String> noPhones = Collections.emptyList();
+        List<GoogleContact> deduped = Arrays.asList(
+                new GoogleContact("Zoe Pupkin", Arrays.asList("zoe@pupkin.com"), null, noPhones),
+                new GoogleContact("\u00c9mile Pupkin", Arrays.asList("emile@pupkin.com"), null, noPhones),
+                new GoogleContact("anna Pupkin", Arrays.asList("anna@pupkin.com"), null, noPhones),
+                new GoogleContact(null, Arrays.asList("Head@pupkin.com", "\u00e9tienne@pupkin.com"), null, noPhones),
+                new GoogleContact("Vasya", Collections.<String>emptyList(), null, noPhones),
+                new GoogleContact("\u00ebva", Collections.<String>emptyList(), null, noPhones));
+        DedupeResult result = new DedupeResult("owner", 6, 5, 0, deduped, new String[]{"Zoe", "\u00c9mile"},
+                Locale.ENGLISH);
+
+        assertArrayEquals(new String[]{"anna pupkin", "\u00e9mile pupkin", "zoe pupkin"}, result.getSortedNames());
+        assertArrayEquals(new String[]{"\u00e9tienne@pupkin.com", "Head@pupkin.com"}, result.getSortedNoNameEmails());
+        assertArrayEquals(new String[]{"\u00ebva", "Vasya"}, result.getJustNames());
+        assertArrayEquals(new String[]{"\u00c9mile", "Zoe"}, result.getMergedNames());
+        assertSame(result.getSortedNames(), result.getSortedNames());
+    }
+}
@@ -0,0 +1,67 @@
+package com.google.plus.samples.quickstart;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class EmailCanonicalizerTest {
+    private final EmailCanonicalizer canonicalizer = EmailCanonicalizer.DEFAULT;
+
+    @Test
+    public void testProviderRules() throws Exception {
+        assertEquivalent("John.Doe@Gmail.com", "johndoe+news@gmail.com");
+        assertEquivalent("johndoe@googlemail.com", "j.o.h.n.d.o.e@GMAIL.COM");
+        assertEquivalent("john.doe+work@outlook.com", "John.Doe@outlook.com");
+        assertEquivalent("vasya@me.com", "vasya+shopping@icloud.com");
+        assertNotEquivalent("john.doe@outlook.com", "johndoe@outlook.com");
+        assertNotEquivalent("john@hotmail.com", "john@outlook.com");
+        assertNotEquivalent("john@gmail.com", "john@gmail.co");
+    }
+
+    @Test
+    /**
+     * Unknown domains and malformed emails only ignore case
+     */
+    public void testOtherDomains() throws Exception {
+        assertEquivalent("Vasya@Pupkin.com", "vasya@pupkin.COM");
+        assertNotEquivalent("vasya.pupkin@pupkin.com", "vasyapupkin@pupkin.com");
+        assertNotEquivalent("vasya+work@pupkin.com", "vasya@pupkin.com");
+        assertEquivalent("Vasya Pupkin", "vasya pupkin");
+        assertNotEquivalent("vasya", "vasya@");
+        assertNotEquivalent("+news@gmail.com", "@gmail.com");
+
+        EmailCanonicalizer caseOnly = new EmailCanonicalizer(false);
+        assertFalse(caseOnly.equivalent("john.doe@gmail.com", "johndoe@gmail.com"));
+        assertTrue(caseOnly.equivalent("John.Doe@gmail.com", "john.doe@GMAIL.com"));
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        assertEquals(canonicalizer.key("John.Doe@Gmail.com"), canonicalizer.key("johndoe@googlemail.com"));
+        assertEquals(canonicalizer.key("John.Doe@Gmail.com").hashCode(),
+                canonicalizer.key("johndoe@googlemail.com").hashCode());
+        assertNotEquals(canonicalizer.key("john@pupkin.com"), canonicalizer.key("jon@pupkin.com"));
+        assertEquals("John.Doe@Gmail.com", canonicalizer.key("John.Doe@Gmail.com").getEmail());
+    }
+
+    private void assertEquivalent(String email1, String email2) {
+        assertTrue(email1 + " vs " + email2, canonicalizer.equivalent(email1, email2));
+        assertTrue(email2 + " vs " + email1, canonicalizer.equivalent(email2, email1));
+        assertEquals(email1 + " vs " + email2, canonicalizer.hash(email1), canonicalizer.hash(email2));
+    }
+
+    private void assertNotEquivalent(String email1, String email2) {
+        assertFalse(email1 + " vs " + email2, canonicalizer.equivalent(email1, email2));
+        assertFalse(email2 + " vs " + email1, canonicalizer.equivalent(email2, email1));
+        assertNotEquals(email1 + " vs " + email2, canonicalizer.hash(email1), canonicalizer.hash(email2));
+    }
+}
@@ -7,10 +7,15 @@ import com.google.gdata.data.extensions.Name;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author toli kuznets
@@ -60,14 +65,91 @@ public class GoogleContactTest {
     @Test
     /**
      * Creates a contact without a name and merges it with a contact with a name and another email.
-     * Verify we update the mergedNames list
+     * Verify the session records the merge
      */
     public void testGetMerged() throws Exception {
+        DedupeSession session = new DedupeSession();
         GoogleContact contact1 = new GoogleContact(createEntry(null, Arrays.asList("vasya@pupkin.com")));
         GoogleContact contact2 = new GoogleContact(createEntry("vasya pupkin", Arrays.asList("head@pupkin.com")));
-        contact1.merge(contact2);
-        String[] mergedNames = GoogleContact.getMergedNames();
+        contact1.merge(contact2, session, "name:vasya pupkin");
+        String[] mergedNames = session.getMergedNames();
         assertEquals("expecting size 1", 1, mergedNames.length);
+        assertEquals("vasya pupkin", session.getMerges().get(0).getSurvivorName());
+        assertEquals("name:vasya pupkin", session.getMerges().get(0).getKey());
+
+        assertEquals("another run doesn't see it", 0, new DedupeSession().getMergedNames().length);
+    }
+
+    @Test
+    /**
+     * A duplicate that adds nothing (same name, only a phone the survivor has) is still a merge the session records,
+     * it just isn't among the merged names
+     */
+    public void testMergeAddingNothing() throws Exception {
+        DedupeSession session = new DedupeSession();
+        GoogleContact contact1 = new GoogleContact("1", "vasya pupkin", Arrays.asList("vasya@pupkin.com"), null,
+                Arrays.asList("+1 415 555 1212"));
+        GoogleContact contact2 = new GoogleContact("2", "vasya pupkin", new ArrayList<String>(), null,
+                Arrays.asList("+1 415 555 1212"));
+        assertFalse(contact1.merge(contact2, session, "phone:+1 415 555 1212"));
+        assertEquals(1, session.getNumMerges());
+        assertEquals("2", session.getMerges().get(0).getMergedId());
+        assertEquals("phone:+1 415 555 1212", session.getMerges().get(0).getKey());
+        assertFalse(session.getMerges().get(0).hasAddedDetails());
+        assertEquals(0, session.getMergedNames().length);
+    }
+
+    @Test
+    /**
+     * The ids of merged contacts are kept for writing back, including the ones they had absorbed themselves,
+     * and a copy gets its own list
+     */
+    public void testMergedIds() throws Exception {
+        GoogleContact c1 = new GoogleContact("1", "vasya pupkin", Arrays.asList("vasya@pupkin.com"), null,
+                new ArrayList<String>());
+        GoogleContact c2 = new GoogleContact("2", null, new ArrayList<String>(), null,
+                Arrays.asList("+1 415 555 1212"));
+        GoogleContact c3 = new GoogleContact("3", "Vasya Pupkin", Arrays.asList("head@pupkin.com"), null,
+                new ArrayList<String>());
+        assertTrue(c1.getMergedIds().isEmpty());
+
+        assertTrue("no name or emails to add, still merged", !c1.merge(c2));
+        c3.merge(c1);
+        assertEquals(Arrays.asList("1", "2"), c3.getMergedIds());
+
+        GoogleContact copy = new GoogleContact(c3);
+        copy.merge(new GoogleContact(null, "Head", Arrays.asList("head@mail.ru"), null, new ArrayList<String>()));
+        assertEquals("no id to keep", Arrays.asList("1", "2"), copy.getMergedIds());
+        copy.merge(new GoogleContact("4", "Head", Arrays.asList("head@mail.ru"), null, new ArrayList<String>()));
+        assertEquals(Arrays.asList("1", "2", "4"), copy.getMergedIds());
+        assertEquals(Arrays.asList("1", "2"), c3.getMergedIds());
+    }
+
+    @Test
+    /**
+     * Contacts of one store share the dictionary ids of their emails; merging across stores goes by the strings
+     */
+    public void testStore() throws Exception {
+        ContactStore store = new ContactStore();
+        GoogleContact c1 = new GoogleContact(createEntry("vasya pupkin", Arrays.asList("vasya@pupkin.com")), store);
+        GoogleContact c2 = new GoogleContact(createEntry(null, Arrays.asList("head@pupkin.com", "vasya@pupkin.com")),
+                store);
+        assertEquals(2, store.getEmails().size());
+        assertEquals("sorted ids", c1.getEmailIds()[0], c2.getEmailIds()[0]);
+        assertSame("adopted as is", c1, store.adopt(c1));
+
+        GoogleContact other = new GoogleContact(null, "Vasya", Arrays.asList("vasya@mail.ru"), "vasya@mail.ru",
+                Arrays.asList("+1 415 555 1212"));
+        assertTrue(c1.merge(other));
+        assertEquals(Arrays.asList("vasya@pupkin.com", "vasya@mail.ru"), new ArrayList<String>(c1.getEmails()));
+        assertTrue(c1.getPhoneNumbers().contains("+1 415 555 1212"));
+        assertEquals("vasya@pupkin.com", c1.getPrimaryEmail());
+        assertEquals(1, other.getEmails().size());
+        assertEquals(3, store.getEmails().size());
+
+        GoogleContact copy = store.adopt(other);
+        assertNotSame(other, copy);
+        assertEquals("vasya@mail.ru", copy.getPrimaryEmail());
     }
 
     private ContactEntry createEntry(String inName, List<String> emails){
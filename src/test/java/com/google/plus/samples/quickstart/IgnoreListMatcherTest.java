@@ -0,0 +1,74 @@
+package com.google.plus.samples.quickstart;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class IgnoreListMatcherTest {
+    private static final List<String> EMAILS = Arrays.asList(
+            // from GoogleContactTest.testIgnoredEmails
+            "vasya@pupkin.com", "auto_reply-2134@pupkin.com", "auto_reply-2134@sale.craigslist.org",
+            "sale-jgmmg-1746422063@craigslist.org", "4zjqf-3392859377@sale.craigslist.org",
+            // edge cases around the literal parts
+            "sale-@craigslist.org", "sale@craigslist.org", "hous-x@craigslist.org.uk", "x@reply.facebook.com.evil",
+            "@reply.linkedin.com", "x@notreply.linkedin.com", "unsubscribe@somewhere.com", "unsubscribe2@somewhere.com",
+            "noreply@quip.com", "noreply-x@quip.com", "noreply@quip.co", "support-123@acme.zendesk.com",
+            "support@acme.zendesk.com", "vasya@plus.google.com", "Vasya@Plus.Google.Com", "");
+
+    private static IgnoreListMatcher matcher;
+    private static Pattern alternation;
+
+    @BeforeClass
+    public static void beforeClass() {
+        Signin.loadSpringContext();
+        matcher = GoogleContact.getIgnoreList();
+        List<String> patterns = matcher.getPatterns();
+        alternation = Pattern.compile(StringUtils.join(patterns.toArray(new String[patterns.size()]), "|"));
+    }
+
+    @Test
+    /**
+     * Has to give the same answers as the old single alternation regex
+     */
+    public void testSameAsRegex() throws Exception {
+        for (String email : EMAILS) {
+            assertEquals(email, alternation.matcher(email).matches(), matcher.matches(email));
+        }
+    }
+
+    @Test
+    public void testRuleClasses() throws Exception {
+        assertEquals("all patterns are classified", matcher.getPatterns().size(),
+                matcher.getNumSuffixRules() + matcher.getNumPrefixRules() + matcher.getNumRegexRules());
+        assertEquals("only .*auto_reply.* and the zendesk rule need a regex", 2, matcher.getNumRegexRules());
+    }
+
+    @Test
+    public void testHitCounts() throws Exception {
+        IgnoreListMatcher local = new IgnoreListMatcher(Arrays.asList(".*@reply.facebook.com", "sale-.*@craigslist.org",
+                ".*auto_reply.*"));
+        local.matches("a@reply.facebook.com");
+        local.matches("b@reply.facebook.com");
+        local.matches("sale-1@craigslist.org");
+        local.matches("auto_reply@pupkin.com");
+        local.matches("vasya@pupkin.com");
+
+        Map<String, Long> hits = local.getHitCounts();
+        assertEquals(Long.valueOf(2), hits.get(".*@reply.facebook.com"));
+        assertEquals(Long.valueOf(1), hits.get("sale-.*@craigslist.org"));
+        assertEquals(Long.valueOf(1), hits.get(".*auto_reply.*"));
+    }
+}
@@ -0,0 +1,151 @@
+package com.google.plus.samples.quickstart;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class IncrementalDeduperTest {
+    @BeforeClass
+    public static void beforeClass() {
+        Signin.loadSpringContext();
+    }
+
+    @Test
+    /**
+     * B is the only link between A and C - removing it splits the cluster again
+     */
+    public void testSplitOnRemove() throws Exception {
+        IncrementalDeduper deduper = new IncrementalDeduper();
+        deduper.put(createContact("a", "vasya pupkin", "vasya@pupkin.com"));
+        deduper.put(createContact("b", null, "vasya@pupkin.com", "head@pupkin.com"));
+        deduper.put(createContact("c", "head pupkin", "head@pupkin.com"));
+        assertEquals(1, deduper.getNumClusters());
+        assertEquals(Arrays.asList("a", "b", "c"), deduper.getSourceIds("c"));
+        assertEquals(2, deduper.getResult().get(0).getEmails().size());
+
+        deduper.remove("b");
+        List<GoogleContact> result = deduper.getResult();
+        assertEquals(2, result.size());
+        assertEquals("vasya pupkin", result.get(0).getFullName());
+        assertEquals(1, result.get(0).getEmails().size());
+        assertEquals("head pupkin", result.get(1).getFullName());
+        assertEquals(Arrays.asList("c"), deduper.getSourceIds("c"));
+    }
+
+    @Test
+    /**
+     * An edit that drops the linking email splits the cluster, the edited contact keeps its place
+     */
+    public void testSplitOnUpdate() throws Exception {
+        IncrementalDeduper deduper = new IncrementalDeduper();
+        deduper.put(createContact("a", null, "vasya@pupkin.com"));
+        deduper.put(createContact("b", "vasya pupkin", "vasya@pupkin.com", "head@pupkin.com"));
+        deduper.put(createContact("c", "head pupkin", "head@pupkin.com"));
+        assertEquals(1, deduper.getNumClusters());
+        assertEquals("no-name contact added first survives, takes the name", "vasya pupkin",
+                deduper.getResult().get(0).getFullName());
+
+        deduper.put(createContact("a", "kolya", "kolya@pupkin.com"));
+        List<GoogleContact> result = deduper.getResult();
+        assertEquals(2, result.size());
+        assertEquals("kolya", result.get(0).getFullName());
+        assertEquals("vasya pupkin", result.get(1).getFullName());
+        assertEquals(2, result.get(1).getEmails().size());
+        assertEquals(3, deduper.getUniqueEmailCount());
+    }
+
+    @Test
+    /**
+     * Random adds, edits and removes end up with the same clusters as a batch dedupe of what's left
+     */
+    public void testSameAsBatch() throws Exception {
+        checkSameAsBatch(null);
+    }
+
+    @Test
+    /**
+     * Same with fuzzy name matching, where "name12" and "name121" are the same person
+     */
+    public void testSameAsBatchFuzzy() throws Exception {
+        checkSameAsBatch(new NameMatcher(0.9));
+    }
+
+    private static void checkSameAsBatch(NameMatcher nameMatcher) {
+        Random random = new Random(42);
+        IncrementalDeduper incremental = new IncrementalDeduper(PhoneNumberNormalizer.DEFAULT, nameMatcher);
+        // what's currently in, by add order
+        Map<Integer, GoogleContact> current = new TreeMap<Integer, GoogleContact>();
+        Map<String, Integer> addOrder = new TreeMap<String, Integer>();
+        for (int i = 0; i < 2000; i++) {
+            String id = String.valueOf(random.nextInt(300));
+            if (random.nextInt(4) == 0) {
+                incremental.remove(id);
+                if (addOrder.containsKey(id)) {
+                    current.remove(addOrder.get(id));
+                }
+            } else {
+                GoogleContact contact = randomContact(random, id);
+                incremental.put(contact);
+                if (!addOrder.containsKey(id) || !current.containsKey(addOrder.get(id))) {
+                    // a removed contact that comes back is added anew
+                    addOrder.put(id, i);
+                }
+                current.put(addOrder.get(id), contact);
+            }
+            if (i % 100 == 0) {
+                assertEquals("after " + i + " changes", batchDedupe(current.values(), nameMatcher),
+                        describe(incremental.getResult()));
+            }
+        }
+        assertEquals(batchDedupe(current.values(), nameMatcher), describe(incremental.getResult()));
+    }
+
+    private static List<String> batchDedupe(Iterable<GoogleContact> contacts, NameMatcher nameMatcher) {
+        ContactDeduper deduper = new ContactDeduper(PhoneNumberNormalizer.DEFAULT, nameMatcher);
+        for (GoogleContact contact : contacts) {
+            // the batch deduper merges in place, feed it copies
+            deduper.add(new GoogleContact(contact));
+        }
+        return describe(deduper.dedupe());
+    }
+
+    private static List<String> describe(List<GoogleContact> contacts) {
+        List<String> result = new ArrayList<String>();
+        for (GoogleContact contact : contacts) {
+            result.add(contact.getId() + ": " + contact.getFullName() + " [" + contact.getPrimaryEmail() + "] "
+                    + new TreeSet<String>(contact.getEmails()) + " " + new TreeSet<String>(contact.getPhoneNumbers()));
+        }
+        return result;
+    }
+
+    private static GoogleContact randomContact(Random random, String id) {
+        String name = random.nextInt(3) == 0 ? null : "name" + random.nextInt(200);
+        List<String> emails = new ArrayList<String>();
+        for (int i = random.nextInt(3); i > 0; i--) {
+            emails.add("user" + random.nextInt(400) + "@pupkin.com");
+        }
+        List<String> phones = random.nextInt(4) == 0
+                ? Arrays.asList("415-555-" + (1000 + random.nextInt(200))) : Collections.<String>emptyList();
+        return new GoogleContact(id, name, emails, emails.isEmpty() ? null : emails.get(0), phones);
+    }
+
+    private static GoogleContact createContact(String id, String name, String... emails) {
+        return new GoogleContact(id, name, Arrays.asList(emails), emails[0], Collections.<String>emptyList());
+    }
+}
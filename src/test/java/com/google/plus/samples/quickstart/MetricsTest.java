@@ -0,0 +1,68 @@
+package com.google.plus.samples.quickstart;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class MetricsTest {
+    @Test
+    /**
+     * Histogram buckets are cumulative and the sum is in the exposed unit
+     */
+    public void testPrometheusFormat() throws Exception {
+        Metrics metrics = new Metrics();
+        Metrics.Counter merges = metrics.counter("test_merges_total", "Merges");
+        Metrics.Histogram fetch = metrics.histogram("test_fetch_seconds", "Fetches", 1e-9, 0.1, 1);
+        metrics.gauge("test_heap_bytes", "Heap", new Metrics.Gauge() {
+            public double getValue() {
+                return 1024;
+            }
+        });
+        merges.add(3);
+        merges.inc();
+        fetch.observe(50 * 1000 * 1000);
+        fetch.observe(100 * 1000 * 1000);
+        fetch.observe(2L * 1000 * 1000 * 1000);
+
+        StringWriter output = new StringWriter();
+        metrics.writeTo(output);
+        assertEquals("# HELP test_fetch_seconds Fetches\n"
+                + "# TYPE test_fetch_seconds histogram\n"
+                + "test_fetch_seconds_bucket{le=\"0.1\"} 2\n"
+                + "test_fetch_seconds_bucket{le=\"1.0\"} 2\n"
+                + "test_fetch_seconds_bucket{le=\"+Inf\"} 3\n"
+                + "test_fetch_seconds_sum 2.15\n"
+                + "test_fetch_seconds_count 3\n"
+                + "# HELP test_heap_bytes Heap\n"
+                + "# TYPE test_heap_bytes gauge\n"
+                + "test_heap_bytes 1024.0\n"
+                + "# HELP test_merges_total Merges\n"
+                + "# TYPE test_merges_total counter\n"
+                + "test_merges_total 4\n", output.toString());
+        assertEquals(3, fetch.getCount());
+    }
+
+    @Test
+    public void testDedupeMetrics() throws Exception {
+        StringWriter output = new StringWriter();
+        DedupeMetrics.writeTo(output);
+        assertTrue(output.toString().contains("# TYPE deduper_feed_page_fetch_seconds histogram\n"));
+        assertTrue(output.toString().contains("# TYPE jvm_heap_used_bytes gauge\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateName() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.counter("test_total", "One");
+        metrics.counter("test_total", "Two");
+    }
+}
@@ -0,0 +1,121 @@
+package com.google.plus.samples.quickstart;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class NameMatcherTest {
+    private final NameMatcher matcher = new NameMatcher(0.93);
+
+    @Test
+    public void testCanonical() throws Exception {
+        assertEquals("robert smith", matcher.prepare("Robert Smith").getCanonical());
+        assertEquals("robert smith", matcher.prepare("Smith, Bob").getCanonical());
+        assertEquals("robert smith", matcher.prepare("  bob   SMITH ").getCanonical());
+        assertEquals("pupkin vasya", matcher.prepare("Vasya J. Pupkin").getCanonical());
+        assertEquals("only the first name", "daniel dick", matcher.prepare("Dan Dick").getCanonical());
+        assertEquals("only the first name", "daniel dick", matcher.prepare("Dick, Dan").getCanonical());
+        assertEquals("patrick or patricia", "pat smith", matcher.prepare("Pat Smith").getCanonical());
+        assertEquals("васильевич пупкин", matcher.prepare("Пупкин Васильевич").getCanonical());
+        assertNull("nothing but initials", matcher.prepare("J. K."));
+    }
+
+    @Test
+    public void testMatches() throws Exception {
+        assertTrue(matches("Bob Smith", "Robert Smith"));
+        assertTrue(matches("Robert Smith", "Robert Smyth"));
+        assertTrue(matches("Katherine Pupkin", "Kathrine Pupkin"));
+        assertTrue("initials on one side only", matches("Bob A. Smith", "Robert Smith"));
+        assertFalse("different initials", matches("Bob A. Smith", "Bob B. Smith"));
+        assertFalse(matches("Robert Smith", "Robert Jones"));
+        assertFalse(matches("Vasya Pupkin", "Kolya Pupkin"));
+    }
+
+    private boolean matches(String name1, String name2) {
+        return matcher.matches(matcher.prepare(name1), matcher.prepare(name2));
+    }
+
+    @Test
+    public void testSimilarity() throws Exception {
+        assertEquals(1.0, NameMatcher.similarity("martha", "martha"), 0.0001);
+        assertEquals(0.9611, NameMatcher.similarity("martha", "marhta"), 0.0001);
+        assertEquals(0.8400, NameMatcher.similarity("dwayne", "duane"), 0.0001);
+        assertEquals(0.8133, NameMatcher.similarity("dixon", "dicksonx"), 0.0001);
+        assertEquals(0.0, NameMatcher.similarity("abc", "xyz"), 0.0001);
+    }
+
+    @Test
+    public void testSoundex() throws Exception {
+        assertEquals("R163", NameMatcher.soundex("robert"));
+        assertEquals("R163", NameMatcher.soundex("rupert"));
+        assertEquals("S530", NameMatcher.soundex("smith"));
+        assertEquals("S530", NameMatcher.soundex("smyth"));
+        assertEquals("A261", NameMatcher.soundex("ashcraft"));
+        assertEquals("T522", NameMatcher.soundex("tymczak"));
+        assertEquals("P236", NameMatcher.soundex("pfister"));
+    }
+
+    @Test
+    /**
+     * Only names sharing a blocking key are compared, and too large blocks aren't compared at all
+     */
+    public void testIndex() throws Exception {
+        NameMatcher.Index<String> index = new NameMatcher.Index<String>(matcher);
+        index.add("1", matcher.prepare("Robert Smith"));
+        index.add("2", matcher.prepare("Robert Jones"));
+        List<String> found = index.findMatches("3", matcher.prepare("Smith, Bob"));
+        assertEquals(1, found.size());
+        assertEquals("1", found.get(0));
+        assertEquals("not itself", 0, index.findMatches("1", matcher.prepare("Robert Smith")).size());
+
+        for (int i = 1; i < NameMatcher.MAX_BLOCK_SIZE; i++) {
+            assertEquals(0, index.add("smith" + i, matcher.prepare("Robert Smith")).size());
+        }
+        assertEquals(NameMatcher.MAX_BLOCK_SIZE, index.findMatches("late", matcher.prepare("Robert Smith")).size());
+        assertEquals("members that lost their matches", NameMatcher.MAX_BLOCK_SIZE,
+                index.add("late", matcher.prepare("Robert Smith")).size());
+        assertEquals("too large a block", 0, index.findMatches("1", matcher.prepare("Robert Smith")).size());
+        assertEquals("members that matter again", NameMatcher.MAX_BLOCK_SIZE, index.remove("late").size());
+        assertEquals(NameMatcher.MAX_BLOCK_SIZE - 1, index.findMatches("1", matcher.prepare("Robert Smith")).size());
+        index.remove("2");
+        assertEquals(NameMatcher.MAX_BLOCK_SIZE, index.size());
+    }
+
+    @Test
+    /**
+     * A name whose two keys both cross the limit at once reports the members of both blocks.
+     * prepare() always puts a name's "n:" block inside its soundex one, so the names here are made up by hand
+     */
+    public void testIndexBlocksCrossTogether() throws Exception {
+        NameMatcher.Index<String> index = new NameMatcher.Index<String>(matcher);
+        for (int i = 0; i < NameMatcher.MAX_BLOCK_SIZE; i++) {
+            index.add("a" + i, name("a"));
+            index.add("b" + i, name("b"));
+        }
+        List<String> affected = index.add("both", name("a", "b"));
+        assertEquals(2 * NameMatcher.MAX_BLOCK_SIZE, affected.size());
+        assertEquals("no duplicates", affected.size(), new HashSet<String>(affected).size());
+        assertTrue(affected.contains("a0") && affected.contains("b0"));
+
+        affected = index.remove("both");
+        assertEquals(2 * NameMatcher.MAX_BLOCK_SIZE, affected.size());
+        assertTrue(affected.contains("a0") && affected.contains("b0"));
+    }
+
+    private static NameMatcher.Name name(String... keys) {
+        return new NameMatcher.Name("robert smith", "[]", true, Arrays.asList(keys));
+    }
+}
@@ -0,0 +1,77 @@
+package com.google.plus.samples.quickstart;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class PageTemplateTest {
+    private File file;
+    private PageTemplate template;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("index", ".html");
+        FileUtils.writeStringToFile(file, "<title>{{ APPLICATION_NAME }}</title><a data-id=\"{{CLIENT_ID}}\" "
+                + "href=\"connect?state={{ STATE }}\">{{ STATE }} ✓</a>", "UTF-8");
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("APPLICATION_NAME", "Contacts Deduper");
+        values.put("CLIENT_ID", "1234$5.apps");
+        template = new PageTemplate(file, values, "STATE", 0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    @Test
+    /**
+     * Fixed values are filled in once, the per-request value goes everywhere its placeholder was
+     */
+    public void testWrite() throws Exception {
+        PageTemplate.Page page = template.get();
+        String expected = "<title>Contacts Deduper</title><a data-id=\"1234$5.apps\" href=\"connect?state=abc\">abc ✓</a>";
+        assertEquals(expected, render(page, "abc"));
+        assertEquals(expected.getBytes("UTF-8").length, page.getLength("abc"));
+        assertEquals(page.getETag("abc"), page.getETag("abc"));
+        assertFalse(page.getETag("abc").equals(page.getETag("abd")));
+        assertSame("not reloaded while unchanged", page, template.get());
+    }
+
+    @Test
+    /**
+     * A changed file is picked up, with a new version
+     */
+    public void testReload() throws Exception {
+        PageTemplate.Page page = template.get();
+        FileUtils.writeStringToFile(file, "state={{ STATE }}", "UTF-8");
+        file.setLastModified(file.lastModified() + 2000);
+
+        PageTemplate.Page reloaded = template.get();
+        assertEquals("state=xyz", render(reloaded, "xyz"));
+        assertFalse(page.getVersion().equals(reloaded.getVersion()));
+        assertFalse(page.getETag("xyz").equals(reloaded.getETag("xyz")));
+    }
+
+    private static String render(PageTemplate.Page page, String value) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        page.write(out, value);
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,88 @@
+package com.google.plus.samples.quickstart;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class ParallelContactDeduperTest {
+    @BeforeClass
+    public static void beforeClass() {
+        GoogleContact.loadIgnoreList();
+    }
+
+    @Test
+    /**
+     * Same clusters, merges and link keys as the sequential deduper, over enough contacts for several chunks
+     */
+    public void testSameAsSequential() throws Exception {
+        checkSameAsSequential(null);
+    }
+
+    @Test
+    public void testSameAsSequentialFuzzy() throws Exception {
+        checkSameAsSequential(new NameMatcher(0.9));
+    }
+
+    private static void checkSameAsSequential(NameMatcher nameMatcher) {
+        Random random = new Random(42);
+        List<GoogleContact> contacts = new ArrayList<GoogleContact>();
+        for (int i = 0; i < 20000; i++) {
+            contacts.add(randomContact(random, String.valueOf(i)));
+        }
+        ContactDeduper sequential = new ContactDeduper(PhoneNumberNormalizer.DEFAULT, nameMatcher);
+        Deduper parallel = new ParallelContactDeduper(PhoneNumberNormalizer.DEFAULT, nameMatcher, 4);
+        for (GoogleContact contact : contacts) {
+            // the dedupers merge in place, give each its own copies
+            sequential.add(new GoogleContact(contact));
+            parallel.add(new GoogleContact(contact));
+        }
+        DedupeSession sequentialSession = new DedupeSession();
+        DedupeSession parallelSession = new DedupeSession();
+        List<GoogleContact> deduped = sequential.dedupe(sequentialSession);
+        assertEquals(describe(deduped), describe(parallel.dedupe(parallelSession)));
+        assertEquals("every absorbed contact is recorded, even if it added nothing",
+                contacts.size() - deduped.size(), parallelSession.getNumMerges());
+        assertEquals(sequentialSession.getMerges().toString(), parallelSession.getMerges().toString());
+        assertEquals(sequential.getUniqueEmailCount(), parallel.getUniqueEmailCount());
+        assertEquals(sequential.getUniquePhoneCount(), parallel.getUniquePhoneCount());
+    }
+
+    private static List<String> describe(List<GoogleContact> contacts) {
+        List<String> result = new ArrayList<String>();
+        for (GoogleContact contact : contacts) {
+            result.add(contact.getId() + " " + contact.getFullName() + " " + contact.getPrimaryEmail() + " "
+                    + contact.getEmails() + " " + contact.getPhoneNumbers());
+        }
+        return result;
+    }
+
+    private static GoogleContact randomContact(Random random, String id) {
+        if (random.nextInt(20) == 0) {
+            // phone only, a duplicate that adds nothing to the contact it's merged into
+            return new GoogleContact(id, null, new ArrayList<String>(), null,
+                    Arrays.asList("415-555-" + (1000 + random.nextInt(5000))));
+        }
+        String name = random.nextInt(3) == 0 ? null
+                : (random.nextBoolean() ? "Name" : "name") + random.nextInt(8000);
+        List<String> emails = new ArrayList<String>();
+        for (int i = random.nextInt(3); i > 0; i--) {
+            emails.add((random.nextBoolean() ? "user." : "User") + random.nextInt(15000) + "@gmail.com");
+        }
+        List<String> phones = random.nextInt(4) == 0
+                ? Arrays.asList("415-555-" + (1000 + random.nextInt(5000))) : Collections.<String>emptyList();
+        return new GoogleContact(id, name, emails, emails.isEmpty() ? null : emails.get(0), phones);
+    }
+}
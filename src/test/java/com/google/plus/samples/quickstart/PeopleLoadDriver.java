@@ -0,0 +1,241 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gson.Gson;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load test of the whole connect/people/jobs path against a {@link StandInContactsServer}.
+ *
+ * Starts the stand-in and the deduper server (pointed at it with deduper.feedUrl and deduper.tokenServerUrl) in
+ * this JVM, then runs load.users sessions, load.concurrency at a time. Each session loads the page, connects, asks
+ * for /people, polls the job until it's done and reads the result; the report has the percentiles of the time
+ * /people takes to answer and of the time from asking to having read the whole result.
+ * The stand-in is set up with standin.* properties (see {@link StandInContactsServer}), load.contacts contacts
+ * by default.
+ * With -Dload.startServer=false the sessions go to an already running deduper at load.baseUrl instead.
+ * With -Ddeduper.virtualThreads=true (on Java 21 or later) the servers and the sessions all run on virtual threads,
+ * so load.concurrency can go to thousands; the report has the peak number of platform threads to compare.
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.google.plus.samples.quickstart.PeopleLoadDriver
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class PeopleLoadDriver {
+    private static final Gson GSON = new Gson();
+    private static final Pattern STATE_PATTERN = Pattern.compile("connect\\?state=([0-9a-z]+)");
+    private static final long POLL_MILLIS = 50;
+    private static final long JOB_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    private final String baseUrl;
+
+    public PeopleLoadDriver(String inBaseUrl) {
+        baseUrl = inBaseUrl;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = Integer.getInteger("load.users", 50);
+        int concurrency = Integer.getInteger("load.concurrency", 10);
+        String baseUrl = System.getProperty("load.baseUrl", "http://localhost:4567/");
+        PrintStream console = System.out;
+
+        StandInContactsServer standIn = null;
+        if (Boolean.parseBoolean(System.getProperty("load.startServer", "true"))) {
+            standIn = new StandInContactsServer(0);
+            standIn.addSyntheticContacts(Integer.getInteger("load.contacts", 5000), 42);
+            standIn.configure(System.getProperties());
+            standIn.start();
+            System.setProperty("deduper.feedUrl", standIn.getFeedUrl());
+            System.setProperty("deduper.tokenServerUrl", standIn.getTokenServerUrl());
+            if (System.getProperty("deduper.cacheDir") == null) {
+                File cacheDir = File.createTempFile("load-cache", "");
+                cacheDir.delete();
+                System.setProperty("deduper.cacheDir", cacheDir.getPath());
+            }
+            // the deduper logs every report to the console
+            System.setOut(new PrintStream(NullOutputStream.NULL_OUTPUT_STREAM));
+            Thread server = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        Signin.main(new String[0]);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            }, "deduper-server");
+            server.setDaemon(true);
+            server.start();
+            waitForServer(baseUrl);
+        }
+
+        final PeopleLoadDriver driver = new PeopleLoadDriver(baseUrl);
+        long start = System.currentTimeMillis();
+        ExecutorService pool = VirtualThreads.isEnabled()
+                ? Executors.newFixedThreadPool(concurrency, VirtualThreads.newThreadFactory("load-session-"))
+                : Executors.newFixedThreadPool(concurrency);
+        List<Future<long[]>> sessions = new ArrayList<Future<long[]>>();
+        for (int i = 0; i < users; i++) {
+            final int user = i;
+            sessions.add(pool.submit(new Callable<long[]>() {
+                public long[] call() throws Exception {
+                    return driver.runSession("load-user-" + user);
+                }
+            }));
+        }
+        List<Long> acceptLatencies = new ArrayList<Long>();
+        List<Long> totalLatencies = new ArrayList<Long>();
+        List<String> failures = new ArrayList<String>();
+        for (Future<long[]> session : sessions) {
+            try {
+                long[] latencies = session.get();
+                acceptLatencies.add(latencies[0]);
+                totalLatencies.add(latencies[1]);
+            } catch (ExecutionException e) {
+                failures.add(e.getCause().toString());
+            }
+        }
+        pool.shutdown();
+        long elapsed = System.currentTimeMillis() - start;
+
+        console.println(users + " sessions, " + concurrency + " at a time, in " + elapsed + "ms: "
+                + totalLatencies.size() + " succeeded, " + failures.size() + " failed");
+        console.println("/people answered  " + percentiles(acceptLatencies));
+        console.println("result read       " + percentiles(totalLatencies));
+        console.println("peak platform threads: " + ManagementFactory.getThreadMXBean().getPeakThreadCount()
+                + (VirtualThreads.isEnabled() ? ", on virtual threads" : ""));
+        if (standIn != null) {
+            console.println("stand-in feed: " + standIn.getFeedRequests() + " requests, "
+                    + standIn.getFeedBytes() / 1024 + "KB sent, "
+                    + standIn.getInjectedErrors() + " injected errors, " + standIn.getRateLimited() + " rate limited");
+        }
+        for (String failure : failures) {
+            console.println("failed: " + failure);
+        }
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * Runs one user's session
+     * @param code authorization code to connect with, the stand-in gives every code its own account
+     * @return milliseconds until /people answered, and until the whole result was read
+     */
+    public long[] runSession(String code) throws IOException, InterruptedException {
+        Session session = new Session();
+        String page = session.request("GET", baseUrl, null, 200);
+        Matcher state = STATE_PATTERN.matcher(page);
+        if (!state.find()) {
+            throw new IOException("No state in the index page");
+        }
+        session.request("POST", baseUrl + "connect?state=" + state.group(1), code, 200);
+
+        long start = System.currentTimeMillis();
+        Map<?, ?> job = GSON.fromJson(session.request("GET", baseUrl + "people", null, 202), Map.class);
+        long accepted = System.currentTimeMillis() - start;
+        Map<?, ?> progress = job;
+        while (!"DONE".equals(progress.get("status"))) {
+            if ("FAILED".equals(progress.get("status"))) {
+                throw new IOException("Job failed: " + progress.get("error"));
+            }
+            if (System.currentTimeMillis() - start > JOB_TIMEOUT_MILLIS) {
+                throw new IOException("Job timed out: " + progress);
+            }
+            Thread.sleep(POLL_MILLIS);
+            progress = GSON.fromJson(session.request("GET", baseUrl + job.get("statusUrl"), null, 200), Map.class);
+        }
+        session.request("GET", baseUrl + job.get("resultUrl"), null, 200);
+        return new long[]{accepted, System.currentTimeMillis() - start};
+    }
+
+    private static void waitForServer(String baseUrl) throws InterruptedException, IOException {
+        long deadline = System.currentTimeMillis() + 30 * 1000;
+        while (true) {
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl).openConnection();
+                connection.getResponseCode();
+                connection.disconnect();
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(200);
+            }
+        }
+    }
+
+    /**
+     * @return p50/p90/p99/max of the latencies, nearest rank
+     */
+    static String percentiles(List<Long> latencies) {
+        if (latencies.isEmpty()) {
+            return "n/a";
+        }
+        Long[] sorted = latencies.toArray(new Long[latencies.size()]);
+        Arrays.sort(sorted);
+        return "p50=" + percentile(sorted, 50) + "ms p90=" + percentile(sorted, 90) + "ms p99="
+                + percentile(sorted, 99) + "ms max=" + sorted[sorted.length - 1] + "ms";
+    }
+
+    static long percentile(Long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * A browser session: keeps the session cookie between requests
+     */
+    private static class Session {
+        private String cookie;
+
+        private String request(String method, String url, String body, int expectedStatus) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            try {
+                connection.setRequestMethod(method);
+                if (cookie != null) {
+                    connection.setRequestProperty("Cookie", cookie);
+                }
+                if (body != null) {
+                    connection.setDoOutput(true);
+                    connection.setRequestProperty("Content-Type", "application/octet-stream; charset=utf-8");
+                    OutputStream output = connection.getOutputStream();
+                    output.write(body.getBytes("UTF-8"));
+                    output.close();
+                }
+                int status = connection.getResponseCode();
+                String setCookie = connection.getHeaderField("Set-Cookie");
+                if (setCookie != null) {
+                    cookie = setCookie.split(";")[0];
+                }
+                InputStream input = (status < 400) ? connection.getInputStream() : connection.getErrorStream();
+                String response = (input == null) ? "" : IOUtils.toString(input, "UTF-8");
+                if (status != expectedStatus) {
+                    throw new IOException(method + " " + url + " returned " + status + ": " + response);
+                }
+                return response;
+            } finally {
+                connection.disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.google.plus.samples.quickstart;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class PhoneNumberNormalizerTest {
+    private final PhoneNumberNormalizer normalizer = PhoneNumberNormalizer.DEFAULT;
+
+    @Test
+    public void testSameNumberDifferentFormats() throws Exception {
+        long expected = normalizer.normalize("4155551234");
+        assertTrue("valid number", expected != PhoneNumberNormalizer.INVALID);
+        assertEquals(expected, normalizer.normalize("(415) 555-1234"));
+        assertEquals(expected, normalizer.normalize("+1 415.555.1234"));
+        assertEquals(expected, normalizer.normalize("1-415-555-1234"));
+        assertEquals(expected, normalizer.normalize("011 1 415 555 1234"));
+        assertEquals("extension is dropped", expected, normalizer.normalize("415-555-1234 x12"));
+        assertEquals("extension is dropped", expected, normalizer.normalize("415-555-1234 ext. 12"));
+        assertEquals("letters map to keypad", expected, normalizer.normalize("415-555-12DG"));
+    }
+
+    @Test
+    public void testInternational() throws Exception {
+        assertEquals(normalizer.normalize("+44 20 7946 0000"), normalizer.normalize("00442079460000"));
+        assertFalse("different country codes",
+                normalizer.normalize("+44 20 7946 0000") == normalizer.normalize("+4 42079460000 0"));
+
+        PhoneNumberNormalizer uk = new PhoneNumberNormalizer(44);
+        assertEquals("trunk 0 is dropped for the default country",
+                normalizer.normalize("+44 20 7946 0000"), uk.normalize("020 7946 0000"));
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        assertEquals(PhoneNumberNormalizer.INVALID, normalizer.normalize(null));
+        assertEquals(PhoneNumberNormalizer.INVALID, normalizer.normalize(""));
+        assertEquals(PhoneNumberNormalizer.INVALID, normalizer.normalize("911"));
+        assertEquals(PhoneNumberNormalizer.INVALID, normalizer.normalize("+1 234 567 890 123 456 789"));
+    }
+}
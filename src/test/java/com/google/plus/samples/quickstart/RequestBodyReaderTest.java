@@ -0,0 +1,99 @@
+package com.google.plus.samples.quickstart;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class RequestBodyReaderTest {
+    @Test
+    /**
+     * Non-ASCII bodies come through as UTF-8, with or without a content length
+     */
+    public void testUtf8() throws Exception {
+        RequestBodyReader reader = new RequestBodyReader(1024, 1000);
+        byte[] body = "4/Вася-Пупкин".getBytes("UTF-8");
+        assertEquals("4/Вася-Пупкин", reader.readString(new ByteArrayInputStream(body), body.length));
+        assertEquals("4/Вася-Пупкин", reader.readString(new ByteArrayInputStream(body), -1));
+    }
+
+    @Test
+    /**
+     * Too large is refused up front when declared, and as soon as it goes over the limit when not
+     */
+    public void testTooLarge() throws Exception {
+        RequestBodyReader reader = new RequestBodyReader(10 * 1024, 1000);
+        try {
+            reader.readString(new EndlessStream(0), 20 * 1024);
+            fail("declared too large");
+        } catch (RequestBodyReader.TooLargeException expected) {
+        }
+        EndlessStream endless = new EndlessStream(0);
+        try {
+            reader.readString(endless, -1);
+            fail("too large");
+        } catch (RequestBodyReader.TooLargeException expected) {
+        }
+        assertEquals("stopped at the limit", 12 * 1024, endless.numRead);
+    }
+
+    @Test
+    /**
+     * A body trickling in is cut off at the deadline
+     */
+    public void testSlowBody() throws Exception {
+        RequestBodyReader reader = new RequestBodyReader(1024 * 1024, 200);
+        long start = System.currentTimeMillis();
+        try {
+            reader.readString(new EndlessStream(50), -1);
+            fail("too slow");
+        } catch (RequestBodyReader.TimeoutException expected) {
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("took " + elapsed + "ms", elapsed < 1000);
+    }
+
+    /**
+     * Body that never ends, handing out 4K at a time with a delay
+     */
+    private static class EndlessStream extends InputStream {
+        private final long delay;
+        private int numRead;
+
+        private EndlessStream(long inDelay) {
+            delay = inDelay;
+        }
+
+        @Override
+        public int read() throws IOException {
+            numRead++;
+            return 'a';
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            int count = Math.min(length, 4 * 1024);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = 'a';
+            }
+            numRead += count;
+            return count;
+        }
+    }
+}
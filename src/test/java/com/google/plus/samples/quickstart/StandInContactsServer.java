@@ -0,0 +1,768 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.gdata.data.DateTime;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.servlet.ServletHandler;
+import org.mortbay.jetty.servlet.ServletHolder;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stand-in for the Google contacts feed and token endpoints, to run the whole connect/people path offline.
+ *
+ * Serves Atom feed pages of its contacts at {@link #getFeedUrl()}, honoring start-index, max-results and
+ * updated-min (with deleted entries as tombstones, like showdeleted=true), and hands out a token for any
+ * authorization code at {@link #getTokenServerUrl()}. Every access token gets its own account, all with the
+ * same contacts. Pages are gzipped if asked to be, and entries have the links, group memberships and such of the
+ * full projection unless there's a fields selection. Contacts are synthetic or recorded (any Atom file
+ * {@link AtomContactSource} reads, ie a contacts cache file).
+ * Batch updates, deletes and queries (by id, with etags) go to {@link #getBatchUrl()}, like the real feed's batch
+ * URL, and change the contacts for every account.
+ * Latency, errors and a rate limit can be injected into the feed and batch requests; errors are per operation
+ * for batches.
+ *
+ * Run standalone with -Dstandin.port=..., -Dstandin.contacts=... or -Dstandin.atomFile=...,
+ * -Dstandin.latencyMillis=..., -Dstandin.errorRate=... and -Dstandin.maxRequestsPerSecond=...
+ * With -Ddeduper.virtualThreads=true every request gets a virtual thread, like the deduper server's.
+ *
+ * @author toli kuznets
+ * @version $Id$
+ */
+public class StandInContactsServer {
+    public static final String FEED_PATH = "/m8/feeds/contacts/default/full";
+    public static final String BATCH_PATH = FEED_PATH + "/batch";
+    public static final String TOKEN_PATH = "/o/oauth2/token";
+    private static final String BATCH_NS = "http://schemas.google.com/gdata/batch";
+    private static final String OPENSEARCH_NS = "http://a9.com/-/spec/opensearch/1.1/";
+    private static final String CONTACT_KIND = "http://schemas.google.com/contact/2008#contact";
+    private static final String OTHER_REL = "http://schemas.google.com/g/2005#other";
+    private static final String APP_NS = "http://www.w3.org/2007/app";
+    private static final String GCONTACT_NS = "http://schemas.google.com/contact/2008";
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+    private static final String[] FIRST_NAMES = {
+            "Anna", "Boris", "Carlos", "Dana", "Elena", "Frank", "Grace", "Hiro", "Irina", "James", "Kate", "Leo"
+    };
+
+    private final Server server;
+    // by id, in the order they were last updated
+    private final Map<String, ContactRecord> contacts = new LinkedHashMap<String, ContactRecord>();
+    private final Map<String, Long> deleted = new LinkedHashMap<String, Long>();
+    private final AtomicInteger feedRequests = new AtomicInteger();
+    private final AtomicLong feedBytes = new AtomicLong();
+    // client address and port of every connection feed pages were asked for on
+    private final Set<String> feedConnections = Collections.synchronizedSet(new HashSet<String>());
+    private final AtomicInteger batchRequests = new AtomicInteger();
+    private final AtomicInteger batchOperations = new AtomicInteger();
+    private final AtomicInteger injectedErrors = new AtomicInteger();
+    private final AtomicInteger rateLimited = new AtomicInteger();
+    private final Random random = new Random();
+    private volatile long minLatencyMillis;
+    private volatile long maxLatencyMillis;
+    private volatile double errorRate;
+    private volatile int maxRequestsPerSecond;
+    private long rateWindowStart;
+    private int rateWindowRequests;
+
+    /**
+     * @param port port to listen on, 0 for any free one
+     */
+    public StandInContactsServer(int port) {
+        server = new Server(port);
+        if (VirtualThreads.isEnabled()) {
+            // latency is a sleep on the request thread, which would use up a pool of platform threads
+            server.setThreadPool(new VirtualThreadPool("standin-request-"));
+        }
+        ServletHandler servletHandler = new ServletHandler();
+        servletHandler.addServletWithMapping(new ServletHolder(new FeedServlet()), FEED_PATH);
+        servletHandler.addServletWithMapping(new ServletHolder(new BatchServlet()), BATCH_PATH);
+        servletHandler.addServletWithMapping(new ServletHolder(new TokenServlet()), TOKEN_PATH);
+        server.setHandler(servletHandler);
+    }
+
+    public static void main(String[] args) throws Exception {
+        StandInContactsServer standIn = new StandInContactsServer(Integer.getInteger("standin.port", 4568));
+        String atomFile = System.getProperty("standin.atomFile");
+        if (atomFile != null) {
+            standIn.load(new File(atomFile));
+        } else {
+            standIn.addSyntheticContacts(Integer.getInteger("standin.contacts", 10000), 42);
+        }
+        standIn.configure(System.getProperties());
+        standIn.start();
+        System.out.println("Serving " + standIn.getNumContacts() + " contacts at " + standIn.getFeedUrl()
+                + ", tokens at " + standIn.getTokenServerUrl());
+        standIn.server.join();
+    }
+
+    /**
+     * Sets latency, errors and rate limit from standin.latencyMillis (ie "50" or "20-200"), standin.errorRate
+     * and standin.maxRequestsPerSecond
+     */
+    public void configure(Map<Object, Object> properties) {
+        String latency = (String) properties.get("standin.latencyMillis");
+        if (latency != null) {
+            String[] range = latency.split("-");
+            setLatency(Long.parseLong(range[0]), Long.parseLong(range[range.length - 1]));
+        }
+        if (properties.get("standin.errorRate") != null) {
+            setErrorRate(Double.parseDouble((String) properties.get("standin.errorRate")));
+        }
+        if (properties.get("standin.maxRequestsPerSecond") != null) {
+            setMaxRequestsPerSecond(Integer.parseInt((String) properties.get("standin.maxRequestsPerSecond")));
+        }
+    }
+
+    public void start() throws Exception {
+        server.start();
+    }
+
+    public void stop() throws Exception {
+        server.stop();
+    }
+
+    public String getFeedUrl() {
+        return getBaseUrl() + FEED_PATH;
+    }
+
+    public String getBatchUrl() {
+        return getBaseUrl() + BATCH_PATH;
+    }
+
+    public String getTokenServerUrl() {
+        return getBaseUrl() + TOKEN_PATH;
+    }
+
+    private String getBaseUrl() {
+        return "http://localhost:" + server.getConnectors()[0].getLocalPort();
+    }
+
+    /**
+     * Each feed request takes between min and max milliseconds
+     */
+    public void setLatency(long minMillis, long maxMillis) {
+        minLatencyMillis = minMillis;
+        maxLatencyMillis = Math.max(minMillis, maxMillis);
+    }
+
+    /**
+     * @param inErrorRate share of feed requests (and of batch operations) that fail with a 500
+     */
+    public void setErrorRate(double inErrorRate) {
+        errorRate = inErrorRate;
+    }
+
+    /**
+     * @param inMaxRequestsPerSecond feed requests over this within a second get a 503, 0 for no limit
+     */
+    public void setMaxRequestsPerSecond(int inMaxRequestsPerSecond) {
+        maxRequestsPerSecond = inMaxRequestsPerSecond;
+    }
+
+    /**
+     * Adds or updates the contact, as changed now; always later than its last change, so etags are never reused
+     */
+    public synchronized void put(ContactRecord record) {
+        ContactRecord previous = contacts.remove(record.getId());
+        long now = Math.max(System.currentTimeMillis(), (previous == null) ? 0 : previous.getUpdated() + 1);
+        contacts.put(record.getId(), new ContactRecord(record.getId(), now, record.getFullName(),
+                record.getEmails(), record.getPrimaryEmail(), record.getPhoneNumbers()));
+        deleted.remove(record.getId());
+    }
+
+    public synchronized void delete(String id) {
+        if (contacts.remove(id) != null) {
+            deleted.put(id, System.currentTimeMillis());
+        }
+    }
+
+    public synchronized ContactRecord get(String id) {
+        return contacts.get(id);
+    }
+
+    /**
+     * Adds the contacts of a recorded Atom feed
+     */
+    public void load(File atomFile) throws IOException {
+        AtomContactSource source = new AtomContactSource(new FileInputStream(atomFile));
+        try {
+            ContactRecord record;
+            while ((record = source.nextRecord()) != null) {
+                put(record);
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Adds count made up contacts, about one in five another entry for an earlier person
+     * (same name in another case, same email with no name, or same phone written differently)
+     */
+    public void addSyntheticContacts(int count, long seed) {
+        Random generator = new Random(seed);
+        int numPeople = 0;
+        for (int i = 0; i < count; i++) {
+            String id = "http://www.google.com/m8/feeds/contacts/standin/base/" + Integer.toHexString(i);
+            List<String> none = Collections.emptyList();
+            if (numPeople > 0 && generator.nextInt(5) == 0) {
+                int person = generator.nextInt(numPeople);
+                switch (generator.nextInt(3)) {
+                    case 0:
+                        put(new ContactRecord(id, 0, fullName(person).toUpperCase(),
+                                Arrays.asList("work" + person + "@standin.example.com"), null, none));
+                        break;
+                    case 1:
+                        put(new ContactRecord(id, 0, null, Arrays.asList(email(person)), null, none));
+                        break;
+                    default:
+                        put(new ContactRecord(id, 0, null, none, null, Arrays.asList("+1 " + phone(person))));
+                }
+            } else {
+                int person = numPeople++;
+                put(new ContactRecord(id, 0, fullName(person), Arrays.asList(email(person)), email(person),
+                        generator.nextBoolean() ? Arrays.asList(phone(person)) : none));
+            }
+        }
+    }
+
+    private static String fullName(int person) {
+        return FIRST_NAMES[person % FIRST_NAMES.length] + " Standin" + Integer.toString(person, 36);
+    }
+
+    private static String email(int person) {
+        return FIRST_NAMES[person % FIRST_NAMES.length].toLowerCase() + "." + person + "@standin.example.com";
+    }
+
+    private static String phone(int person) {
+        return String.format("415-%03d-%04d", 200 + (person / 10000) % 800, person % 10000);
+    }
+
+    public synchronized int getNumContacts() {
+        return contacts.size();
+    }
+
+    public int getFeedRequests() {
+        return feedRequests.get();
+    }
+
+    /**
+     * @return bytes of feed pages sent, after gzip if they were asked for gzipped
+     */
+    public long getFeedBytes() {
+        return feedBytes.get();
+    }
+
+    /**
+     * @return connections feed pages were asked for on, fewer than the requests if clients keep them alive
+     */
+    public int getFeedConnections() {
+        return feedConnections.size();
+    }
+
+    public int getBatchRequests() {
+        return batchRequests.get();
+    }
+
+    public int getBatchOperations() {
+        return batchOperations.get();
+    }
+
+    public int getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    public int getRateLimited() {
+        return rateLimited.get();
+    }
+
+    private synchronized boolean overRateLimit() {
+        if (maxRequestsPerSecond <= 0) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (now - rateWindowStart >= 1000) {
+            rateWindowStart = now;
+            rateWindowRequests = 0;
+        }
+        return ++rateWindowRequests > maxRequestsPerSecond;
+    }
+
+    /**
+     * @return contacts changed since updatedMin, followed by the ones deleted since then if it's set
+     */
+    private synchronized List<FeedEntry> matching(long updatedMin) {
+        List<FeedEntry> matching = new ArrayList<FeedEntry>();
+        for (ContactRecord record : contacts.values()) {
+            if (record.getUpdated() >= updatedMin) {
+                matching.add(new FeedEntry(record.getId(), record.getUpdated(), record));
+            }
+        }
+        if (updatedMin > 0) {
+            for (Map.Entry<String, Long> tombstone : deleted.entrySet()) {
+                if (tombstone.getValue() >= updatedMin) {
+                    matching.add(new FeedEntry(tombstone.getKey(), tombstone.getValue(), null));
+                }
+            }
+        }
+        return matching;
+    }
+
+    private static int intParameter(HttpServletRequest request, String name, int defaultValue) {
+        String value = request.getParameter(name);
+        return (value == null) ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Checks the token, waits out the latency and applies the rate limit
+     * @return false if the request was already answered with an error
+     */
+    private boolean admit(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String authorization = request.getHeader("Authorization");
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Token invalid");
+            return false;
+        }
+        long latency = minLatencyMillis + (long) (random.nextDouble() * (maxLatencyMillis - minLatencyMillis));
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (overRateLimit()) {
+            rateLimited.incrementAndGet();
+            response.setHeader("Retry-After", "1");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Rate limit exceeded");
+            return false;
+        }
+        return true;
+    }
+
+    private boolean injectError() {
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            injectedErrors.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private static String etag(long updated) {
+        return "\"" + updated + "\"";
+    }
+
+    private static XMLStreamWriter startFeed(OutputStream output, String id, String title)
+            throws XMLStreamException {
+        XMLStreamWriter writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(output, "UTF-8");
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.setDefaultNamespace(AtomContactSource.ATOM_NS);
+        writer.setPrefix("gd", AtomContactSource.GD_NS);
+        writer.setPrefix("openSearch", OPENSEARCH_NS);
+        writer.setPrefix("batch", BATCH_NS);
+        writer.setPrefix("app", APP_NS);
+        writer.setPrefix("gContact", GCONTACT_NS);
+        writer.writeStartElement(AtomContactSource.ATOM_NS, "feed");
+        writer.writeDefaultNamespace(AtomContactSource.ATOM_NS);
+        writer.writeNamespace("gd", AtomContactSource.GD_NS);
+        writer.writeNamespace("openSearch", OPENSEARCH_NS);
+        writer.writeNamespace("batch", BATCH_NS);
+        writer.writeNamespace("app", APP_NS);
+        writer.writeNamespace("gContact", GCONTACT_NS);
+        writeText(writer, AtomContactSource.ATOM_NS, "id", id);
+        writeText(writer, AtomContactSource.ATOM_NS, "updated", new DateTime(System.currentTimeMillis()).toString());
+        writeTitle(writer, title);
+        return writer;
+    }
+
+    /**
+     * @param reply outcome of the batch operation on the entry, null in a feed page
+     * @param full true for everything the real full projection has (links, group memberships and such), false
+     * for only the id, updated time, deleted mark, name, emails and phone numbers of a partial response
+     */
+    private static void writeEntry(XMLStreamWriter writer, FeedEntry entry, BatchOperation reply, boolean full)
+            throws XMLStreamException {
+        ContactRecord record = entry.record;
+        writer.writeStartElement(AtomContactSource.ATOM_NS, "entry");
+        if (record != null) {
+            writer.writeAttribute("gd", AtomContactSource.GD_NS, "etag", etag(entry.updated));
+        }
+        if (reply != null) {
+            writeText(writer, BATCH_NS, "id", reply.batchId);
+            writer.writeEmptyElement(BATCH_NS, "operation");
+            writer.writeAttribute("type", reply.type);
+            writer.writeEmptyElement(BATCH_NS, "status");
+            writer.writeAttribute("code", Integer.toString(reply.status));
+            writer.writeAttribute("reason", reply.reason);
+        }
+        writeText(writer, AtomContactSource.ATOM_NS, "id", entry.id);
+        writeText(writer, AtomContactSource.ATOM_NS, "updated", new DateTime(entry.updated).toString());
+        if (full) {
+            writer.writeEmptyElement(AtomContactSource.ATOM_NS, "category");
+            writer.writeAttribute("scheme", "http://schemas.google.com/g/2005#kind");
+            writer.writeAttribute("term", CONTACT_KIND);
+        }
+        if (record == null) {
+            if (reply == null) {
+                writer.writeEmptyElement(AtomContactSource.GD_NS, "deleted");
+            }
+            writer.writeEndElement();
+            return;
+        }
+        if (full) {
+            writeExtras(writer, entry);
+        }
+        if (record.getFullName() != null) {
+            if (full) {
+                writeTitle(writer, record.getFullName());
+            }
+            writer.writeStartElement(AtomContactSource.GD_NS, "name");
+            writeText(writer, AtomContactSource.GD_NS, "fullName", record.getFullName());
+            writer.writeEndElement();
+        }
+        for (String email : record.getEmails()) {
+            writer.writeEmptyElement(AtomContactSource.GD_NS, "email");
+            writer.writeAttribute("rel", OTHER_REL);
+            writer.writeAttribute("address", email);
+            if (email.equals(record.getPrimaryEmail())) {
+                writer.writeAttribute("primary", "true");
+            }
+        }
+        for (String phone : record.getPhoneNumbers()) {
+            writer.writeStartElement(AtomContactSource.GD_NS, "phoneNumber");
+            writer.writeAttribute("rel", OTHER_REL);
+            writer.writeCharacters(phone);
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+    }
+
+    /**
+     * What the full projection has on every entry that the deduper doesn't read
+     */
+    private static void writeExtras(XMLStreamWriter writer, FeedEntry entry) throws XMLStreamException {
+        writeText(writer, APP_NS, "edited", new DateTime(entry.updated).toString());
+        String photoId = entry.id.replace("/contacts/standin/base/", "/photos/media/standin/");
+        writeLink(writer, "http://schemas.google.com/contacts/2008/rel#photo", "image/*", photoId);
+        writeLink(writer, "self", "application/atom+xml", entry.id.replace("/base/", "/full/"));
+        writeLink(writer, "edit", "application/atom+xml", entry.id.replace("/base/", "/full/"));
+        for (String group : new String[]{"6", "27e4b6f20c5f1f04"}) {
+            writer.writeEmptyElement(GCONTACT_NS, "groupMembershipInfo");
+            writer.writeAttribute("deleted", "false");
+            writer.writeAttribute("href", "http://www.google.com/m8/feeds/groups/standin/base/" + group);
+        }
+        writer.writeEmptyElement(AtomContactSource.GD_NS, "extendedProperty");
+        writer.writeAttribute("name", "sync-client-id");
+        writer.writeAttribute("value", Long.toHexString(entry.updated) + "-" + entry.id.hashCode());
+    }
+
+    private static void writeLink(XMLStreamWriter writer, String rel, String type, String href)
+            throws XMLStreamException {
+        writer.writeEmptyElement(AtomContactSource.ATOM_NS, "link");
+        writer.writeAttribute("rel", rel);
+        writer.writeAttribute("type", type);
+        writer.writeAttribute("href", href);
+    }
+
+    private static void writeTitle(XMLStreamWriter writer, String title) throws XMLStreamException {
+        writer.writeStartElement(AtomContactSource.ATOM_NS, "title");
+        writer.writeAttribute("type", "text");
+        writer.writeCharacters(title);
+        writer.writeEndElement();
+    }
+
+    private static void writeText(XMLStreamWriter writer, String namespace, String name, String text)
+            throws XMLStreamException {
+        writer.writeStartElement(namespace, name);
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+    }
+
+    /**
+     * Contacts feed pages, for the account of the request's access token
+     */
+    private class FeedServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response)
+                throws ServletException, IOException {
+            feedRequests.incrementAndGet();
+            feedConnections.add(request.getRemoteAddr() + ":" + request.getRemotePort());
+            if (!admit(request, response)) {
+                return;
+            }
+            if (injectError()) {
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Injected error");
+                return;
+            }
+            int startIndex;
+            int maxResults;
+            long updatedMin;
+            try {
+                startIndex = intParameter(request, "start-index", 1);
+                maxResults = intParameter(request, "max-results", 25);
+                String updatedMinParameter = request.getParameter("updated-min");
+                updatedMin = (updatedMinParameter == null) ? 0
+                        : DateTime.parseDateTime(updatedMinParameter).getValue();
+            } catch (IllegalArgumentException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                return;
+            }
+            String account = request.getHeader("Authorization").substring("Bearer ".length())
+                    + "@standin.example.com";
+            List<FeedEntry> matching = matching(updatedMin);
+            // any fields selection gets the partial response of the fields HttpContactFeedClient asks for
+            boolean full = request.getParameter("fields") == null;
+            String acceptEncoding = request.getHeader("Accept-Encoding");
+            boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+            response.setContentType("application/atom+xml; charset=UTF-8");
+            response.setHeader("GData-Version", "3.0");
+            CountingOutputStream counter = new CountingOutputStream(response.getOutputStream());
+            OutputStream output;
+            if (gzip) {
+                response.setHeader("Content-Encoding", "gzip");
+                output = new GZIPOutputStream(counter, 64 * 1024);
+            } else {
+                output = new BufferedOutputStream(counter, 64 * 1024);
+            }
+            try {
+                writePage(output, account, matching, startIndex, maxResults, full);
+            } catch (XMLStreamException e) {
+                throw new IOException("Failed to write feed page", e);
+            }
+            if (gzip) {
+                ((GZIPOutputStream) output).finish();
+            }
+            output.flush();
+            feedBytes.addAndGet(counter.getByteCount());
+        }
+
+        private void writePage(OutputStream output, String account, List<FeedEntry> matching, int startIndex,
+                               int maxResults, boolean full) throws XMLStreamException {
+            XMLStreamWriter writer = startFeed(output, account, account + "'s Contacts");
+            writeText(writer, OPENSEARCH_NS, "totalResults", Integer.toString(matching.size()));
+            writeText(writer, OPENSEARCH_NS, "startIndex", Integer.toString(startIndex));
+            writeText(writer, OPENSEARCH_NS, "itemsPerPage", Integer.toString(maxResults));
+            for (int i = startIndex - 1; i < startIndex - 1 + maxResults && i < matching.size(); i++) {
+                writeEntry(writer, matching.get(i), null, full);
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        }
+    }
+
+    /**
+     * Batch queries, updates and deletes of contacts by id; a gd:etag on an entry has to match the contact's
+     */
+    private class BatchServlet extends HttpServlet {
+        @Override
+        protected void doPost(HttpServletRequest request, HttpServletResponse response)
+                throws ServletException, IOException {
+            batchRequests.incrementAndGet();
+            if (!admit(request, response)) {
+                return;
+            }
+            List<BatchOperation> operations;
+            try {
+                operations = readBatch(request);
+            } catch (XMLStreamException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                return;
+            }
+            if (operations.size() > ContactWriteBack.MAX_BATCH_SIZE) {
+                response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Too many operations");
+                return;
+            }
+            List<FeedEntry> entries = new ArrayList<FeedEntry>();
+            for (BatchOperation operation : operations) {
+                batchOperations.incrementAndGet();
+                entries.add(apply(operation));
+            }
+            response.setContentType("application/atom+xml; charset=UTF-8");
+            response.setHeader("GData-Version", "3.0");
+            OutputStream output = new BufferedOutputStream(response.getOutputStream(), 64 * 1024);
+            try {
+                XMLStreamWriter writer = startFeed(output, getBatchUrl(), "Batch Feed");
+                for (int i = 0; i < operations.size(); i++) {
+                    writeEntry(writer, entries.get(i), operations.get(i), true);
+                }
+                writer.writeEndElement();
+                writer.writeEndDocument();
+                writer.close();
+            } catch (XMLStreamException e) {
+                throw new IOException("Failed to write batch response", e);
+            }
+            output.flush();
+        }
+
+        /**
+         * Carries out the operation and sets its status
+         * @return the entry to answer with
+         */
+        private FeedEntry apply(BatchOperation operation) {
+            synchronized (StandInContactsServer.this) {
+                ContactRecord current = contacts.get(operation.id);
+                if (injectError()) {
+                    return operation.reply(500, "Injected error", null);
+                }
+                if (current == null) {
+                    return operation.reply(404, "Not found", null);
+                }
+                if (operation.etag != null && !operation.etag.equals(etag(current.getUpdated()))) {
+                    return operation.reply(412, "Etags mismatch", current);
+                }
+                if ("update".equals(operation.type)) {
+                    put(operation.record);
+                    return operation.reply(200, "Success", contacts.get(operation.id));
+                } else if ("delete".equals(operation.type)) {
+                    delete(operation.id);
+                    return operation.reply(200, "Success", null);
+                } else if ("query".equals(operation.type)) {
+                    return operation.reply(200, "Success", current);
+                }
+                return operation.reply(400, "Unsupported operation " + operation.type, null);
+            }
+        }
+
+        private List<BatchOperation> readBatch(HttpServletRequest request) throws IOException, XMLStreamException {
+            List<BatchOperation> operations = new ArrayList<BatchOperation>();
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(request.getInputStream());
+            try {
+                BatchOperation operation = null;
+                String fullName = null;
+                List<String> emails = new ArrayList<String>();
+                String primaryEmail = null;
+                List<String> phones = new ArrayList<String>();
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = reader.getLocalName();
+                        String namespace = reader.getNamespaceURI();
+                        if ("entry".equals(name)) {
+                            operation = new BatchOperation(reader.getAttributeValue(AtomContactSource.GD_NS, "etag"));
+                            fullName = null;
+                            emails.clear();
+                            primaryEmail = null;
+                            phones.clear();
+                        } else if (operation == null) {
+                            continue;
+                        } else if (BATCH_NS.equals(namespace) && "id".equals(name)) {
+                            operation.batchId = reader.getElementText();
+                        } else if (BATCH_NS.equals(namespace) && "operation".equals(name)) {
+                            operation.type = reader.getAttributeValue(null, "type");
+                        } else if (AtomContactSource.ATOM_NS.equals(namespace) && "id".equals(name)) {
+                            operation.id = reader.getElementText();
+                        } else if ("fullName".equals(name)) {
+                            fullName = reader.getElementText();
+                        } else if ("email".equals(name)) {
+                            String address = reader.getAttributeValue(null, "address");
+                            emails.add(address);
+                            if ("true".equals(reader.getAttributeValue(null, "primary"))) {
+                                primaryEmail = address;
+                            }
+                        } else if ("phoneNumber".equals(name)) {
+                            phones.add(reader.getElementText());
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && "entry".equals(reader.getLocalName())
+                            && operation != null) {
+                        operation.record = new ContactRecord(operation.id, 0, fullName,
+                                new ArrayList<String>(emails), primaryEmail, new ArrayList<String>(phones));
+                        operations.add(operation);
+                        operation = null;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            return operations;
+        }
+    }
+
+    /**
+     * Exchanges any authorization code (or refresh token) for an access token named after it
+     */
+    private static class TokenServlet extends HttpServlet {
+        @Override
+        protected void doPost(HttpServletRequest request, HttpServletResponse response)
+                throws ServletException, IOException {
+            String code = request.getParameter("code");
+            // a refreshed token stays the same, so it stays on the same account
+            String token = (code != null) ? "standin-" + code.replaceAll("[^A-Za-z0-9_-]", "")
+                    : request.getParameter("refresh_token");
+            response.setContentType("application/json");
+            if (token == null) {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                response.getWriter().print("{\"error\":\"invalid_request\"}");
+                return;
+            }
+            response.getWriter().print("{\"access_token\":\"" + token + "\",\"token_type\":\"Bearer\","
+                    + "\"expires_in\":3600,\"refresh_token\":\"" + token + "\"}");
+        }
+    }
+
+    /**
+     * One operation of a batch request, and how it went
+     */
+    private static class BatchOperation {
+        private final String etag;
+        private String batchId;
+        private String type;
+        private String id;
+        private ContactRecord record;
+        private int status;
+        private String reason;
+
+        private BatchOperation(String inEtag) {
+            etag = inEtag;
+        }
+
+        private FeedEntry reply(int inStatus, String inReason, ContactRecord current) {
+            status = inStatus;
+            reason = inReason;
+            return (current != null) ? new FeedEntry(current.getId(), current.getUpdated(), current)
+                    : new FeedEntry(id, System.currentTimeMillis(), null);
+        }
+    }
+
+    /**
+     * A contact as of its last update, or a tombstone if the record is null
+     */
+    private static class FeedEntry {
+        private final String id;
+        private final long updated;
+        private final ContactRecord record;
+
+        private FeedEntry(String inId, long inUpdated, ContactRecord inRecord) {
+            id = inId;
+            updated = inUpdated;
+            record = inRecord;
+        }
+    }
+}
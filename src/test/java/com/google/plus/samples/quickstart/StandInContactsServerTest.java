@@ -0,0 +1,243 @@
+package com.google.plus.samples.quickstart;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.gdata.client.contacts.ContactsService;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.contacts.ContactFeed;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class StandInContactsServerTest {
+    private StandInContactsServer standIn;
+
+    @Before
+    public void setUp() throws Exception {
+        standIn = new StandInContactsServer(0);
+        standIn.addSyntheticContacts(60, 42);
+        standIn.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        standIn.stop();
+    }
+
+    @Test
+    /**
+     * Pages go by start-index and max-results, and the feed is the token's account
+     */
+    public void testPaging() throws Exception {
+        List<ContactRecord> all = new ArrayList<ContactRecord>();
+        for (int startIndex = 1; startIndex <= 60; startIndex += 25) {
+            AtomContactSource page = fetch("start-index=" + startIndex + "&max-results=25");
+            assertEquals("vasya@standin.example.com", page.getFeedId());
+            all.addAll(read(page));
+        }
+        assertEquals(60, all.size());
+        assertEquals("http://www.google.com/m8/feeds/contacts/standin/base/0", all.get(0).getId());
+        assertEquals("http://www.google.com/m8/feeds/contacts/standin/base/3b", all.get(59).getId());
+    }
+
+    @Test
+    /**
+     * With updated-min only what changed since comes back, deleted contacts included
+     */
+    public void testUpdatedMin() throws Exception {
+        long since = System.currentTimeMillis() + 1;
+        Thread.sleep(10);
+        standIn.put(new ContactRecord("http://www.google.com/m8/feeds/contacts/standin/base/5", 0, "Vasya Pupkin",
+                Arrays.asList("vasya@pupkin.com"), null, Collections.<String>emptyList()));
+        standIn.delete("http://www.google.com/m8/feeds/contacts/standin/base/7");
+
+        List<ContactRecord> changed = read(fetch("updated-min="
+                + URLEncoder.encode(new DateTime(since).toString(), "UTF-8") + "&showdeleted=true"));
+        assertEquals(2, changed.size());
+        assertEquals("Vasya Pupkin", changed.get(0).getFullName());
+        assertEquals("http://www.google.com/m8/feeds/contacts/standin/base/7", changed.get(1).getId());
+        assertEquals(59, read(fetch("max-results=100")).size());
+    }
+
+    @Test
+    /**
+     * No token, injected errors and going over the rate limit all fail the request
+     */
+    public void testFailures() throws Exception {
+        assertEquals(401, status(standIn.getFeedUrl(), null));
+        standIn.setErrorRate(1);
+        assertEquals(500, status(standIn.getFeedUrl(), "Bearer vasya"));
+        standIn.setErrorRate(0);
+        standIn.setMaxRequestsPerSecond(2);
+        int limited = 0;
+        for (int i = 0; i < 5; i++) {
+            if (status(standIn.getFeedUrl(), "Bearer vasya") == 503) {
+                limited++;
+            }
+        }
+        assertTrue("rate limited " + limited, limited >= 2);
+        assertEquals(limited, standIn.getRateLimited());
+    }
+
+    @Test
+    /**
+     * A write-back through the batch URL adds the merged emails to the survivor and deletes the absorbed contact,
+     * which then shows up as deleted in the feed
+     */
+    public void testBatchWriteBack() throws Exception {
+        String base = "http://www.google.com/m8/feeds/contacts/standin/base/";
+        ContactRecord survivor = standIn.get(base + "0");
+        GoogleContact merged = new GoogleContact(survivor.getId(), survivor.getFullName(), survivor.getEmails(),
+                survivor.getPrimaryEmail(), survivor.getPhoneNumbers());
+        merged.merge(new GoogleContact(base + "1", null, Arrays.asList("vasya@pupkin.com"), null,
+                Collections.<String>emptyList()));
+        merged.merge(new GoogleContact(base + "gone", null, Arrays.asList("head@pupkin.com"), null,
+                Collections.<String>emptyList()));
+        long since = System.currentTimeMillis();
+
+        ContactsService contactsService = new ContactsService("StandInContactsServerTest");
+        contactsService.setOAuth2Credentials(new GoogleCredential().setAccessToken("vasya"));
+        ContactWriteBack.Result result = new ContactWriteBack(
+                new GDataContactBatchClient(contactsService, new URL(standIn.getBatchUrl())), 100, 2, 2, 1, false)
+                .apply(Arrays.asList(merged));
+
+        assertEquals(1, result.getUpdated());
+        assertEquals(1, result.getDeleted());
+        assertEquals(Collections.singletonMap(base + "gone", 404), result.getFailures());
+        assertTrue(standIn.get(base + "0").getEmails().containsAll(Arrays.asList("vasya@pupkin.com",
+                "head@pupkin.com")));
+        assertEquals(survivor.getFullName(), standIn.get(base + "0").getFullName());
+        assertNull(standIn.get(base + "1"));
+        assertEquals(59, standIn.getNumContacts());
+        assertEquals("a query and a change for the update, and for the deletes", 4, standIn.getBatchRequests());
+
+        List<ContactRecord> changed = read(fetch("updated-min="
+                + URLEncoder.encode(new DateTime(since).toString(), "UTF-8") + "&showdeleted=true"));
+        assertEquals(2, changed.size());
+        assertEquals(base + "1", changed.get(1).getId());
+    }
+
+    @Test
+    /**
+     * A gzipped partial response has the same contacts as the full projection, in a fraction of the bytes
+     */
+    public void testCompressedPartialPages() throws Exception {
+        List<ContactRecord> full = read(fetch("max-results=100"));
+        long fullBytes = standIn.getFeedBytes();
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(standIn.getFeedUrl() + "?max-results=100&fields="
+                + URLEncoder.encode(HttpContactFeedClient.FIELDS, "UTF-8")).openConnection();
+        connection.setRequestProperty("Authorization", "Bearer vasya");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+        InputStream input = new GZIPInputStream(connection.getInputStream());
+        List<ContactRecord> partial = read(new AtomContactSource(input));
+        long partialBytes = standIn.getFeedBytes() - fullBytes;
+
+        assertEquals(full.size(), partial.size());
+        for (int i = 0; i < full.size(); i++) {
+            assertEquals(full.get(i).getId(), partial.get(i).getId());
+            assertEquals(full.get(i).getUpdated(), partial.get(i).getUpdated());
+            assertEquals(full.get(i).getFullName(), partial.get(i).getFullName());
+            assertEquals(full.get(i).getEmails(), partial.get(i).getEmails());
+            assertEquals(full.get(i).getPrimaryEmail(), partial.get(i).getPrimaryEmail());
+            assertEquals(full.get(i).getPhoneNumbers(), partial.get(i).getPhoneNumbers());
+        }
+        assertTrue(fullBytes + " bytes vs " + partialBytes, partialBytes * 4 < fullBytes);
+    }
+
+    @Test
+    /**
+     * HttpContactFeedClient pages go through the gdata parser into the same contacts the stand-in has
+     */
+    public void testHttpFeedClient() throws Exception {
+        ContactFeedClient client = new HttpContactFeedClient(new NetHttpTransport(),
+                new GoogleCredential().setAccessToken("vasya"), standIn.getFeedUrl());
+        ContactFeed page = client.fetchPage(26, 25, 0);
+        assertEquals("vasya@standin.example.com", page.getId());
+        assertEquals(60, page.getTotalResults());
+        assertEquals(25, page.getEntries().size());
+        ContactEntry entry = page.getEntries().get(0);
+        ContactRecord record = standIn.get(entry.getId());
+        assertEquals(record.getUpdated(), ContactRecord.fromEntry(entry).getUpdated());
+        assertEquals(record.getEmails(), ContactRecord.fromEntry(entry).getEmails());
+        assertEquals(record.getFullName(), ContactRecord.fromEntry(entry).getFullName());
+
+        long since = System.currentTimeMillis() + 1;
+        Thread.sleep(10);
+        standIn.delete(entry.getId());
+        ContactFeed changes = client.fetchPage(1, 25, since);
+        assertEquals(1, changes.getEntries().size());
+        assertEquals(entry.getId(), changes.getEntries().get(0).getId());
+    }
+
+    @Test
+    /**
+     * Pages read one after another over the pooled transport all go over the same kept alive connection
+     */
+    public void testPooledConnectionReuse() throws Exception {
+        ContactFeedClient client = new HttpContactFeedClient(HttpContactFeedClient.newPooledTransport(10),
+                new GoogleCredential().setAccessToken("vasya"), standIn.getFeedUrl());
+        int numEntries = 0;
+        for (int startIndex = 1; startIndex <= 60; startIndex += 10) {
+            numEntries += client.fetchPage(startIndex, 10, 0).getEntries().size();
+        }
+        assertEquals(60, numEntries);
+        assertEquals(6, standIn.getFeedRequests());
+        assertEquals(1, standIn.getFeedConnections());
+    }
+
+    private AtomContactSource fetch(String query) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(standIn.getFeedUrl() + "?" + query).openConnection();
+        connection.setRequestProperty("Authorization", "Bearer vasya");
+        assertEquals(200, connection.getResponseCode());
+        return new AtomContactSource(connection.getInputStream());
+    }
+
+    private static List<ContactRecord> read(AtomContactSource page) throws IOException {
+        List<ContactRecord> records = new ArrayList<ContactRecord>();
+        try {
+            ContactRecord record;
+            while ((record = page.nextRecord()) != null) {
+                records.add(record);
+            }
+        } finally {
+            page.close();
+        }
+        return records;
+    }
+
+    private static int status(String url, String authorization) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.google.plus.samples.quickstart;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class StringDictionaryTest {
+    @Test
+    /**
+     * Ids go in order and stay the same as the table grows
+     */
+    public void testIntern() throws Exception {
+        StringDictionary dictionary = new StringDictionary(4);
+        assertEquals(0, dictionary.intern("vasya@pupkin.com"));
+        assertEquals(1, dictionary.intern("head@pupkin.com"));
+        assertEquals(0, dictionary.intern(new String("vasya@pupkin.com")));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i + 2, dictionary.intern("user" + i + "@pupkin.com"));
+        }
+        assertEquals(1002, dictionary.size());
+        assertEquals(1, dictionary.indexOf("head@pupkin.com"));
+        assertEquals(501, dictionary.indexOf("user499@pupkin.com"));
+        assertEquals(StringDictionary.MISSING, dictionary.indexOf("nobody@pupkin.com"));
+        assertEquals("user999@pupkin.com", dictionary.get(1001));
+    }
+
+    @Test
+    /**
+     * The first copy of a string is the one kept
+     */
+    public void testOneCopy() throws Exception {
+        StringDictionary dictionary = new StringDictionary();
+        String first = new String("vasya@pupkin.com");
+        int id = dictionary.intern(first);
+        dictionary.intern(new String("vasya@pupkin.com"));
+        assertSame(first, dictionary.get(id));
+    }
+}
@@ -0,0 +1,97 @@
+package com.google.plus.samples.quickstart;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author toli kuznets
+ * @version $Id$
+ */
+
+
+public class VirtualThreadsTest {
+    @Test
+    /**
+     * On Java 21 and later tasks run on named virtual threads, a thread each; before that there are none to be had
+     */
+    public void testThreadPerTaskExecutor() throws Exception {
+        if (!VirtualThreads.isAvailable()) {
+            assertFalse(VirtualThreads.isEnabled());
+            try {
+                VirtualThreads.newThreadPerTaskExecutor("test-");
+                fail("no virtual threads before Java 21");
+            } catch (UnsupportedOperationException expected) {
+                // the callers keep their platform threads
+            }
+            return;
+        }
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("test-");
+        try {
+            Callable<Thread> currentThread = new Callable<Thread>() {
+                public Thread call() {
+                    return Thread.currentThread();
+                }
+            };
+            Future<Thread> first = executor.submit(currentThread);
+            Future<Thread> second = executor.submit(currentThread);
+            assertEquals("test-1", first.get().getName());
+            assertEquals("test-2", second.get().getName());
+            assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(first.get()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    /**
+     * Jetty's jobs each run on a virtual thread of their own, and stopping the pool waits for the running ones
+     */
+    public void testVirtualThreadPool() throws Exception {
+        if (!VirtualThreads.isAvailable()) {
+            return;
+        }
+        VirtualThreadPool pool = new VirtualThreadPool("test-request-");
+        assertFalse("not started", pool.dispatch(new Runnable() {
+            public void run() {
+            }
+        }));
+        pool.start();
+        final CountDownLatch running = new CountDownLatch(2);
+        final CountDownLatch goOn = new CountDownLatch(1);
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        Runnable job = new Runnable() {
+            public void run() {
+                threads.add(Thread.currentThread());
+                running.countDown();
+                try {
+                    goOn.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        assertTrue(pool.dispatch(job));
+        assertTrue(pool.dispatch(job));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertEquals(2, pool.getThreads());
+        assertFalse(pool.isLowOnThreads());
+        assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(threads.get(0)));
+        assertFalse(threads.get(0) == threads.get(1));
+        goOn.countDown();
+        pool.stop();
+        assertEquals(0, pool.getThreads());
+    }
+}